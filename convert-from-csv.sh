@@ -14,6 +14,8 @@ else
   wget -q -O allCountries.zip http://download.geonames.org/export/dump/allCountries.zip
   echo "Downloading hierarchies file .."
   wget -q -O hierarchy.zip http://download.geonames.org/export/dump/hierarchy.zip
+  echo "Downloading feature codes .."
+  wget -q -O featureCodes_en.txt http://download.geonames.org/export/dump/featureCodes_en.txt
   echo "Unzipping .."
   unzip -q alternateNames.zip && rm -f alternateNames.zip
   unzip -q allCountries.zip && rm -f allCountries.zip
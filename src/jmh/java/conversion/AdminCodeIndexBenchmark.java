@@ -0,0 +1,56 @@
+package conversion;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* The admin codes lookup behind parentADM1..4 and parentCountry, with the codes of every row. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdminCodeIndexBenchmark {
+
+  @Param("100000")
+  int features;
+
+  private AdminCodeIndex admins;
+  private String[][] codes;
+  private int next = -1;
+
+  @Setup
+  public void setup() {
+    admins = new AdminCodeIndex();
+    List<String> lines = SyntheticDataGenerator.lines(features, "allCountries.txt");
+    codes = new String[lines.size()][];
+    for (int i = 0; i < codes.length; i++) {
+      GeonamesFeature feature = new GeonamesFeature(lines.get(i));
+      admins.add(feature);
+      codes[i] =
+          new String[] {
+            feature.getCountry(),
+            feature.getAdmin1Value(),
+            feature.getAdmin2Value(),
+            feature.getAdmin3Value(),
+            feature.getAdmin4Value()
+          };
+    }
+  }
+
+  @Benchmark
+  public long lookup() {
+    String[] row = codes[next()];
+    return admins.lookup(row[0], row[1], row[2], row[3], row[4]);
+  }
+
+  private int next() {
+    next = next + 1 == codes.length ? 0 : next + 1;
+    return next;
+  }
+}
@@ -0,0 +1,69 @@
+package conversion;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* One alternateNames row through collectLabels(): filtered, parsed, packed in the label store. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlternateNameBenchmark {
+
+  @Param("100000")
+  int features;
+
+  private TsvRecord[] records;
+  private LabelStore labels;
+  private int next = -1;
+
+  @Setup
+  public void setup() {
+    records =
+        SyntheticDataGenerator.lines(features, "alternateNames.txt").stream()
+            .map(TsvRecord::of)
+            .toArray(TsvRecord[]::new);
+  }
+
+  // a fresh store per iteration, so that it does not grow for the whole run
+  @Setup(Level.Iteration)
+  public void newStore() {
+    labels = new LabelStore();
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) {
+    TsvRecord record = records[next()];
+    if (AlternateName.isWanted(record)) {
+      blackhole.consume(new AlternateName(record));
+    }
+  }
+
+  @Benchmark
+  public void collectLabel() {
+    TsvRecord record = records[next()];
+    String tag = LabelProjection.DEFAULT.tagOf(record);
+    if (tag == null) {
+      return;
+    }
+    AlternateName name = new AlternateName(record);
+    switch (tag) {
+      case LabelProjection.LINK -> labels.addLink(name.getId(), name.getLabel());
+      case LabelProjection.POSTCODE -> labels.addPostcode(name.getId(), name.getLabel());
+      default -> labels.add(name.getId(), tag, name.getLabel(), name.getFlags());
+    }
+  }
+
+  private int next() {
+    next = next + 1 == records.length ? 0 : next + 1;
+    return next;
+  }
+}
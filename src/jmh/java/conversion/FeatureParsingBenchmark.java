@@ -0,0 +1,69 @@
+package conversion;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* Parsing one allCountries row, from the line and from the TsvRecord the reader hands out. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeatureParsingBenchmark {
+
+  @Param("100000")
+  int features;
+
+  private String[] lines;
+  private TsvRecord[] records;
+  private int next = -1;
+
+  @Setup
+  public void setup() {
+    lines = SyntheticDataGenerator.lines(features, "allCountries.txt").toArray(String[]::new);
+    records = new TsvRecord[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      records[i] = TsvRecord.of(lines[i]);
+    }
+  }
+
+  /** A feature per line, the columns the converter reads decoded. */
+  @Benchmark
+  public void newFeature(Blackhole blackhole) {
+    read(new GeonamesFeature(lines[next()]), blackhole);
+  }
+
+  /** The reused feature over a record, as features() does. */
+  @Benchmark
+  public void reuseFeature(Blackhole blackhole) {
+    read(GeonamesFeature.reuse(records[next()]), blackhole);
+  }
+
+  /** The admin codes scan, which most rows leave undecoded. */
+  @Benchmark
+  public boolean isDivision() {
+    return AdminCodeIndex.isDivision(GeonamesFeature.reuse(records[next()]));
+  }
+
+  private static void read(GeonamesFeature feature, Blackhole blackhole) {
+    blackhole.consume(feature.getSubject());
+    blackhole.consume(feature.getNameValue());
+    blackhole.consume(feature.getLatValue());
+    blackhole.consume(feature.getLongValue());
+    blackhole.consume(feature.getFeatureCodeField());
+    blackhole.consume(feature.getCountry());
+    blackhole.consume(feature.getPopulationValue());
+    blackhole.consume(feature.getModificationDateValue());
+  }
+
+  private int next() {
+    next = next + 1 == lines.length ? 0 : next + 1;
+    return next;
+  }
+}
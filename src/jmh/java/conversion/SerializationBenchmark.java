@@ -0,0 +1,103 @@
+package conversion;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import namespaces.Namespaces;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.turtle.TurtleWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Serialization cost per statement, on the statements of the synthetic features: rdf4j's
+ * TurtleWriter, as the Turtle shards use it, against the N-Triples encoder. Output is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+  private static final int BATCH = 1000;
+
+  @Param("10000")
+  int features;
+
+  private Statement[] statements;
+  private TurtleWriter turtle;
+  private final NTriplesEncoder encoder = new NTriplesEncoder(null);
+  private int next;
+
+  @Setup
+  public void setup() {
+    var converter = new FeatureConverter(new AdminCodeIndex());
+    var relations = new FeatureConverter.Relations(List.of(), new long[0], new long[0]);
+    List<Statement> all = new ArrayList<>();
+    for (String line : SyntheticDataGenerator.lines(features, "allCountries.txt")) {
+      var collector = new StatementCollector();
+      converter.getStatements(new GeonamesFeature(line), relations, collector);
+      all.addAll(collector.getStatements());
+    }
+    statements = all.toArray(Statement[]::new);
+  }
+
+  @Setup(Level.Iteration)
+  public void startTurtle() {
+    turtle = new TurtleWriter(OutputStream.nullOutputStream());
+    turtle.startRDF();
+    Namespaces.getNamespaces().forEach(ns -> turtle.handleNamespace(ns.getPrefix(), ns.getName()));
+  }
+
+  @TearDown(Level.Iteration)
+  public void endTurtle() {
+    turtle.endRDF();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void turtle() {
+    for (int i = 0; i < BATCH; i++) {
+      turtle.handleStatement(next());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int ntriples() {
+    encoder.reset();
+    for (int i = 0; i < BATCH; i++) {
+      Statement statement = next();
+      IRI subject = (IRI) statement.getSubject();
+      if (statement.getObject() instanceof Literal literal) {
+        if (literal.getLanguage().isPresent()) {
+          encoder.langLiteral(
+              subject, statement.getPredicate(), literal.getLabel(), literal.getLanguage().get());
+        } else {
+          encoder.literal(
+              subject, statement.getPredicate(), literal.getLabel(), literal.getDatatype());
+        }
+      } else {
+        encoder.iri(subject, statement.getPredicate(), (IRI) statement.getObject());
+      }
+    }
+    return encoder.length();
+  }
+
+  private Statement next() {
+    Statement statement = statements[next];
+    next = next + 1 == statements.length ? 0 : next + 1;
+    return statement;
+  }
+}
@@ -0,0 +1,59 @@
+package conversion;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* The k nearest neighbours behind gn:nearby, every synthetic feature taken as a place. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpatialIndexBenchmark {
+
+  @Param("100000")
+  int features;
+
+  @Param({"5", "20"})
+  int k;
+
+  private SpatialIndex places;
+  private long[] ids;
+  private double[] lats;
+  private double[] lons;
+  private int next = -1;
+
+  @Setup
+  public void setup() {
+    places = new SpatialIndex();
+    List<String> lines = SyntheticDataGenerator.lines(features, "allCountries.txt");
+    ids = new long[lines.size()];
+    lats = new double[lines.size()];
+    lons = new double[lines.size()];
+    for (int i = 0; i < ids.length; i++) {
+      GeonamesFeature feature = new GeonamesFeature(lines.get(i));
+      ids[i] = feature.getGeonameid();
+      lats[i] = feature.getLatitude();
+      lons[i] = feature.getLongitude();
+      places.add(ids[i], lats[i], lons[i]);
+    }
+    places.seal();
+  }
+
+  @Benchmark
+  public long[] nearest() {
+    int i = next();
+    return places.nearest(ids[i], lats[i], lons[i], k);
+  }
+
+  private int next() {
+    next = next + 1 == ids.length ? 0 : next + 1;
+    return next;
+  }
+}
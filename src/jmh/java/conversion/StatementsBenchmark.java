@@ -0,0 +1,90 @@
+package conversion;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * getStatements() for one feature with its parents and links, into the two sinks: rdf4j
+ * Statements for Turtle and the N-Triples encoder. The admin codes lookup is part of it, and the
+ * ancestors when materialized; the label triples are not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatementsBenchmark {
+
+  @Param("100000")
+  int features;
+
+  @Param({"false", "true"})
+  boolean ancestors;
+
+  private GeonamesFeature[] rows;
+  private FeatureConverter.Relations[] relations;
+  private FeatureConverter converter;
+  private final NTriplesEncoder encoder = new NTriplesEncoder(null);
+  private int next = -1;
+
+  @Setup
+  public void setup() {
+    ListMultimap<String, String> links = MultimapBuilder.hashKeys().arrayListValues().build();
+    for (String line : SyntheticDataGenerator.lines(features, "alternateNames.txt")) {
+      AlternateName name = new AlternateName(line);
+      if (LabelProjection.LINK.equals(name.getLang())) {
+        links.put(String.valueOf(name.getId()), name.getLabel());
+      }
+    }
+    var hierarchy =
+        HierarchyGraph.load(
+            SyntheticDataGenerator.cached(features).resolve("hierarchy.txt"), new LongAdder());
+
+    var admins = new AdminCodeIndex();
+    List<String> lines = SyntheticDataGenerator.lines(features, "allCountries.txt");
+    rows = new GeonamesFeature[lines.size()];
+    relations = new FeatureConverter.Relations[lines.size()];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = new GeonamesFeature(lines.get(i));
+      admins.add(rows[i]);
+      long id = rows[i].getGeonameid();
+      List<String> featureLinks = links.get(rows[i].getId());
+      relations[i] =
+          new FeatureConverter.Relations(
+              featureLinks, hierarchy.parents(id, false), hierarchy.parents(id, true));
+    }
+    converter = new FeatureConverter(admins);
+    if (ancestors) {
+      converter.withAncestors(hierarchy.computeAncestors());
+    }
+  }
+
+  @Benchmark
+  public StatementCollector statements() {
+    int i = next();
+    var collector = new StatementCollector();
+    converter.getStatements(rows[i], relations[i], collector);
+    return collector;
+  }
+
+  @Benchmark
+  public int ntriples() {
+    int i = next();
+    converter.getStatements(rows[i], relations[i], encoder.reset());
+    return encoder.length();
+  }
+
+  private int next() {
+    next = next + 1 == rows.length ? 0 : next + 1;
+    return next;
+  }
+}
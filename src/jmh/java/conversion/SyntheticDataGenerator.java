@@ -0,0 +1,288 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Scales the fixtures of src/test/resources/input_source up to a full size input directory
+ * (allCountries, alternateNames, hierarchy) so that benchmarks and end to end runs work offline.
+ *
+ * Every country gets a PCLI row and a tree of ADM1 / ADM2 divisions linked in hierarchy.txt; the
+ * other rows are fixture rows under a new id, with random coordinates, population, names and the
+ * admin codes of an existing division. Alternate names mix languages, preferred and historic
+ * flags, wikipedia links and postcodes in roughly the proportions of the real dump. The output is
+ * a function of the seed.
+ */
+public class SyntheticDataGenerator {
+
+  private static final Logger logger = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+  private static final String[][] COUNTRIES = {
+    {"AD", "Europe/Andorra"}, {"FR", "Europe/Paris"}, {"ES", "Europe/Madrid"},
+    {"DE", "Europe/Berlin"}, {"IT", "Europe/Rome"}, {"RU", "Europe/Moscow"},
+    {"US", "America/New_York"}, {"BR", "America/Sao_Paulo"}, {"CN", "Asia/Shanghai"},
+    {"JP", "Asia/Tokyo"}, {"IN", "Asia/Kolkata"}, {"EG", "Africa/Cairo"},
+    {"AU", "Australia/Sydney"}, {"CA", "America/Toronto"}, {"MX", "America/Mexico_City"}
+  };
+  private static final String[] LANGS = {
+    "", "", "", "en", "en", "fr", "de", "es", "it", "ru", "zh", "ja", "ar", "pt", "nl"
+  };
+  // codes that are not labels: links are kept, the others are skipped by the converter
+  private static final String[] OTHER_CODES = {"link", "link", "post", "iata", "wkdt", "unlc"};
+  private static final String[] EXTRA_NAMES = {"Москва", "東京", "القاهرة", "Zürich", "Kraków"};
+  private static final int ADM1_PER_COUNTRY = 12;
+  private static final int ADM2_PER_ADM1 = 6;
+  private static final long FIRST_ID = 1_000_000;
+
+  private final SplittableRandom random;
+  private final List<String[]> templates = new ArrayList<>();
+  private final List<String> names = new ArrayList<>();
+
+  public SyntheticDataGenerator(long seed) {
+    random = new SplittableRandom(seed);
+    for (String line : fixture("allCountries.txt")) {
+      templates.add(line.split("\t", -1));
+    }
+    for (String line : fixture("alternateNames.txt")) {
+      names.add(line.split("\t", -1)[3]);
+    }
+    templates.forEach(row -> names.add(row[GeonamesHeaders.name]));
+    names.addAll(List.of(EXTRA_NAMES));
+  }
+
+  /** Writes about the given number of features, and their names and parents, into the dir. */
+  public void generate(Path dir, int features) throws IOException {
+    Files.createDirectories(dir);
+    long id = FIRST_ID;
+    long nameId = 1;
+    try (Writer rows = writer(dir, "allCountries.txt");
+        Writer alternateNames = writer(dir, "alternateNames.txt");
+        Writer hierarchy = writer(dir, "hierarchy.txt")) {
+      // the administrative skeleton first, features then point into it
+      List<String[]> divisions = new ArrayList<>();
+      for (String[] country : COUNTRIES) {
+        long pcli = id++;
+        write(rows, division(pcli, country, "PCLI", "00", ""));
+        for (int a1 = 1; a1 <= ADM1_PER_COUNTRY; a1++) {
+          long adm1 = id++;
+          String admin1 = String.format("%02d", a1);
+          write(rows, division(adm1, country, "ADM1", admin1, ""));
+          write(hierarchy, pcli + "\t" + adm1 + "\tADM");
+          for (int a2 = 1; a2 <= ADM2_PER_ADM1; a2++) {
+            long adm2 = id++;
+            String admin2 = admin1 + String.format("%03d", a2);
+            write(rows, division(adm2, country, "ADM2", admin1, admin2));
+            write(hierarchy, adm1 + "\t" + adm2 + "\tADM");
+            divisions.add(new String[] {country[0], country[1], admin1, admin2, "" + adm2});
+          }
+        }
+      }
+
+      while (id < FIRST_ID + features) {
+        String[] division = divisions.get(random.nextInt(divisions.size()));
+        write(rows, feature(id, division));
+        write(hierarchy, division[4] + "\t" + id + "\tADM");
+        if (random.nextInt(20) == 0) {
+          // a few non administrative parents, as for islands or parks
+          write(hierarchy, (FIRST_ID + random.nextLong(id - FIRST_ID)) + "\t" + id + "\t");
+        }
+        for (int n = count(); n > 0; n--) {
+          write(alternateNames, alternateName(nameId++, id));
+        }
+        id++;
+      }
+    }
+    logger.info("Generated {} features, {} alternate names in {}", id - FIRST_ID, nameId - 1, dir);
+  }
+
+  /** A generated input directory of the given size under java.io.tmpdir, reused when present. */
+  public static Path cached(int features) {
+    Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "geonames-synthetic-" + features);
+    try {
+      if (!Files.exists(dir.resolve("hierarchy.txt"))) {
+        new SyntheticDataGenerator(42).generate(dir, features);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return dir;
+  }
+
+  /** The lines of one file of cached(features). */
+  public static List<String> lines(int features, String file) {
+    try {
+      return Files.readAllLines(cached(features).resolve(file), UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private String division(long id, String[] country, String code, String admin1, String admin2) {
+    String name = pick(names) + " " + code;
+    String[] row = row(id, name, "A", code, country[0], admin1, admin2, country[1]);
+    row[GeonamesHeaders.population] = String.valueOf(random.nextInt(5_000_000));
+    return String.join("\t", row);
+  }
+
+  private String feature(long id, String[] division) {
+    String[] template = templates.get(random.nextInt(templates.size()));
+    String[] row =
+        row(
+            id,
+            pick(names) + " " + id % 1000,
+            template[GeonamesHeaders.featureClass],
+            template[GeonamesHeaders.featureCode],
+            division[0],
+            division[2],
+            division[3],
+            division[1]);
+    row[GeonamesHeaders.altitude] = template[GeonamesHeaders.altitude];
+    if (random.nextInt(5) == 0) {
+      row[GeonamesHeaders.population] = String.valueOf(random.nextInt(1_000_000));
+    }
+    return String.join("\t", row);
+  }
+
+  private String[] row(
+      long id,
+      String name,
+      String featureClass,
+      String featureCode,
+      String country,
+      String admin1,
+      String admin2,
+      String timezone) {
+    String[] row = new String[GeonamesHeaders.columns];
+    Arrays.fill(row, "");
+    row[GeonamesHeaders.geonameid] = String.valueOf(id);
+    row[GeonamesHeaders.name] = name;
+    row[2] = name; // asciiname, near enough
+    row[GeonamesHeaders.latitude] = coordinate(90);
+    row[GeonamesHeaders.longitude] = coordinate(180);
+    row[GeonamesHeaders.featureClass] = featureClass;
+    row[GeonamesHeaders.featureCode] = featureCode;
+    row[GeonamesHeaders.countryCode] = country;
+    row[GeonamesHeaders.admin1code] = admin1;
+    row[GeonamesHeaders.admin2code] = admin2;
+    row[GeonamesHeaders.population] = "0";
+    row[GeonamesHeaders.elevation] = random.nextInt(4) == 0 ? "" + random.nextInt(3000) : "";
+    row[GeonamesHeaders.altitude] = String.valueOf(random.nextInt(-50, 4000));
+    row[GeonamesHeaders.timezone] = timezone;
+    int year = 2010 + random.nextInt(15);
+    row[GeonamesHeaders.modificationDate] =
+        String.format("%d-%02d-%02d", year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+    return row;
+  }
+
+  private String alternateName(long nameId, long id) {
+    String lang;
+    String name;
+    if (random.nextInt(8) == 0) {
+      lang = pick(OTHER_CODES);
+      name =
+          switch (lang) {
+            case "link" -> "https://en.wikipedia.org/wiki/" + pick(names).replace(' ', '_');
+            case "post" -> String.valueOf(random.nextInt(10_000, 99_999));
+            default -> "Q" + random.nextInt(1_000_000);
+          };
+    } else {
+      lang = pick(LANGS);
+      name = pick(names);
+    }
+    return String.join(
+        "\t",
+        String.valueOf(nameId),
+        String.valueOf(id),
+        lang,
+        name,
+        flag(10),
+        flag(30),
+        flag(100),
+        flag(50),
+        "",
+        "");
+  }
+
+  // 0 to 6 names, 2 on average
+  private int count() {
+    int n = 0;
+    while (n < 6 && random.nextInt(3) != 0) {
+      n++;
+    }
+    return n;
+  }
+
+  private String flag(int oneIn) {
+    return random.nextInt(oneIn) == 0 ? "1" : "";
+  }
+
+  private String coordinate(int range) {
+    return String.format(Locale.ROOT, "%.5f", random.nextDouble(-range, range));
+  }
+
+  private String pick(List<String> values) {
+    return values.get(random.nextInt(values.size()));
+  }
+
+  private String pick(String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  private static Writer writer(Path dir, String file) throws IOException {
+    return new BufferedWriter(Files.newBufferedWriter(dir.resolve(file), UTF_8), 1 << 16);
+  }
+
+  private static void write(Writer writer, String line) throws IOException {
+    writer.write(line);
+    writer.write('\n');
+  }
+
+  // the fixtures are on the benchmark classpath, wherever the benchmarks run from
+  private static List<String> fixture(String file) {
+    var in = SyntheticDataGenerator.class.getResourceAsStream("/input_source/" + file);
+    if (in == null) {
+      throw new IllegalStateException("::: Fixture missing from the classpath: " + file);
+    }
+    try (var reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+      return reader.lines().filter(line -> !line.isBlank()).toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Usage: SyntheticDataGenerator --output=dir [--features=n] [--seed=n] */
+  public static void main(String... args) throws IOException {
+    String output = "synthetic";
+    int features = 1_000_000;
+    long seed = 42;
+    for (String arg : args) {
+      String value = arg.substring(arg.indexOf('=') + 1);
+      if (arg.startsWith("--output=")) {
+        output = value;
+      } else if (arg.startsWith("--features=")) {
+        features = Integer.parseInt(value);
+      } else if (arg.startsWith("--seed=")) {
+        seed = Long.parseLong(value);
+      } else {
+        throw new IllegalArgumentException("::: Unexpected argument " + arg);
+      }
+    }
+    new SyntheticDataGenerator(seed).generate(Paths.get(output), features);
+  }
+}
@@ -0,0 +1,240 @@
+package conversion;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static conversion.GeonamesHeaders.admin1code;
+import static conversion.GeonamesHeaders.admin2code;
+import static conversion.GeonamesHeaders.admin3code;
+import static conversion.GeonamesHeaders.admin4code;
+import static conversion.GeonamesHeaders.featureClass;
+import static conversion.GeonamesHeaders.featureCode;
+
+import com.google.common.primitives.ImmutableLongArray;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Country + admin1..admin4 codes to the geonameid of the administrative division they denote.
+ *
+ * Codes are interned into small ints and the five levels form a trie whose edges live in a
+ * primitive map keyed by (parent node << 32 | code); a lookup is five probes and no allocation.
+ * The index can be saved (--admin-index), so that later runs skip the scan. It is stamped with
+ * the size, modification time and a checksum of the head and tail of its source: an edit in the
+ * middle of the file that kept both its size and modification time would go unnoticed.
+ */
+public class AdminCodeIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdminCodeIndex.class);
+  private static final int MAGIC = 0x41444d32; // ADM2
+  // bytes of the head and of the tail of the source in its stamp
+  private static final int SAMPLE = 1 << 20;
+  private static final long MISSING = -1;
+  private static final int ROOT = 0;
+  private static final int[] ADMIN_COLUMNS = {admin1code, admin2code, admin3code, admin4code};
+
+  private final Map<String, Integer> dictionary = newHashMap();
+  private final List<String> codes = newArrayList();
+  private final LongLongHashMap edges = new LongLongHashMap(1 << 16);
+  private final LongLongHashMap ids = new LongLongHashMap(1 << 16);
+  private int nodes = 1;
+
+  /** Registers the feature if it is the division its admin codes point to. */
+  public void add(GeonamesFeature feature) {
+    if (isDivision(feature)) {
+      put(
+          feature.getGeonameid(),
+          feature.getCountry(),
+          feature.getAdmin1Value(),
+          feature.getAdmin2Value(),
+          feature.getAdmin3Value(),
+          feature.getAdmin4Value());
+    }
+  }
+
+  /** Whether the feature is the division (country or ADM1..4) its admin codes point to. */
+  public static boolean isDivision(GeonamesFeature feature) {
+    // checked on the raw columns, most rows are not even administrative
+    if (!feature.is(featureClass, "A")) {
+      return false;
+    }
+    int adminsNumber = 0;
+    for (int column : ADMIN_COLUMNS) {
+      adminsNumber += feature.isEmpty(column) ? 0 : 1;
+    }
+
+    return (adminsNumber == 1
+            && (feature.is(featureCode, "PCLI") || feature.is(featureCode, "ADM1")))
+        || (adminsNumber == 2 && feature.is(featureCode, "ADM2"))
+        || (adminsNumber == 3 && feature.is(featureCode, "ADM3"))
+        || (adminsNumber == 4 && feature.is(featureCode, "ADM4"));
+  }
+
+  public void put(long id, String... path) {
+    int node = ROOT;
+    for (String code : path) {
+      int codeId = dictionary.computeIfAbsent(code, this::intern);
+      long edge = edge(node, codeId);
+      long child = edges.get(edge, MISSING);
+      if (child == MISSING) {
+        child = nodes++;
+        edges.put(edge, child);
+      }
+      node = (int) child;
+    }
+    ids.put(node, id);
+  }
+
+  /** Forgets the divisions of the given geonameids, wherever their codes put them. */
+  public void removeAll(Set<Long> geonameids) {
+    var nodes = ImmutableLongArray.builder();
+    ids.forEach(
+        (node, id) -> {
+          if (geonameids.contains(id)) {
+            nodes.add(node);
+          }
+        });
+    nodes.build().forEach(ids::remove);
+  }
+
+  /** The geonameid of the division, or -1. */
+  public long lookup(String country, String admin1, String admin2, String admin3, String admin4) {
+    int node = step(step(step(step(step(ROOT, country), admin1), admin2), admin3), admin4);
+    return node < 0 ? MISSING : ids.get(node, MISSING);
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+  private int step(int node, String code) {
+    if (node < 0) {
+      return node;
+    }
+    Integer codeId = dictionary.get(code);
+    return codeId == null ? -1 : (int) edges.get(edge(node, codeId), MISSING);
+  }
+
+  private static long edge(int node, int codeId) {
+    return (long) node << 32 | codeId;
+  }
+
+  private int intern(String code) {
+    codes.add(code);
+    return codes.size() - 1;
+  }
+
+  /** Saves the index, stamped with its source file (null for none, the owner checking it). */
+  public void save(Path file, Path source) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      for (long value : stamp(source)) {
+        out.writeLong(value);
+      }
+      out.writeInt(nodes);
+      out.writeInt(codes.size());
+      for (String code : codes) {
+        out.writeUTF(code);
+      }
+      writeMap(out, edges);
+      writeMap(out, ids);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Loads a saved index, or returns null when missing, stale or corrupt: it is to be rebuilt. The
+   * source is null for an index saved without one.
+   */
+  public static AdminCodeIndex load(Path file, Path source) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    long[] stamp = stamp(source);
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC
+          || in.readLong() != stamp[0]
+          || in.readLong() != stamp[1]
+          || in.readLong() != stamp[2]) {
+        logger.info("Ignoring stale admin index {}", file);
+        return null;
+      }
+      AdminCodeIndex index = new AdminCodeIndex();
+      index.nodes = in.readInt();
+      for (int i = in.readInt(); i > 0; i--) {
+        String code = in.readUTF();
+        index.dictionary.put(code, index.intern(code));
+      }
+      readMap(in, index.edges);
+      readMap(in, index.ids);
+      if (in.read() != -1) {
+        throw new IOException("::: Trailing bytes");
+      }
+      return index;
+    } catch (IOException e) {
+      // truncated by a crash, overwritten...
+      logger.warn("::: Rebuilding the corrupt admin index {}: {}", file, e.toString());
+      return null;
+    }
+  }
+
+  // size, modification time and CRC32C of the first and last SAMPLE bytes
+  private static long[] stamp(Path source) throws IOException {
+    if (source == null) {
+      return new long[3];
+    }
+    try (FileChannel channel = FileChannel.open(source)) {
+      long size = channel.size();
+      var crc = new CRC32C();
+      ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, SAMPLE));
+      for (long start : new long[] {0, Math.max(0, size - SAMPLE)}) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, start + buffer.position()) < 0) {
+            break;
+          }
+        }
+        crc.update(buffer.flip());
+      }
+      return new long[] {size, Files.getLastModifiedTime(source).toMillis(), crc.getValue()};
+    }
+  }
+
+  private static void writeMap(DataOutputStream out, LongLongHashMap map) throws IOException {
+    out.writeInt(map.size());
+    try {
+      map.forEach(
+          (key, value) -> {
+            try {
+              out.writeLong(key);
+              out.writeLong(value);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void readMap(DataInputStream in, LongLongHashMap map) throws IOException {
+    for (int i = in.readInt(); i > 0; i--) {
+      map.put(in.readLong(), in.readLong());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package conversion;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/*
+ * One row of alternateNames.txt:
+ * alternateNameId, geonameid, isolanguage, alternate name, isPreferredName, isShortName,
+ * isColloquial, isHistoric, from, to
+ */
+@Accessors(chain = true)
+@Getter
+public class AlternateName {
+
+  private final long id;
+  private final String lang;
+  private final String label;
+  private final int flags;
+
+  public AlternateName(String line) {
+    this(TsvRecord.of(line));
+  }
+
+  public AlternateName(TsvRecord record) {
+    id = record.getLong(1);
+    lang = record.getString(2, Interner.LANGUAGES);
+    label = record.getString(3);
+
+    int flags = 0;
+    flags |= record.equals(4, "1") ? LabelStore.PREFERRED : 0;
+    flags |= record.equals(5, "1") ? LabelStore.SHORT : 0;
+    flags |= record.equals(6, "1") ? LabelStore.COLLOQUIAL : 0;
+    flags |= record.equals(7, "1") ? LabelStore.HISTORIC : 0;
+    this.flags = flags;
+  }
+
+  private AlternateName(long id, String lang, String label, int flags) {
+    this.id = id;
+    this.lang = lang;
+    this.label = label;
+    this.flags = flags;
+  }
+
+  /** Cheap test on the raw row: whether it can be a label, a link or a postcode at all. */
+  public static boolean isWanted(TsvRecord record) {
+    return record.length(2) <= 3 || record.equals(2, "link") || record.equals(2, "post");
+  }
+
+  /** The same name under the language tag LabelProjection gave it. */
+  public AlternateName withLang(String tag) {
+    return tag.equals(lang) ? this : new AlternateName(id, tag, label, flags);
+  }
+}
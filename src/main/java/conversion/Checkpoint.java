@@ -0,0 +1,214 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import conversion.ConversionOptions.Partition;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Progress of a conversion, kept in output/checkpoint so that a run started with --resume goes on
+ * where the last one stopped. The side tables of the hash join are saved in a compact binary form
+ * once loaded, and features() records, after each batch of input chunks, the allCountries byte
+ * offset it reached and the length of every shard file at that point, on disk and before
+ * compression (for --max-file-size to go on counting from the latter). The shard files are ended
+ * (Turtle document, gzip member) before each record, so they can be cut back to it and appended to.
+ *
+ * Stages loading concurrently may record themselves done at the same time: the progress file is
+ * saved under the lock.
+ *
+ * A checkpoint is stamped with its inputs (size and modification time) and output options;
+ * resuming with different ones is refused.
+ */
+public class Checkpoint {
+
+  private static final Logger logger = LoggerFactory.getLogger(Checkpoint.class);
+  private static final String PROGRESS = "progress.properties";
+  private static final String[] INPUTS = {
+    "allCountries.txt", "alternateNames.txt", "hierarchy.txt"
+  };
+  private static final String SHARD = "shard.";
+
+  private final Path dir;
+  private final Properties progress = new Properties();
+
+  private Checkpoint(Path dir) {
+    this.dir = dir;
+  }
+
+  /** A new checkpoint, replacing whatever the output directory had. */
+  public static Checkpoint start(ConversionOptions options) throws IOException {
+    var checkpoint = new Checkpoint(Paths.get(options.getOutput(), "checkpoint"));
+    FileUtils.deleteDirectory(checkpoint.dir.toFile());
+    Files.createDirectories(checkpoint.dir);
+    checkpoint.progress.setProperty("stamp", stamp(options));
+    checkpoint.save();
+    return checkpoint;
+  }
+
+  /** The checkpoint of an interrupted run, or a new one when there is none. */
+  public static Checkpoint resume(ConversionOptions options) throws IOException {
+    var checkpoint = new Checkpoint(Paths.get(options.getOutput(), "checkpoint"));
+    if (!Files.exists(checkpoint.progressFile())) {
+      logger.info("No checkpoint in {}, starting from scratch", checkpoint.dir);
+      return start(options);
+    }
+    try (Reader in = Files.newBufferedReader(checkpoint.progressFile(), UTF_8)) {
+      checkpoint.progress.load(in);
+    }
+    if (!stamp(options).equals(checkpoint.progress.getProperty("stamp"))) {
+      throw new IOException(
+          "::: Checkpoint in " + checkpoint.dir + " is for other inputs or options, run again"
+              + " without --resume");
+    }
+    logger.info("Resuming from checkpoint {}", checkpoint.dir);
+    return checkpoint;
+  }
+
+  public boolean isDone(String stage) {
+    return progress.containsKey("stage." + stage);
+  }
+
+  public synchronized void done(String stage) throws IOException {
+    progress.setProperty("stage." + stage, "done");
+    save();
+  }
+
+  /** A file of the checkpoint directory. */
+  public Path file(String name) {
+    return dir.resolve(name);
+  }
+
+  /** Where features() stopped in allCountries.txt, 0 before it started. */
+  public long getOffset() {
+    return Long.parseLong(progress.getProperty("offset", "0"));
+  }
+
+  /** The length of every shard file when the offset was recorded. */
+  public Map<String, ShardedWriter.Length> getShardLengths() {
+    Map<String, ShardedWriter.Length> lengths = new TreeMap<>();
+    for (String key : progress.stringPropertyNames()) {
+      if (key.startsWith(SHARD)) {
+        String[] storedAndWritten = progress.getProperty(key).split(" ");
+        lengths.put(
+            key.substring(SHARD.length()),
+            new ShardedWriter.Length(
+                Long.parseLong(storedAndWritten[0]), Long.parseLong(storedAndWritten[1])));
+      }
+    }
+    return lengths;
+  }
+
+  /** Records that every feature before the offset is in the shard files, as long as given. */
+  public synchronized void saveProgress(long offset, Map<String, ShardedWriter.Length> shardLengths)
+      throws IOException {
+    progress.stringPropertyNames().stream()
+        .filter(key -> key.startsWith(SHARD))
+        .forEach(progress::remove);
+    shardLengths.forEach(
+        (shard, length) ->
+            progress.setProperty(SHARD + shard, length.stored() + " " + length.written()));
+    progress.setProperty("offset", String.valueOf(offset));
+    save();
+  }
+
+  /** Saves the hierarchy graph, as (child, parent) edges. */
+  public void saveParents(HierarchyGraph hierarchy) throws IOException {
+    write(file("parents"), hierarchy::save);
+  }
+
+  public HierarchyGraph loadParents() throws IOException {
+    try (var in = read(file("parents"))) {
+      return HierarchyGraph.load(in);
+    }
+  }
+
+  /** Saves the alternate names, labels and links, as packed in the store. */
+  public void saveLabels(LabelStore labels) throws IOException {
+    write(file("labels"), labels::save);
+  }
+
+  public void loadLabels(LabelStore labels) throws IOException {
+    try (var in = read(file("labels"))) {
+      labels.load(in);
+    }
+  }
+
+  /** Removes the checkpoint, once the conversion is complete. */
+  public void delete() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  private interface Content {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static void write(Path file, Content content) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      content.write(out);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static DataInputStream read(Path file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+  }
+
+  private void save() throws IOException {
+    Path tmp = file(PROGRESS + ".tmp");
+    try (Writer out = Files.newBufferedWriter(tmp, UTF_8)) {
+      progress.store(out, "GeoNames converter checkpoint");
+    }
+    Files.move(tmp, progressFile(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private Path progressFile() {
+    return dir.resolve(PROGRESS);
+  }
+
+  private static String stamp(ConversionOptions options) throws IOException {
+    var stamp = new StringBuilder();
+    for (String input : INPUTS) {
+      Path file = Paths.get(options.getInput(), input);
+      stamp.append(Files.size(file)).append(':');
+      stamp.append(Files.getLastModifiedTime(file).toMillis()).append(' ');
+    }
+    return stamp
+        .append(options.getFormat())
+        .append(' ')
+        .append(options.getCompression())
+        .append(' ')
+        .append(options.getGraph())
+        .append(options.isAncestors() ? " ancestors" : "")
+        .append(options.getNearby() > 0 ? " nearby=" + options.getNearby() : "")
+        .append(options.isWkt() ? " wkt" : "")
+        .append(' ')
+        .append(options.getPartition())
+        .append(options.getPartition() == Partition.HASH ? " " + options.getShards() : "")
+        .append(" max=")
+        .append(options.getMaxFileSize())
+        .append(options.getLanguages() != null ? " languages=" + options.getLanguages() : "")
+        .append(options.isPreferredLabels() ? " preferred" : "")
+        .append(options.getLabelsPerLanguage() > 0 ? " top=" + options.getLabelsPerLanguage() : "")
+        .append(options.isPostcodes() ? " postcodes" : "")
+        .append(options.getFilter() != null ? " filter=" + options.getFilter() : "")
+        .append(options.getPredicates() != null ? " predicates=" + options.getPredicates() : "")
+        .toString();
+  }
+}
@@ -0,0 +1,198 @@
+package conversion;
+
+import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/*
+ * Command line switches of the converter, given as --name=value (or --name for flags).
+ */
+@Accessors(chain = true)
+@Getter
+@Setter
+public class ConversionOptions {
+
+  public enum JoinMode {
+    /** side tables are loaded in memory, allCountries is streamed in parallel */
+    HASH,
+    /** every input is externally sorted by geonameid, then merge-joined in one sequential pass */
+    SORT_MERGE
+  }
+
+  public enum OutputFormat {
+    /** pretty-printed through rdf4j, with prefixes */
+    TURTLE("ttl"),
+    /** one triple per line, serialized by hand straight to the files */
+    NTRIPLES("nt"),
+    /** N-Triples in the named graph given by --graph */
+    NQUADS("nq"),
+    /** rdf4j's binary RDF, repeated values written once and then referred to by id */
+    BINARY("brf"),
+    /** blocks of a sorted term dictionary and the triples as ids, see DictionaryWriter */
+    DICTIONARY("rdfd");
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+      this.extension = extension;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+
+    /** Whether the triples go to an rdf4j writer as Statements, not as N-Triples bytes. */
+    public boolean isRdf4j() {
+      return this == TURTLE || this == BINARY;
+    }
+  }
+
+  public enum Compression {
+    NONE(""),
+    /** blocks deflated in parallel into concatenated gzip members */
+    GZIP(".gz");
+
+    private final String suffix;
+
+    Compression(String suffix) {
+      this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+      return suffix;
+    }
+  }
+
+  public enum Partition {
+    /** one file per country code, as always */
+    COUNTRY,
+    /** one file per continent */
+    CONTINENT,
+    /** --shards files of about the same size */
+    HASH
+  }
+
+  private String input = "input_source";
+  private String output = "output";
+  private JoinMode joinMode = JoinMode.HASH;
+  private int linesPerRun = 500_000;
+  private String adminIndex;
+  private boolean singlePass = false;
+  private OutputFormat format = OutputFormat.TURTLE;
+  private String graph = NS_GEONAMES_INSTANCES;
+  private Compression compression = Compression.NONE;
+  private String state = "state";
+  private boolean saveState = false;
+  private String delta;
+  private boolean checkpoint = false;
+  private boolean resume = false;
+  private String report;
+  private int progress = 10;
+  private boolean ancestors = false;
+  private int nearby = 0;
+  private boolean wkt = false;
+  private Partition partition = Partition.COUNTRY;
+  private int shards = 64;
+  private long maxFileSize = 0;
+  private boolean sequentialStages = false;
+  private String languages;
+  private boolean preferredLabels = false;
+  private int labelsPerLanguage = 0;
+  private boolean postcodes = false;
+  private String filter;
+  private String predicates;
+  private String store;
+  private int port = 8080;
+  private long cacheSize = 64 << 20;
+  private boolean deterministic = false;
+
+  public static ConversionOptions parse(String... args) {
+    ConversionOptions options = new ConversionOptions();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("::: Unexpected argument " + arg);
+      }
+      int eq = arg.indexOf('=');
+      String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+      String value = eq < 0 ? "true" : arg.substring(eq + 1);
+      options.set(name, value);
+    }
+    return options;
+  }
+
+  private void set(String name, String value) {
+    switch (name) {
+      case "input" -> input = value;
+      case "output" -> output = value;
+      case "join" -> joinMode = enumValue(JoinMode.class, value);
+      case "lines-per-run" -> linesPerRun = Integer.parseInt(value);
+      case "admin-index" -> adminIndex = value;
+      case "single-pass" -> singlePass = Boolean.parseBoolean(value);
+      case "format" -> format = enumValue(OutputFormat.class, value);
+      case "graph" -> graph = value;
+      case "compress" -> compression = enumValue(Compression.class, value);
+      case "state" -> state = value;
+      case "save-state" -> saveState = Boolean.parseBoolean(value);
+      case "delta" -> delta = value;
+      case "checkpoint" -> checkpoint = Boolean.parseBoolean(value);
+      case "resume" -> resume = Boolean.parseBoolean(value);
+      case "report" -> report = value;
+      case "progress" -> progress = Integer.parseInt(value);
+      case "ancestors" -> ancestors = Boolean.parseBoolean(value);
+      case "nearby" -> nearby = Integer.parseInt(value);
+      case "wkt" -> wkt = Boolean.parseBoolean(value);
+      case "partition" -> partition = enumValue(Partition.class, value);
+      case "shards" -> shards = Integer.parseInt(value);
+      case "max-file-size" -> maxFileSize = bytes(value);
+      case "sequential-stages" -> sequentialStages = Boolean.parseBoolean(value);
+      case "languages" -> languages = value;
+      case "preferred-labels" -> preferredLabels = Boolean.parseBoolean(value);
+      case "labels-per-language" -> labelsPerLanguage = Integer.parseInt(value);
+      case "postcodes" -> postcodes = Boolean.parseBoolean(value);
+      case "filter" -> filter = value;
+      case "predicates" -> predicates = value;
+      case "store" -> store = value;
+      case "port" -> port = Integer.parseInt(value);
+      case "cache-size" -> cacheSize = bytes(value);
+      case "deterministic" -> deterministic = Boolean.parseBoolean(value);
+      default -> throw new IllegalArgumentException("::: Unknown option --" + name);
+    }
+  }
+
+  /** Where the admin codes index is cached between runs, null (the default) for nowhere. */
+  public String getAdminIndex() {
+    return adminIndex == null || adminIndex.isEmpty() ? null : adminIndex;
+  }
+
+  /** Where the JSON run report goes, by default run-report.json in the output directory. */
+  public String getReport() {
+    return report != null ? report : output + "/run-report.json";
+  }
+
+  /** Whether progress is checkpointed; resuming a run implies it. */
+  public boolean isCheckpoint() {
+    return checkpoint || resume;
+  }
+
+  /** A size in bytes, with an optional k, m or g suffix. */
+  static long bytes(String value) {
+    String digits = value.toLowerCase();
+    int shift =
+        switch (digits.charAt(digits.length() - 1)) {
+          case 'k' -> 10;
+          case 'm' -> 20;
+          case 'g' -> 30;
+          default -> 0;
+        };
+    if (shift > 0) {
+      digits = digits.substring(0, digits.length() - 1);
+    }
+    return Long.parseLong(digits) << shift;
+  }
+
+  static <E extends Enum<E>> E enumValue(Class<E> type, String value) {
+    return Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
+  }
+}
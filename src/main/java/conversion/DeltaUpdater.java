@@ -0,0 +1,293 @@
+package conversion;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static conversion.GeonamesHeaders.modificationDate;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Incremental conversion. Applies the GeoNames daily files (modifications, deletes,
+ * alternateNamesModifications, alternateNamesDeletes) to the FeatureState saved by a full run and
+ * writes, per day, an RDF Patch of the triples deleted (D) and added (A) in between. Only the
+ * state buckets holding touched features are loaded and rewritten.
+ *
+ * The triples of a feature are compared before and after the update, so an unchanged label or
+ * coordinate produces no patch row. Modifications older than the state's row are skipped.
+ * Features whose admin parent appears or changes through someone else's update keep their old
+ * parentFeature until they are modified themselves. A day's buckets and patch are committed to the
+ * state together, see FeatureState. --predicates applies to the patch; --filter and --nearby do
+ * not, and are rejected.
+ */
+public class DeltaUpdater {
+
+  private static final Logger logger = LoggerFactory.getLogger(DeltaUpdater.class);
+  // written next to the final one, see FeatureState.commit()
+  private static final Pattern UNCOMMITTED_PATCH =
+      Pattern.compile("patch-\\d{4}-\\d{2}-\\d{2}\\.rdfp\\.next");
+  private static final Pattern DELTA_FILE =
+      Pattern.compile(
+          "(modifications|deletes|alternateNamesModifications|alternateNamesDeletes)"
+              + "-(\\d{4}-\\d{2}-\\d{2})\\.txt");
+
+  private final ConversionOptions options;
+  private final FeatureFilter predicates;
+
+  public DeltaUpdater(ConversionOptions options) {
+    if (options.getFilter() != null || options.getNearby() > 0) {
+      throw new IllegalArgumentException("::: --delta applies neither --filter nor --nearby");
+    }
+    this.options = options;
+    this.predicates = FeatureFilter.parse(null, options.getPredicates());
+  }
+
+  /** The changes of one day, keyed by geonameid (alternate names by alternateNameId). */
+  private static class Delta {
+    final Map<Long, String> features = new TreeMap<>();
+    final Set<Long> deletes = new TreeSet<>();
+    final Map<Long, String> names = new TreeMap<>();
+    final Map<Long, Long> nameDeletes = new TreeMap<>();
+
+    Set<Long> touched() {
+      Set<Long> ids = new TreeSet<>(features.keySet());
+      ids.addAll(deletes);
+      names.values().forEach(line -> ids.add(ExternalSorter.key(line, 1)));
+      ids.addAll(nameDeletes.values());
+      return ids;
+    }
+  }
+
+  /** Applies every delta newer than the state, in date order. */
+  public void run() throws IOException {
+    // completes or drops an interrupted commit of the state, then the patch it did not commit
+    FeatureState state = FeatureState.open(Paths.get(options.getState()));
+    Path output = Paths.get(options.getOutput());
+    Files.createDirectories(output);
+    try (Stream<Path> files = Files.list(output)) {
+      for (Path file : files.toList()) {
+        if (UNCOMMITTED_PATCH.matcher(file.getFileName().toString()).matches()) {
+          Files.delete(file);
+        }
+      }
+    }
+
+    Map<String, Map<String, Path>> days = new TreeMap<>();
+    try (Stream<Path> files = Files.list(Paths.get(options.getDelta()))) {
+      files.forEach(
+          file -> {
+            Matcher matcher = DELTA_FILE.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+              days.computeIfAbsent(matcher.group(2), d -> new TreeMap<>())
+                  .put(matcher.group(1), file);
+            }
+          });
+    }
+    for (var day : days.entrySet()) {
+      if (day.getKey().compareTo(state.getLastDelta()) > 0) {
+        apply(state, day.getKey(), readDelta(day.getValue()));
+      } else {
+        logger.info("Skipping delta {}, already applied", day.getKey());
+      }
+    }
+  }
+
+  private void apply(FeatureState state, String date, Delta delta) throws IOException {
+    AdminCodeIndex before = state.loadAdmins();
+    LabelProjection labels = LabelProjection.of(options);
+    var oldTriples = new FeatureConverter(before).withLabels(labels);
+    if (options.isWkt()) {
+      oldTriples.withWkt();
+    }
+
+    ListMultimap<Integer, Long> byBucket = MultimapBuilder.treeKeys().arrayListValues().build();
+    delta.touched().forEach(id -> byBucket.put(FeatureState.bucketOf(id), id));
+
+    // the old triples and the updated rows of the touched features, with the rows applied: older
+    // modifications than the state's are not
+    Map<Integer, Map<Long, Set<String>>> olds = new TreeMap<>();
+    Map<Integer, FeatureState.Bucket> updated = new TreeMap<>();
+    List<String> applied = newArrayList();
+    byBucket.keySet().parallelStream()
+        .forEach(
+            index -> {
+              FeatureState.Bucket bucket = state.load(index);
+              Set<Long> ids = new LinkedHashSet<>(byBucket.get(index));
+              Map<Long, Set<String>> old = triples(bucket, ids, oldTriples, predicates);
+              List<String> rows = update(bucket, delta, ids);
+              try {
+                state.stage(bucket);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+              synchronized (olds) {
+                olds.put(index, old);
+                updated.put(index, bucket.slice(ids));
+                applied.addAll(rows);
+              }
+            });
+
+    // the index after the day's divisions, for the new triples
+    AdminCodeIndex after = state.loadAdmins();
+    Set<Long> replaced = new TreeSet<>(delta.deletes);
+    applied.forEach(line -> replaced.add(ExternalSorter.key(line, 0)));
+    after.removeAll(replaced);
+    applied.forEach(line -> after.add(new GeonamesFeature(line)));
+    var newTriples = new FeatureConverter(after).withLabels(labels);
+    if (options.isWkt()) {
+      newTriples.withWkt();
+    }
+
+    Map<Integer, List<String>> patches = new TreeMap<>();
+    updated.keySet().parallelStream()
+        .forEach(
+            index -> {
+              Set<Long> ids = new LinkedHashSet<>(byBucket.get(index));
+              Map<Long, Set<String>> old = olds.get(index);
+              Map<Long, Set<String>> now = triples(updated.get(index), ids, newTriples, predicates);
+              List<String> patch = newArrayList();
+              for (long id : ids) {
+                Set<String> removed = old.get(id);
+                Set<String> added = now.get(id);
+                for (String triple : removed) {
+                  if (!added.contains(triple)) {
+                    patch.add("D " + triple);
+                  }
+                }
+                for (String triple : added) {
+                  if (!removed.contains(triple)) {
+                    patch.add("A " + triple);
+                  }
+                }
+              }
+              synchronized (patches) {
+                patches.put(index, patch);
+              }
+            });
+
+    Path file = Paths.get(options.getOutput(), "patch-" + date + ".rdfp");
+    int rows = 0;
+    try (BufferedWriter out = Files.newBufferedWriter(FeatureState.next(file), UTF_8)) {
+      out.write("TX .\n");
+      for (List<String> patch : patches.values()) {
+        for (String row : patch) {
+          out.write(row);
+          out.write('\n');
+        }
+        rows += patch.size();
+      }
+      out.write("TC .\n");
+    }
+    state.commit(date, after, file);
+    logger.info("Applied delta {}: {} features, {} patch rows", date, delta.touched().size(), rows);
+  }
+
+  /** Applies the day to the bucket, returning the feature rows it took. */
+  private static List<String> update(FeatureState.Bucket bucket, Delta delta, Set<Long> ids) {
+    List<String> applied = newArrayList();
+    for (long id : ids) {
+      String line = delta.features.get(id);
+      String current = bucket.features.get(id);
+      if (delta.deletes.contains(id)) {
+        bucket.features.remove(id);
+        bucket.hierarchy.removeAll(id);
+      } else if (line != null && (current == null || !isOlder(line, current))) {
+        bucket.features.put(id, line);
+        applied.add(line);
+      }
+    }
+    delta.nameDeletes.forEach(
+        (nameId, id) -> {
+          if (ids.contains(id)) {
+            bucket.names.remove(nameId);
+          }
+        });
+    delta.names.forEach(
+        (nameId, line) -> {
+          if (ids.contains(ExternalSorter.key(line, 1))) {
+            if (AlternateName.isWanted(TsvRecord.of(line))) {
+              bucket.names.put(nameId, line);
+            } else {
+              bucket.names.remove(nameId);
+            }
+          }
+        });
+    // the names of deleted features go with them
+    bucket.names.values().removeIf(line -> delta.deletes.contains(ExternalSorter.key(line, 1)));
+    return applied;
+  }
+
+  // whether the row was modified before the current one, dates being yyyy-MM-dd
+  private static boolean isOlder(String line, String current) {
+    String date = new GeonamesFeature(line).get(modificationDate);
+    return date.compareTo(new GeonamesFeature(current).get(modificationDate)) < 0;
+  }
+
+  /** The N-Triples lines of each feature, empty for the missing ones. */
+  private static Map<Long, Set<String>> triples(
+      FeatureState.Bucket bucket,
+      Set<Long> ids,
+      FeatureConverter converter,
+      FeatureFilter predicates) {
+    Multimap<Long, AlternateName> names = bucket.namesOf(ids);
+    Map<Long, Set<String>> triples = new TreeMap<>();
+    var encoder = new NTriplesEncoder(null);
+    for (long id : ids) {
+      Set<String> lines = new LinkedHashSet<>();
+      String row = bucket.features.get(id);
+      if (row != null) {
+        Collection<TsvRecord> parents = newArrayList();
+        bucket.hierarchy.get(id).forEach(line -> parents.add(TsvRecord.of(line)));
+        converter.convert(
+            new GeonamesFeature(row), names.get(id), parents, predicates.project(encoder.reset()));
+        for (String line : new String(encoder.toByteArray(), UTF_8).split("\n")) {
+          lines.add(line);
+        }
+      }
+      triples.put(id, lines);
+    }
+    return triples;
+  }
+
+  private static Delta readDelta(Map<String, Path> files) throws IOException {
+    var delta = new Delta();
+    read(files.get("modifications"), line -> delta.features.put(ExternalSorter.key(line, 0), line));
+    read(files.get("deletes"), line -> delta.deletes.add(ExternalSorter.key(line, 0)));
+    read(
+        files.get("alternateNamesModifications"),
+        line -> delta.names.put(ExternalSorter.key(line, 0), line));
+    read(
+        files.get("alternateNamesDeletes"),
+        line -> delta.nameDeletes.put(ExternalSorter.key(line, 0), ExternalSorter.key(line, 1)));
+    return delta;
+  }
+
+  private static void read(Path file, Consumer<String> consumer) throws IOException {
+    if (file == null) {
+      return;
+    }
+    try (Stream<String> lines = Files.lines(file, UTF_8)) {
+      lines.filter(line -> !line.isBlank()).forEach(consumer);
+    }
+  }
+}
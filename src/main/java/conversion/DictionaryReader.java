@@ -0,0 +1,170 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Reads the files of DictionaryWriter back, block by block. Within a block, a term is found by
+ * id without decoding the others: its bucket is at a known offset, and at most BUCKET_SIZE - 1
+ * front coded terms precede it there.
+ */
+public class DictionaryReader {
+
+  /** Receives the triples as N-Triples terms. */
+  public interface TermHandler {
+    void triple(String subject, String predicate, String object) throws IOException;
+  }
+
+  /** Reads every block of the file (gzipped when it ends with .gz). */
+  public static void forEach(Path file, TermHandler handler) throws IOException {
+    try (InputStream raw = Files.newInputStream(file);
+        InputStream in =
+            file.toString().endsWith(".gz")
+                ? new GZIPInputStream(raw, 1 << 16)
+                : new BufferedInputStream(raw, 1 << 16)) {
+      var data = new DataInputStream(in);
+      while (readBlock(data, handler)) {
+        // next block
+      }
+    }
+  }
+
+  /** Writes the triples of the file as N-Triples. */
+  public static void toNTriples(Path file, OutputStream out) throws IOException {
+    forEach(
+        file,
+        (subject, predicate, object) ->
+            out.write((subject + " " + predicate + " " + object + " .\n").getBytes(UTF_8)));
+  }
+
+  /** Prints the files given as N-Triples, for loaders that do not read them. */
+  public static void main(String[] args) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(System.out, 1 << 16)) {
+      for (String file : args) {
+        toNTriples(Path.of(file), out);
+      }
+    }
+  }
+
+  // false at the end of the file
+  private static boolean readBlock(DataInputStream in, TermHandler handler) throws IOException {
+    byte[] magic = new byte[DictionaryWriter.MAGIC.length];
+    int read = in.readNBytes(magic, 0, magic.length);
+    if (read == 0) {
+      return false;
+    }
+    if (read < magic.length || !Arrays.equals(magic, DictionaryWriter.MAGIC)) {
+      throw new IOException("::: Not a dictionary block");
+    }
+    int version = in.readUnsignedByte();
+    if (version != DictionaryWriter.VERSION) {
+      throw new IOException("::: Unknown dictionary version " + version);
+    }
+    Section predicates = new Section(in);
+    Section terms = new Section(in);
+
+    int subjects = varint(in);
+    int subject = 0;
+    for (int s = 0; s < subjects; s++) {
+      subject += varint(in);
+      String subjectTerm = terms.term(subject);
+      int predicateCount = varint(in);
+      int predicate = 0;
+      for (int p = 0; p < predicateCount; p++) {
+        predicate += varint(in);
+        String predicateTerm = predicates.term(predicate);
+        int objects = varint(in);
+        int object = 0;
+        for (int o = 0; o < objects; o++) {
+          object += varint(in);
+          handler.triple(subjectTerm, predicateTerm, terms.term(object));
+        }
+      }
+    }
+    return true;
+  }
+
+  static int varint(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("::: Truncated dictionary block");
+      }
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  /** A front coded, sorted term section of a block. */
+  static class Section {
+    private final int count;
+    private final int bucketSize;
+    private final int[] offsets;
+    private final byte[] data;
+    private byte[] term = new byte[256];
+
+    Section(DataInputStream in) throws IOException {
+      count = varint(in);
+      bucketSize = varint(in);
+      data = new byte[varint(in)];
+      offsets = new int[(count + bucketSize - 1) / bucketSize];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = in.readInt();
+      }
+      in.readFully(data);
+    }
+
+    /** The term of an id, its rank in the sorted section. */
+    String term(int id) {
+      if (id < 0 || id >= count) {
+        throw new IllegalArgumentException("::: No term " + id + " in a section of " + count);
+      }
+      int[] pos = {offsets[id / bucketSize]};
+      int length = read(pos);
+      ensure(length);
+      System.arraycopy(data, pos[0], term, 0, length);
+      pos[0] += length;
+      for (int i = 0; i < id % bucketSize; i++) {
+        int shared = read(pos);
+        int suffix = read(pos);
+        length = shared + suffix;
+        ensure(length);
+        System.arraycopy(data, pos[0], term, shared, suffix);
+        pos[0] += suffix;
+      }
+      return new String(term, 0, length, UTF_8);
+    }
+
+    private void ensure(int length) {
+      if (term.length < length) {
+        term = Arrays.copyOf(term, Math.max(length, term.length * 2));
+      }
+    }
+
+    // a varint of data at pos[0], which it moves past it
+    private int read(int[] pos) {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = data[pos[0]++];
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Writes triples in a dictionary encoded binary layout after HDT: each term is stored once, and
+ * the triples are ids into the dictionary. A file is a sequence of self-contained blocks, so that
+ * a shard can be ended (synced) and appended to like the other formats:
+ *
+ *   block      = "RDFD" version:byte predicates:section terms:section triples
+ *   section    = count bucketSize dataLength offsets:int32[buckets] data
+ *   bucket     = the terms sorted by their bytes, front coded: the first one whole
+ *                (length bytes), the next ones as (shared prefix length, suffix length, suffix)
+ *   triples    = subjects, then per subject: id delta, predicates; per predicate: id delta,
+ *                objects; per object: id delta; subjects, predicates and objects sorted
+ *
+ * Counts, lengths and deltas are unsigned LEB128 varints. Terms are the N-Triples encoding of the
+ * IRI or literal, predicates having their own, small, id space. Triples are buffered until the
+ * block is ended, or is full (a quarter million triples or 16 MB of terms).
+ */
+public class DictionaryWriter {
+
+  public static final byte[] MAGIC = {'R', 'D', 'F', 'D'};
+  public static final int VERSION = 1;
+  public static final int BUCKET_SIZE = 16;
+
+  // a block ends at either limit, so that its ids fit in 21 bits, three to a long
+  private static final int MAX_TRIPLES = 1 << 18;
+  private static final int MAX_TERM_BYTES = 16 << 20;
+  private static final int ID_BITS = 21;
+  private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+  private final OutputStream out;
+  private final TermTable predicates = new TermTable();
+  private final TermTable terms = new TermTable();
+  private long[] triples = new long[1024];
+  private int size;
+
+  public DictionaryWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /** Adds the triples of N-Triples lines as NTriplesEncoder writes them; may end the block. */
+  public void addNTriples(byte[] lines) throws IOException {
+    int start = 0;
+    while (start < lines.length) {
+      int end = start;
+      while (lines[end] != '\n') {
+        end++;
+      }
+      // "<s> <p> object .": IRIs escape '>', so the first ones end the subject and predicate
+      int subjectEnd = indexOf(lines, '>', start) + 1;
+      int predicateEnd = indexOf(lines, '>', subjectEnd + 1) + 1;
+      add(
+          terms.id(lines, start, subjectEnd),
+          predicates.id(lines, subjectEnd + 1, predicateEnd),
+          terms.id(lines, predicateEnd + 1, end - 2));
+      start = end + 1;
+    }
+  }
+
+  private static int indexOf(byte[] bytes, char c, int from) {
+    int i = from;
+    while (bytes[i] != c) {
+      i++;
+    }
+    return i;
+  }
+
+  private void add(int subject, int predicate, int object) throws IOException {
+    if (size == triples.length) {
+      triples = Arrays.copyOf(triples, size * 2);
+    }
+    triples[size++] = (long) subject << 2 * ID_BITS | (long) predicate << ID_BITS | object;
+    if (size == MAX_TRIPLES || terms.arenaSize > MAX_TERM_BYTES) {
+      endBlock();
+    }
+  }
+
+  /** Triples added since the last block. */
+  public int pending() {
+    return size;
+  }
+
+  /** Writes the triples added so far as one block, if any. */
+  public void endBlock() throws IOException {
+    if (size == 0) {
+      return;
+    }
+    int[] predicateRanks = predicates.ranks();
+    int[] termRanks = terms.ranks();
+    for (int i = 0; i < size; i++) {
+      long triple = triples[i];
+      triples[i] =
+          (long) termRanks[(int) (triple >>> 2 * ID_BITS)] << 2 * ID_BITS
+              | (long) predicateRanks[(int) (triple >>> ID_BITS & ID_MASK)] << ID_BITS
+              | termRanks[(int) (triple & ID_MASK)];
+    }
+    Arrays.parallelSort(triples, 0, size);
+
+    var block = new ByteArrayOutputStream(size * 8);
+    block.write(MAGIC);
+    block.write(VERSION);
+    predicates.writeSorted(block);
+    terms.writeSorted(block);
+    writeTriples(block);
+    block.writeTo(out);
+
+    predicates.clear();
+    terms.clear();
+    size = 0;
+  }
+
+  private void writeTriples(ByteArrayOutputStream block) {
+    int subjects = 0;
+    for (int i = 0; i < size; i++) {
+      subjects += i == 0 || subject(triples[i]) != subject(triples[i - 1]) ? 1 : 0;
+    }
+    varint(block, subjects);
+    int previousSubject = 0;
+    for (int i = 0; i < size; ) {
+      int subject = subject(triples[i]);
+      int end = i;
+      while (end < size && subject(triples[end]) == subject) {
+        end++;
+      }
+      varint(block, subject - previousSubject);
+      previousSubject = subject;
+      writePredicates(block, i, end);
+      i = end;
+    }
+  }
+
+  // the predicates and objects of one subject, triples [from, to)
+  private void writePredicates(ByteArrayOutputStream block, int from, int to) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      count += i == from || predicate(triples[i]) != predicate(triples[i - 1]) ? 1 : 0;
+    }
+    varint(block, count);
+    int previousPredicate = 0;
+    for (int i = from; i < to; ) {
+      int predicate = predicate(triples[i]);
+      int end = i;
+      int objects = 0;
+      for (; end < to && predicate(triples[end]) == predicate; end++) {
+        // duplicates written once
+        objects += end == i || triples[end] != triples[end - 1] ? 1 : 0;
+      }
+      varint(block, predicate - previousPredicate);
+      previousPredicate = predicate;
+      varint(block, objects);
+      int previousObject = 0;
+      for (int j = i; j < end; j++) {
+        if (j == i || triples[j] != triples[j - 1]) {
+          varint(block, object(triples[j]) - previousObject);
+          previousObject = object(triples[j]);
+        }
+      }
+      i = end;
+    }
+  }
+
+  private static int subject(long triple) {
+    return (int) (triple >>> 2 * ID_BITS);
+  }
+
+  private static int predicate(long triple) {
+    return (int) (triple >>> ID_BITS & ID_MASK);
+  }
+
+  private static int object(long triple) {
+    return (int) (triple & ID_MASK);
+  }
+
+  static void varint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write(value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /** The distinct terms of a block, by id of first appearance, in one byte arena. */
+  private static class TermTable {
+    private byte[] arena = new byte[1 << 16];
+    private int arenaSize;
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int count;
+    // open addressing: id + 1, 0 for free
+    private int[] slots = new int[2048];
+    // the ids by rank, from ranks()
+    private int[] order;
+
+    int id(byte[] bytes, int start, int end) {
+      int length = end - start;
+      int hash = 1;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + bytes[i];
+      }
+      int mask = slots.length - 1;
+      int slot = (hash ^ hash >>> 16) & mask;
+      for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+        int id = slots[slot] - 1;
+        if (lengths[id] == length
+            && Arrays.equals(arena, starts[id], starts[id] + length, bytes, start, end)) {
+          return id;
+        }
+      }
+      if (arenaSize + length > arena.length) {
+        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+      }
+      System.arraycopy(bytes, start, arena, arenaSize, length);
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        lengths = Arrays.copyOf(lengths, count * 2);
+      }
+      starts[count] = arenaSize;
+      lengths[count] = length;
+      arenaSize += length;
+      slots[slot] = ++count;
+      if (count * 2 > slots.length) {
+        rehash();
+      }
+      return count - 1;
+    }
+
+    private void rehash() {
+      slots = new int[slots.length * 2];
+      int mask = slots.length - 1;
+      for (int id = 0; id < count; id++) {
+        int hash = 1;
+        for (int i = starts[id]; i < starts[id] + lengths[id]; i++) {
+          hash = 31 * hash + arena[i];
+        }
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+      }
+    }
+
+    /** The position of every id among the terms sorted by their (unsigned) bytes. */
+    int[] ranks() {
+      order =
+          IntStream.range(0, count)
+              .boxed()
+              .sorted(this::compare)
+              .mapToInt(Integer::intValue)
+              .toArray();
+      int[] ranks = new int[count];
+      for (int rank = 0; rank < count; rank++) {
+        ranks[order[rank]] = rank;
+      }
+      return ranks;
+    }
+
+    private int compare(int a, int b) {
+      return Arrays.compareUnsigned(
+          arena, starts[a], starts[a] + lengths[a], arena, starts[b], starts[b] + lengths[b]);
+    }
+
+    /** The section of the terms in the order of ranks(). */
+    void writeSorted(ByteArrayOutputStream out) throws IOException {
+      var data = new ByteArrayOutputStream(arenaSize);
+      int buckets = (count + BUCKET_SIZE - 1) / BUCKET_SIZE;
+      int[] offsets = new int[buckets];
+      for (int rank = 0; rank < count; rank++) {
+        int id = order[rank];
+        if (rank % BUCKET_SIZE == 0) {
+          offsets[rank / BUCKET_SIZE] = data.size();
+          varint(data, lengths[id]);
+          data.write(arena, starts[id], lengths[id]);
+          continue;
+        }
+        int previous = order[rank - 1];
+        int shared =
+            Math.max(
+                0,
+                Arrays.mismatch(
+                    arena,
+                    starts[previous],
+                    starts[previous] + lengths[previous],
+                    arena,
+                    starts[id],
+                    starts[id] + lengths[id]));
+        varint(data, shared);
+        varint(data, lengths[id] - shared);
+        data.write(arena, starts[id] + shared, lengths[id] - shared);
+      }
+      varint(out, count);
+      varint(out, BUCKET_SIZE);
+      varint(out, data.size());
+      for (int offset : offsets) {
+        out.write(offset >>> 24);
+        out.write(offset >>> 16);
+        out.write(offset >>> 8);
+        out.write(offset);
+      }
+      data.writeTo(out);
+    }
+
+    void clear() {
+      arenaSize = 0;
+      count = 0;
+      order = null;
+      Arrays.fill(slots, 0);
+    }
+  }
+}
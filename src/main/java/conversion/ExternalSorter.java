@@ -0,0 +1,142 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.AbstractIterator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * External merge sort of a tab separated file by a numeric key column: bounded runs are sorted in
+ * memory and spilled, then merged back with a k-way merge. Equal keys keep their input order.
+ */
+public class ExternalSorter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ExternalSorter.class);
+
+  private final Path spillDir;
+  private final int linesPerRun;
+
+  public ExternalSorter(Path spillDir, int linesPerRun) {
+    this.spillDir = spillDir;
+    this.linesPerRun = linesPerRun;
+  }
+
+  public SortedLines sort(Path input, int keyColumn) throws IOException {
+    Files.createDirectories(spillDir);
+    List<Path> runs = new ArrayList<>();
+    List<KeyedLine> buffer = new ArrayList<>(linesPerRun);
+
+    try (Stream<String> lines = Files.lines(input, UTF_8)) {
+      for (var it = lines.iterator(); it.hasNext(); ) {
+        String line = it.next();
+        buffer.add(new KeyedLine(key(line, keyColumn), line));
+        if (buffer.size() == linesPerRun) {
+          runs.add(spill(input, buffer));
+        }
+      }
+    }
+    if (!buffer.isEmpty() || runs.isEmpty()) {
+      runs.add(spill(input, buffer));
+    }
+    logger.info("Sorted {} into {} runs", input.getFileName(), runs.size());
+    return new SortedLines(runs, keyColumn);
+  }
+
+  private Path spill(Path input, List<KeyedLine> buffer) throws IOException {
+    buffer.sort(Comparator.comparingLong(KeyedLine::key)); // stable
+    Path run = Files.createTempFile(spillDir, input.getFileName() + "-", ".run");
+    try (BufferedWriter writer = Files.newBufferedWriter(run, UTF_8)) {
+      for (KeyedLine keyed : buffer) {
+        writer.write(keyed.line());
+        writer.newLine();
+      }
+    }
+    buffer.clear();
+    return run;
+  }
+
+  /** Numeric value of the given tab separated column, without splitting the whole line. */
+  static long key(String line, int column) {
+    int start = 0;
+    for (int i = 0; i < column; i++) {
+      start = line.indexOf('\t', start) + 1;
+      if (start == 0) {
+        throw new IllegalArgumentException("::: Missing key column on " + line);
+      }
+    }
+    int end = line.indexOf('\t', start);
+    return Long.parseLong(line.substring(start, end < 0 ? line.length() : end));
+  }
+
+  private record KeyedLine(long key, String line) {}
+
+  /** Lines in key order, merged lazily from the spilled runs; closing deletes the runs. */
+  public static class SortedLines extends AbstractIterator<String> implements Closeable {
+
+    private final List<Path> runs;
+    private final int keyColumn;
+    private final List<BufferedReader> readers = new ArrayList<>();
+    private final PriorityQueue<Head> heads =
+        new PriorityQueue<>(Comparator.comparingLong(Head::key).thenComparingInt(Head::run));
+
+    private SortedLines(List<Path> runs, int keyColumn) throws IOException {
+      this.runs = runs;
+      this.keyColumn = keyColumn;
+      for (Path run : runs) {
+        readers.add(Files.newBufferedReader(run, UTF_8));
+        advance(readers.size() - 1);
+      }
+    }
+
+    /** Key of the next line, or {@link Long#MAX_VALUE} when exhausted. */
+    public long peekKey() {
+      return hasNext() ? key(peek(), keyColumn) : Long.MAX_VALUE;
+    }
+
+    @Override
+    protected String computeNext() {
+      Head head = heads.poll();
+      if (head == null) {
+        return endOfData();
+      }
+      advance(head.run());
+      return head.line();
+    }
+
+    private void advance(int run) {
+      try {
+        String line = readers.get(run).readLine();
+        if (line != null) {
+          heads.add(new Head(key(line, keyColumn), run, line));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (BufferedReader reader : readers) {
+        reader.close();
+      }
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+    }
+
+    private record Head(long key, int run, String line) {}
+  }
+}
@@ -0,0 +1,226 @@
+package conversion;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
+import static namespaces.Vocabulary.ADMIN2;
+import static namespaces.Vocabulary.ALT;
+import static namespaces.Vocabulary.ANCESTOR;
+import static namespaces.Vocabulary.AS_WKT;
+import static namespaces.Vocabulary.COUNTRY_CODE;
+import static namespaces.Vocabulary.FEATURE;
+import static namespaces.Vocabulary.FEATURE_CLASS;
+import static namespaces.Vocabulary.FEATURE_CODE;
+import static namespaces.Vocabulary.GTOPO30;
+import static namespaces.Vocabulary.LAT;
+import static namespaces.Vocabulary.LOCATED_IN;
+import static namespaces.Vocabulary.LONG;
+import static namespaces.Vocabulary.MODIFIED;
+import static namespaces.Vocabulary.NAME;
+import static namespaces.Vocabulary.NEARBY;
+import static namespaces.Vocabulary.PAGE;
+import static namespaces.Vocabulary.PARENT_FEATURE;
+import static namespaces.Vocabulary.POPULATION;
+import static namespaces.Vocabulary.TIMEZONE;
+import static namespaces.Vocabulary.WKT_LITERAL;
+import static namespaces.Vocabulary.WIKIPEDIA_ARTICLE;
+import static namespaces.Vocabulary.featureClass;
+import static namespaces.Vocabulary.featureCode;
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+import com.google.common.primitives.ImmutableLongArray;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+
+/*
+ * Builds the triples of one feature from its allCountries row, its links and labels, its
+ * hierarchy parents and the admin codes index. Shared by every conversion mode.
+ */
+public class FeatureConverter {
+
+  private final AdminCodeIndex admins;
+  private HierarchyGraph ancestors;
+  private SpatialIndex places;
+  private int nearby;
+  private boolean wkt;
+  private LabelProjection projection = LabelProjection.DEFAULT;
+
+  public FeatureConverter(AdminCodeIndex admins) {
+    this.admins = admins;
+  }
+
+  /** Also writes an ancestor triple per ADM feature above, from the graph's closed ancestors. */
+  public FeatureConverter withAncestors(HierarchyGraph hierarchy) {
+    this.ancestors = hierarchy;
+    return this;
+  }
+
+  /** Also links every populated place to its k nearest ones in the index. */
+  public FeatureConverter withNearby(SpatialIndex places, int k) {
+    this.places = places;
+    this.nearby = k;
+    return this;
+  }
+
+  /** Also writes the coordinates as a GeoSPARQL WKT point. */
+  public FeatureConverter withWkt() {
+    this.wkt = true;
+    return this;
+  }
+
+  /** Which alternate names convert() writes, rather than LabelProjection.DEFAULT. */
+  public FeatureConverter withLabels(LabelProjection projection) {
+    this.projection = projection;
+    return this;
+  }
+
+  /** Links and hierarchy parents (geonameids) of one feature, however they were looked up. */
+  record Relations(Collection<String> links, long[] locatedIn, long[] parentFeatures) {}
+
+  void getStatements(GeonamesFeature feature, Relations relations, TripleSink sink) {
+
+    IRI subject = feature.getSubject();
+
+    if (isNotEmpty(feature.getNameValue())) {
+      sink.langLiteral(subject, NAME, feature.getNameValue(), "en");
+    }
+
+    if (feature.getPopulationValue().length() > 1) {
+      sink.literal(subject, POPULATION, feature.getPopulationValue(), XSD.INTEGER);
+    }
+    if (isNotEmpty(feature.getLongValue())) {
+      sink.literal(subject, LONG, feature.getLongValue(), XSD.DECIMAL);
+    }
+    if (isNotEmpty(feature.getLatValue())) {
+      sink.literal(subject, LAT, feature.getLatValue(), XSD.DECIMAL);
+    }
+    if (wkt && isNotEmpty(feature.getLongValue()) && isNotEmpty(feature.getLatValue())) {
+      String point = "POINT(" + feature.getLongValue() + " " + feature.getLatValue() + ")";
+      sink.literal(subject, AS_WKT, point, WKT_LITERAL);
+    }
+    if (isNotEmpty(feature.getAltValue())) {
+      sink.literal(subject, ALT, feature.getAltValue(), XSD.DECIMAL);
+    }
+    if (isNotEmpty(feature.getElevationValue())) {
+      sink.literal(subject, GTOPO30, feature.getElevationValue(), XSD.DECIMAL);
+    }
+    if (isNotEmpty(feature.getFeatureClassField())) {
+      sink.iri(subject, FEATURE_CLASS, featureClass(feature.getFeatureClassField()));
+    }
+    if (isNotEmpty(feature.getFeatureCodeField())) {
+      sink.iri(subject, FEATURE_CODE, featureCode(feature.getFeatureCodeField()));
+    }
+    if (isNotEmpty(feature.getCountry())) {
+      sink.sharedLiteral(subject, COUNTRY_CODE, feature.getCountry(), null);
+    }
+
+    if (isNotEmpty(feature.getTimezoneValue())) {
+      sink.sharedLiteral(subject, TIMEZONE, feature.getTimezoneValue(), null);
+    }
+    if (isNotEmpty(feature.getModificationDateValue())) {
+      sink.sharedLiteral(subject, MODIFIED, feature.getModificationDateValue(), XSD.DATE);
+    }
+
+    if (isNotEmpty(feature.getAdmin2Value()) && feature.getFeatureCodeField().equals("A.ADM2")) {
+      sink.literal(subject, ADMIN2, feature.getAdmin2Value(), null);
+    }
+
+    for (String link : relations.links()) {
+      link(sink, subject, link);
+    }
+
+    for (long broader : relations.locatedIn()) {
+      sink.iri(subject, LOCATED_IN, iri(codeToUri(broader)));
+    }
+
+    for (long broader : relations.parentFeatures()) {
+      sink.iri(subject, PARENT_FEATURE, iri(codeToUri(broader)));
+    }
+
+    // fields admin1... admin4
+    long father =
+        admins.lookup(
+            feature.getCountry(),
+            feature.getAdmin1Value(),
+            feature.getAdmin2Value(),
+            feature.getAdmin3Value(),
+            feature.getAdmin4Value());
+
+    if (father >= 0 && father != feature.getGeonameid()) {
+      sink.iri(subject, PARENT_FEATURE, iri(codeToUri(father)));
+    }
+
+    if (ancestors != null) {
+      for (long ancestor : ancestors.ancestors(feature.getGeonameid(), father)) {
+        sink.iri(subject, ANCESTOR, iri(codeToUri(ancestor)));
+      }
+    }
+
+    if (places != null && SpatialIndex.isPlace(feature)) {
+      long id = feature.getGeonameid();
+      for (long place : places.nearest(id, feature.getLatitude(), feature.getLongitude(), nearby)) {
+        sink.iri(subject, NEARBY, iri(codeToUri(place)));
+      }
+    }
+
+    // Feature class declaration
+    sink.iri(subject, RDF.TYPE, FEATURE);
+  }
+
+  /** All the triples of a feature given its own alternateNames and hierarchy rows. */
+  void convert(
+      GeonamesFeature feature,
+      Collection<AlternateName> names,
+      Collection<TsvRecord> hierarchy,
+      TripleSink sink) {
+    Set<String> links = newLinkedHashSet();
+    List<AlternateName> postcodes = newArrayList();
+    List<AlternateName> labels = newArrayList();
+    for (AlternateName name : names) {
+      String tag = projection.tagOf(name);
+      if (tag == null) {
+        continue;
+      }
+      switch (tag) {
+        case LabelProjection.LINK -> links.add(name.getLabel());
+        case LabelProjection.POSTCODE -> postcodes.add(name);
+        default -> labels.add(name.withLang(tag));
+      }
+    }
+
+    var locatedIn = ImmutableLongArray.builder();
+    var parentFeatures = ImmutableLongArray.builder();
+    for (TsvRecord row : hierarchy) {
+      (isAdm(row) ? parentFeatures : locatedIn).add(row.getLong(0));
+    }
+
+    var relations =
+        new Relations(links, locatedIn.build().toArray(), parentFeatures.build().toArray());
+    getStatements(feature, relations, sink);
+    for (AlternateName name : projection.best(labels)) {
+      LabelStore.label(
+          sink, feature.getSubject(), name.getLang(), name.getLabel(), name.getFlags());
+    }
+    for (AlternateName name : postcodes) {
+      LabelStore.postcode(sink, feature.getSubject(), name.getLabel());
+    }
+  }
+
+  /** A wikipedia article or another page of the feature. */
+  static void link(TripleSink sink, IRI subject, String link) {
+    sink.literal(subject, link.contains("wikipedia") ? WIKIPEDIA_ARTICLE : PAGE, link, null);
+  }
+
+  static boolean isAdm(TsvRecord hierarchyRow) {
+    return hierarchyRow.equals(2, "ADM");
+  }
+
+  private static String codeToUri(long geonameid) {
+    return NS_GEONAMES_INSTANCES + geonameid + "/";
+  }
+}
@@ -0,0 +1,257 @@
+package conversion;
+
+import static namespaces.Vocabulary.ALTERNATE_NAME;
+import static namespaces.Vocabulary.ANCESTOR;
+import static namespaces.Vocabulary.COLLOQUIAL_NAME;
+import static namespaces.Vocabulary.HISTORICAL_NAME;
+import static namespaces.Vocabulary.LOCATED_IN;
+import static namespaces.Vocabulary.OFFICIAL_NAME;
+import static namespaces.Vocabulary.PAGE;
+import static namespaces.Vocabulary.PARENT_FEATURE;
+import static namespaces.Vocabulary.POSTAL_CODE;
+import static namespaces.Vocabulary.SHORT_NAME;
+import static namespaces.Vocabulary.WIKIPEDIA_ARTICLE;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import namespaces.Vocabulary;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+/*
+ * Which features are converted and which of their triples are written, for jobs that need a
+ * subset of the dump. --filter is a conjunction of clauses over the allCountries columns, by
+ * their GeonamesHeaders name, tested on the raw row before any feature is decoded:
+ *
+ *   filter = clause (";" clause)*
+ *   clause = column ("=" | "!=" | "^=") value ("," value)*   any of the values, ^= a prefix
+ *          | column (">" | ">=" | "<" | "<=") number         numeric columns only; an empty or
+ *                                                            malformed field never matches
+ *
+ * e.g. "featureClass=P;population>=15000;countryCode=FR,DE". --predicates lists the local names
+ * of the predicates to write (name, population, locatedIn, type...). The indexes nothing kept
+ * reads are not built: no labels without a name, link or postcode predicate, no hierarchy without
+ * locatedIn, parentFeature or ancestor; and once a filter is set, the labels and hierarchy rows of
+ * the features it drops are not loaded.
+ */
+public class FeatureFilter implements Predicate<TsvRecord> {
+
+  /** Every feature, every triple. */
+  public static final FeatureFilter ALL = new FeatureFilter(List.of(), null);
+
+  private static final Pattern CLAUSE = Pattern.compile("(\\w+)\\s*(!=|\\^=|>=|<=|=|>|<)(.*)");
+  private static final Set<IRI> LABELS =
+      Set.of(
+          ALTERNATE_NAME,
+          OFFICIAL_NAME,
+          SHORT_NAME,
+          COLLOQUIAL_NAME,
+          HISTORICAL_NAME,
+          POSTAL_CODE,
+          WIKIPEDIA_ARTICLE,
+          PAGE);
+  private static final Set<IRI> HIERARCHY = Set.of(LOCATED_IN, PARENT_FEATURE, ANCESTOR);
+  // the columns comparisons apply to
+  private static final Set<Integer> NUMERIC =
+      Set.of(
+          GeonamesHeaders.geonameid,
+          GeonamesHeaders.latitude,
+          GeonamesHeaders.longitude,
+          GeonamesHeaders.population,
+          GeonamesHeaders.elevation,
+          GeonamesHeaders.altitude);
+
+  private final List<Predicate<TsvRecord>> clauses;
+  // null for all
+  private final Set<IRI> predicates;
+
+  FeatureFilter(List<Predicate<TsvRecord>> clauses, Set<IRI> predicates) {
+    this.clauses = clauses;
+    this.predicates = predicates;
+  }
+
+  public static FeatureFilter of(ConversionOptions options) {
+    return parse(options.getFilter(), options.getPredicates());
+  }
+
+  /** Either may be null or empty, for all features or all predicates. */
+  public static FeatureFilter parse(String filter, String predicates) {
+    List<Predicate<TsvRecord>> clauses = new ArrayList<>();
+    if (filter != null) {
+      for (String clause : filter.split(";")) {
+        if (!clause.isBlank()) {
+          clauses.add(clause(clause.strip()));
+        }
+      }
+    }
+    Set<IRI> kept = null;
+    if (predicates != null && !predicates.isBlank()) {
+      Map<String, IRI> known = predicatesByName();
+      kept = new HashSet<>();
+      for (String name : predicates.split(",")) {
+        IRI predicate = known.get(name.strip());
+        if (predicate == null) {
+          throw new IllegalArgumentException("::: Unknown predicate " + name);
+        }
+        kept.add(predicate);
+      }
+    }
+    return new FeatureFilter(List.copyOf(clauses), kept);
+  }
+
+  private static Predicate<TsvRecord> clause(String clause) {
+    Matcher matcher = CLAUSE.matcher(clause);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("::: Not a filter clause: " + clause);
+    }
+    int column = GeonamesHeaders.column(matcher.group(1));
+    String op = matcher.group(2);
+    String value = matcher.group(3).strip();
+    return switch (op) {
+      case "=" -> anyOf(column, value, false);
+      case "!=" -> anyOf(column, value, false).negate();
+      case "^=" -> anyOf(column, value, true);
+      default -> {
+        if (!NUMERIC.contains(column)) {
+          throw new IllegalArgumentException("::: Not a numeric column in: " + clause);
+        }
+        yield compare(column, op, number(clause, value));
+      }
+    };
+  }
+
+  private static Predicate<TsvRecord> anyOf(int column, String values, boolean prefix) {
+    Predicate<TsvRecord> any = record -> false;
+    for (String value : values.split(",")) {
+      String v = value.strip();
+      Predicate<TsvRecord> one;
+      if (!v.chars().allMatch(c -> c < 0x80)) {
+        // equals() and startsWith() compare bytes with ASCII chars
+        one =
+            prefix
+                ? record -> record.getString(column).startsWith(v)
+                : record -> record.getString(column).equals(v);
+      } else {
+        one = prefix ? record -> record.startsWith(column, v) : record -> record.equals(column, v);
+      }
+      any = any.or(one);
+    }
+    return any;
+  }
+
+  private static Predicate<TsvRecord> compare(int column, String op, double bound) {
+    return record -> {
+      if (record.isEmpty(column)) {
+        return false;
+      }
+      double value;
+      try {
+        value = record.getDouble(column);
+      } catch (NumberFormatException e) {
+        return false; // a row to fix upstream, not a reason to stop the run
+      }
+      return switch (op) {
+        case ">" -> value > bound;
+        case ">=" -> value >= bound;
+        case "<" -> value < bound;
+        default -> value <= bound;
+      };
+    };
+  }
+
+  private static double number(String clause, String value) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("::: Not a number in filter clause: " + clause, e);
+    }
+  }
+
+  // the predicates of Vocabulary, and rdf:type, by local name
+  private static Map<String, IRI> predicatesByName() {
+    Map<String, IRI> byName = new HashMap<>();
+    byName.put(RDF.TYPE.getLocalName(), RDF.TYPE);
+    for (Field field : Vocabulary.class.getFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == IRI.class) {
+        try {
+          IRI iri = (IRI) field.get(null);
+          byName.put(iri.getLocalName(), iri);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return byName;
+  }
+
+  /** Whether a raw allCountries row is converted. */
+  @Override
+  public boolean test(TsvRecord record) {
+    for (Predicate<TsvRecord> clause : clauses) {
+      if (!clause.test(record)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether some features are dropped. */
+  public boolean isFiltering() {
+    return !clauses.isEmpty();
+  }
+
+  /** Whether the labels and links are needed at all. */
+  public boolean needsLabels() {
+    return predicates == null || LABELS.stream().anyMatch(predicates::contains);
+  }
+
+  /** Whether the hierarchy is needed at all. */
+  public boolean needsHierarchy() {
+    return predicates == null || HIERARCHY.stream().anyMatch(predicates::contains);
+  }
+
+  /** The sink, or one writing only the predicates kept. */
+  public TripleSink project(TripleSink sink) {
+    if (predicates == null) {
+      return sink;
+    }
+    return new TripleSink() {
+      @Override
+      public void iri(IRI subject, IRI predicate, IRI object) {
+        if (predicates.contains(predicate)) {
+          sink.iri(subject, predicate, object);
+        }
+      }
+
+      @Override
+      public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+        if (predicates.contains(predicate)) {
+          sink.literal(subject, predicate, label, datatype);
+        }
+      }
+
+      @Override
+      public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+        if (predicates.contains(predicate)) {
+          sink.langLiteral(subject, predicate, label, lang);
+        }
+      }
+
+      @Override
+      public void sharedLiteral(IRI subject, IRI predicate, String label, IRI datatype) {
+        if (predicates.contains(predicate)) {
+          sink.sharedLiteral(subject, predicate, label, datatype);
+        }
+      }
+    };
+  }
+}
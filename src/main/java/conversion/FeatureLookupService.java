@@ -0,0 +1,166 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Serves the triples of single features from a FeatureStore, in process or over HTTP, for the
+ * services that only need a few features at a time rather than a triplestore:
+ *
+ *   GET /feature/{geonameid}           the N-Triples of the feature
+ *   GET /children/{geonameid or code}  its parentFeature children, one IRI per line; an admin
+ *                                      code (FR.11) stands for the division it denotes
+ *   GET /stats                         lookups, cache hit rate and latency percentiles, as JSON
+ *
+ * Records go through an LRU cache bounded by their total size in bytes, and the latency of every
+ * lookup is recorded in a histogram. Requests are each handled on a virtual thread.
+ */
+public class FeatureLookupService {
+
+  private static final Logger logger = LoggerFactory.getLogger(FeatureLookupService.class);
+  // cached for the features the store does not have
+  private static final byte[] MISSING = new byte[0];
+
+  private final FeatureStore store;
+  private final LoadingCache<Long, byte[]> records;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  /** Caches at most cacheBytes of records. */
+  public FeatureLookupService(FeatureStore store, long cacheBytes) {
+    this.store = store;
+    records =
+        CacheBuilder.newBuilder()
+            .maximumWeight(cacheBytes)
+            .<Long, byte[]>weigher((id, record) -> record.length + 16)
+            .recordStats()
+            .build(
+                new CacheLoader<>() {
+                  @Override
+                  public byte[] load(Long id) {
+                    byte[] record = store.get(id);
+                    return record != null ? record : MISSING;
+                  }
+                });
+  }
+
+  /** The N-Triples of a feature, or null when the store does not have it. */
+  public byte[] feature(long id) {
+    long start = System.nanoTime();
+    byte[] record = records.getUnchecked(id);
+    latencies.record(System.nanoTime() - start);
+    return record == MISSING ? null : record;
+  }
+
+  /** The children of a feature, by geonameid. */
+  public long[] children(long id) {
+    return store.children(id);
+  }
+
+  /** The children of the division of an admin code, none when there is no such division. */
+  public long[] children(String adminCode) {
+    long division = store.division(adminCode);
+    return division < 0 ? new long[0] : store.children(division);
+  }
+
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  public CacheStats getCacheStats() {
+    return records.stats();
+  }
+
+  /** Starts serving on the given port. */
+  public HttpServer serve(int port) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/feature/", this::feature);
+    server.createContext("/children/", this::children);
+    server.createContext("/stats", exchange -> send(exchange, 200, "application/json", stats()));
+    server.start();
+    logger.info("Serving {} features on port {}", store.size(), port);
+    return server;
+  }
+
+  private void feature(HttpExchange exchange) throws IOException {
+    long id = idOf(key(exchange, "/feature/"));
+    byte[] record = id < 0 ? null : feature(id);
+    if (record == null) {
+      send(exchange, 404, "text/plain", "::: No feature\n".getBytes(UTF_8));
+    } else {
+      send(exchange, 200, "application/n-triples", record);
+    }
+  }
+
+  private void children(HttpExchange exchange) throws IOException {
+    String key = key(exchange, "/children/");
+    long id = idOf(key);
+    var body = new StringBuilder();
+    for (long child : id >= 0 ? children(id) : children(key)) {
+      body.append('<').append(NS_GEONAMES_INSTANCES).append(child).append("/>\n");
+    }
+    send(exchange, 200, "text/plain", body.toString().getBytes(UTF_8));
+  }
+
+  // the end of the path, after the context
+  private static String key(HttpExchange exchange, String context) {
+    return exchange.getRequestURI().getPath().substring(context.length());
+  }
+
+  // the geonameid of a key, or -1
+  private static long idOf(String key) {
+    return !key.isEmpty() && key.length() < 19 && key.chars().allMatch(Character::isDigit)
+        ? Long.parseLong(key)
+        : -1;
+  }
+
+  private static void send(HttpExchange exchange, int status, String type, byte[] body)
+      throws IOException {
+    try (exchange) {
+      exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+      exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+      exchange.getResponseBody().write(body);
+    }
+  }
+
+  private byte[] stats() {
+    CacheStats cache = records.stats();
+    var json = new StringBuilder("{");
+    json.append("\"features\": ").append(store.size());
+    json.append(", \"lookups\": ").append(latencies.count());
+    json.append(", \"cache\": {\"size\": ").append(records.size());
+    json.append(", \"hits\": ").append(cache.hitCount());
+    json.append(", \"misses\": ").append(cache.missCount());
+    json.append(", \"hitRate\": ").append(String.format(Locale.ROOT, "%.4f", cache.hitRate()));
+    json.append("}, \"latencyMicros\": {");
+    json.append("\"p50\": ").append(latencies.percentile(0.5) / 1000.0);
+    json.append(", \"p90\": ").append(latencies.percentile(0.9) / 1000.0);
+    json.append(", \"p99\": ").append(latencies.percentile(0.99) / 1000.0);
+    json.append(", \"p999\": ").append(latencies.percentile(0.999) / 1000.0);
+    return json.append("}}\n").toString().getBytes(UTF_8);
+  }
+
+  /** Serves the store of --store on --port, with --cache-size bytes of cache. */
+  public static void main(String... args) throws IOException {
+    ConversionOptions options = ConversionOptions.parse(args);
+    if (options.getStore() == null) {
+      throw new IllegalArgumentException("::: --store is needed");
+    }
+    var store = FeatureStore.open(Paths.get(options.getStore()));
+    new FeatureLookupService(store, options.getCacheSize()).serve(options.getPort());
+  }
+}
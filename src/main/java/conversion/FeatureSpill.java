@@ -0,0 +1,132 @@
+package conversion;
+
+import static conversion.GeonamesHeaders.columns;
+import static conversion.GeonamesHeaders.usedColumns;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+
+/*
+ * Parsed features kept in a compact binary form between the scan and the emit phase, so that
+ * allCountries.txt is read and split only once. Every scanning thread appends to its own segment;
+ * segments are replayed in parallel. Only the columns the converter uses are kept, as raw UTF-8
+ * bytes: neither side decodes them.
+ */
+public class FeatureSpill implements AutoCloseable {
+
+  private static final int BUFFER = 1 << 16;
+
+  private final Path dir;
+  private final Queue<DataOutputStream> segments = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<DataOutputStream> segment = ThreadLocal.withInitial(this::newSegment);
+
+  public FeatureSpill(Path dir) throws IOException {
+    this.dir = Files.createDirectories(dir);
+  }
+
+  /** Thread-safe. */
+  public void append(TsvRecord record) {
+    DataOutputStream out = segment.get();
+    try {
+      for (int column : usedColumns) {
+        record.writeTo(column, out);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Closes the segments; call once all appends are done. */
+  @Override
+  public void close() throws IOException {
+    for (DataOutputStream out : segments) {
+      out.close();
+    }
+    segments.clear();
+  }
+
+  /**
+   * Replays every spilled feature as a record of all the columns, the unused ones empty. Segments
+   * are replayed in parallel and records are reused: they must not escape the call.
+   */
+  public void replay(Consumer<TsvRecord> consumer) throws IOException {
+    List<Path> files;
+    try (Stream<Path> list = Files.list(dir)) {
+      files = list.collect(Collectors.toList());
+    }
+    BooleanSupplier cancelled = StageScheduler.cancellation();
+    files.parallelStream().forEach(file -> read(file, consumer, cancelled));
+  }
+
+  public void delete() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  private static void read(Path file, Consumer<TsvRecord> consumer, BooleanSupplier cancelled) {
+    try (var in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER))) {
+      TsvRecord record = new TsvRecord();
+      byte[] bytes = new byte[1024];
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      int[] starts = new int[columns];
+      int[] ends = new int[columns];
+      for (long lines = 1; ; lines++) {
+        if (lines % TsvReader.CHECK_EVERY == 0) {
+          TsvReader.checkCancelled(cancelled);
+        }
+        int position = 0;
+        try {
+          for (int column : usedColumns) {
+            int length = in.readUnsignedShort();
+            if (bytes.length < position + length) {
+              bytes = Arrays.copyOf(bytes, Math.max(position + length, bytes.length * 2));
+              buffer = ByteBuffer.wrap(bytes);
+            }
+            in.readFully(bytes, position, length);
+            starts[column] = position;
+            ends[column] = position += length;
+          }
+        } catch (EOFException e) {
+          return;
+        }
+        record.clear(buffer);
+        for (int column = 0, used = 0; column < columns; column++) {
+          boolean isUsed = used < usedColumns.length && usedColumns[used] == column;
+          record.addField(isUsed ? starts[column] : 0, isUsed ? ends[column] : 0);
+          used += isUsed ? 1 : 0;
+        }
+        consumer.accept(record);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private DataOutputStream newSegment() {
+    try {
+      Path file = Files.createTempFile(dir, "features-", ".spill");
+      var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER));
+      segments.add(out);
+      return out;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Persistent per-feature state for incremental updates: the source rows of every feature (its
+ * allCountries row, its alternate names and its hierarchy rows), partitioned into buckets by
+ * geonameid so that a delta only loads and rewrites the buckets it touches. Buckets are plain
+ * tab separated files in the dump's own formats, plus the admin codes index and a manifest.
+ *
+ * A delta is applied as one commit: the buckets, the patch, the index and the manifest are first
+ * written next to their files (NEXT suffix), then a journal listing them is written and they are
+ * moved into place. A crash before the journal leaves the state as it was, the day being applied
+ * again by the next run; open() completes a commit whose journal was written. The manifest records
+ * the size and checksum of the admin codes index it goes with.
+ */
+public class FeatureState {
+
+  private static final Logger logger = LoggerFactory.getLogger(FeatureState.class);
+
+  static final int BUCKETS = 64;
+  private static final String MANIFEST = "state.properties";
+  private static final String LAST_DELTA = "lastDelta";
+  private static final String ADMIN_INDEX = "adminIndex";
+  private static final String JOURNAL = "commit.journal";
+  // the files of the commit in progress are written with this suffix
+  static final String NEXT = ".next";
+
+  private final Path dir;
+  private final Properties manifest = new Properties();
+  // the files stage() wrote for the next commit
+  private final Set<Path> staged = ConcurrentHashMap.newKeySet();
+
+  private FeatureState(Path dir) {
+    this.dir = dir;
+  }
+
+  /** The rows of one bucket, keyed by geonameid (alternate names by alternateNameId). */
+  public static class Bucket {
+
+    private final int index;
+    final Map<Long, String> features = new LinkedHashMap<>();
+    final Map<Long, String> names = new LinkedHashMap<>();
+    final ListMultimap<Long, String> hierarchy =
+        MultimapBuilder.linkedHashKeys().arrayListValues().build();
+
+    Bucket(int index) {
+      this.index = index;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    /** A bucket of the rows of the given features only. */
+    Bucket slice(Set<Long> ids) {
+      var slice = new Bucket(index);
+      for (long id : ids) {
+        String feature = features.get(id);
+        if (feature != null) {
+          slice.features.put(id, feature);
+        }
+        slice.hierarchy.putAll(id, hierarchy.get(id));
+      }
+      names.forEach(
+          (nameId, line) -> {
+            if (ids.contains(ExternalSorter.key(line, 1))) {
+              slice.names.put(nameId, line);
+            }
+          });
+      return slice;
+    }
+
+    /** The alternate names of the given features, by geonameid. */
+    ListMultimap<Long, AlternateName> namesOf(Set<Long> ids) {
+      ListMultimap<Long, AlternateName> byFeature =
+          MultimapBuilder.hashKeys().arrayListValues().build();
+      for (String line : names.values()) {
+        AlternateName name = new AlternateName(line);
+        if (ids.contains(name.getId())) {
+          byFeature.put(name.getId(), name);
+        }
+      }
+      return byFeature;
+    }
+  }
+
+  public static int bucketOf(long geonameid) {
+    return (int) Math.floorMod(geonameid, (long) BUCKETS);
+  }
+
+  /** Builds the state from a full dump, replacing whatever was in the directory. */
+  public static FeatureState create(Path dir, Path input) throws IOException {
+    Files.createDirectories(dir);
+    var state = new FeatureState(dir);
+    state.recover();
+    logger.info("Saving feature state in {}", dir);
+
+    AdminCodeIndex admins = new AdminCodeIndex();
+    state.split(
+        input.resolve("allCountries.txt"),
+        "features",
+        (record, writers) -> {
+          GeonamesFeature feature = GeonamesFeature.reuse(record);
+          if (AdminCodeIndex.isDivision(feature)) {
+            admins.add(feature);
+          }
+          write(writers[bucketOf(record.getLong(0))], record);
+        });
+    state.split(
+        input.resolve("alternateNames.txt"),
+        "names",
+        (record, writers) -> {
+          if (AlternateName.isWanted(record)) {
+            write(writers[bucketOf(record.getLong(1))], record);
+          }
+        });
+    state.split(
+        input.resolve("hierarchy.txt"),
+        "hierarchy",
+        (record, writers) -> write(writers[bucketOf(record.getLong(1))], record));
+
+    admins.save(state.adminIndexFile(), null);
+    state.manifest.setProperty("buckets", String.valueOf(BUCKETS));
+    state.manifest.setProperty(ADMIN_INDEX, checksum(state.adminIndexFile()));
+    save(state.manifest, next(state.manifestFile()));
+    Files.move(
+        next(state.manifestFile()), state.manifestFile(), StandardCopyOption.REPLACE_EXISTING);
+    return state;
+  }
+
+  /** Opens an existing state. */
+  public static FeatureState open(Path dir) throws IOException {
+    var state = new FeatureState(dir);
+    if (Files.isDirectory(dir)) {
+      state.recover();
+    }
+    if (!Files.exists(state.manifestFile())) {
+      throw new IOException("::: No feature state in " + dir + ", run once with --save-state");
+    }
+    try (Reader in = Files.newBufferedReader(state.manifestFile(), UTF_8)) {
+      state.manifest.load(in);
+    }
+    if (Integer.parseInt(state.manifest.getProperty("buckets")) != BUCKETS) {
+      throw new IOException("::: Feature state in " + dir + " has a different bucket count");
+    }
+    return state;
+  }
+
+  /** The date of the last applied delta, "" when none. */
+  public String getLastDelta() {
+    return manifest.getProperty(LAST_DELTA, "");
+  }
+
+  public AdminCodeIndex loadAdmins() throws IOException {
+    Path file = adminIndexFile();
+    AdminCodeIndex admins = null;
+    if (Files.exists(file) && checksum(file).equals(manifest.getProperty(ADMIN_INDEX))) {
+      admins = AdminCodeIndex.load(file, null);
+    }
+    if (admins == null) {
+      throw new IOException("::: Admin codes index missing from " + dir + " or not its own");
+    }
+    return admins;
+  }
+
+  /**
+   * Records an applied delta: the staged buckets, the given files (written to their NEXT sibling),
+   * the admin codes index and the manifest go into place together.
+   */
+  public void commit(String lastDelta, AdminCodeIndex admins, Path... files) throws IOException {
+    List<Path> targets = new ArrayList<>(staged);
+    targets.addAll(List.of(files));
+    admins.save(next(adminIndexFile()), null);
+    targets.add(adminIndexFile());
+    var updated = new Properties();
+    updated.putAll(manifest);
+    updated.setProperty(LAST_DELTA, lastDelta);
+    updated.setProperty(ADMIN_INDEX, checksum(next(adminIndexFile())));
+    save(updated, next(manifestFile()));
+    targets.add(manifestFile());
+
+    Path journal = dir.resolve(JOURNAL);
+    // absolute, for a recovery run from another directory
+    List<String> lines = targets.stream().map(t -> t.toAbsolutePath().toString()).toList();
+    Files.write(next(journal), lines, UTF_8);
+    Files.move(next(journal), journal, StandardCopyOption.ATOMIC_MOVE);
+    replay(journal);
+    manifest.putAll(updated);
+    staged.clear();
+  }
+
+  public Bucket load(int index) {
+    var bucket = new Bucket(index);
+    read(file("features", index), line -> bucket.features.put(key(line, 0), line));
+    read(file("names", index), line -> bucket.names.put(key(line, 0), line));
+    read(file("hierarchy", index), line -> bucket.hierarchy.put(key(line, 1), line));
+    return bucket;
+  }
+
+  /** Writes a bucket for the next commit, the current one staying as it is until then. */
+  public void stage(Bucket bucket) throws IOException {
+    stage(file("features", bucket.index), bucket.features.values());
+    stage(file("names", bucket.index), bucket.names.values());
+    stage(file("hierarchy", bucket.index), bucket.hierarchy.values());
+  }
+
+  static Path next(Path file) {
+    return file.resolveSibling(file.getFileName() + NEXT);
+  }
+
+  // completes the commit whose journal was written, drops the files of one that was not
+  private void recover() throws IOException {
+    Path journal = dir.resolve(JOURNAL);
+    if (Files.exists(journal)) {
+      logger.warn("::: Completing the delta commit interrupted in {}", dir);
+      replay(journal);
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : files.filter(f -> f.toString().endsWith(NEXT)).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  // the journal is only dropped once every file it lists is in place
+  private static void replay(Path journal) throws IOException {
+    List<Path> targets = Files.readAllLines(journal, UTF_8).stream().map(Paths::get).toList();
+    for (Path file : targets) {
+      if (!Files.exists(next(file)) && !Files.exists(file)) {
+        throw new IOException(
+            "::: " + journal + " lists " + file + ", neither it nor its " + NEXT + " file exists");
+      }
+    }
+    for (Path file : targets) {
+      // moved already when replaying after a crash
+      if (Files.exists(next(file))) {
+        Files.move(
+            next(file), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
+    Files.delete(journal);
+  }
+
+  private interface Splitter {
+    void accept(TsvRecord record, Writer[] writers) throws IOException;
+  }
+
+  private void split(Path source, String kind, Splitter splitter) throws IOException {
+    Writer[] writers = new Writer[BUCKETS];
+    try {
+      for (int i = 0; i < BUCKETS; i++) {
+        writers[i] = Files.newBufferedWriter(file(kind, i), UTF_8);
+      }
+      TsvReader.forEachSequential(
+          source,
+          record -> {
+            try {
+              splitter.accept(record, writers);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } finally {
+      for (Writer writer : writers) {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+  }
+
+  private static void write(Writer writer, TsvRecord record) throws IOException {
+    writer.write(record.line());
+    writer.write('\n');
+  }
+
+  private static void read(Path file, Consumer<String> consumer) {
+    try (var lines = Files.lines(file, UTF_8)) {
+      lines.filter(line -> !line.isEmpty()).forEach(consumer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void stage(Path file, Iterable<String> lines) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(next(file), UTF_8)) {
+      for (String line : lines) {
+        out.write(line);
+        out.write('\n');
+      }
+    }
+    staged.add(file);
+  }
+
+  // size and CRC32C of a whole file
+  private static String checksum(Path file) throws IOException {
+    var crc = new CRC32C();
+    try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return Files.size(file) + ":" + Long.toHexString(crc.getValue());
+  }
+
+  private static long key(String line, int column) {
+    return ExternalSorter.key(line, column);
+  }
+
+  private static void save(Properties manifest, Path file) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file, UTF_8)) {
+      manifest.store(out, "GeoNames converter feature state");
+    }
+  }
+
+  private Path manifestFile() {
+    return dir.resolve(MANIFEST);
+  }
+
+  private Path adminIndexFile() {
+    return dir.resolve("admin-index");
+  }
+
+  private Path file(String kind, int bucket) {
+    return dir.resolve(String.format("%s-%02d.tsv", kind, bucket));
+  }
+}
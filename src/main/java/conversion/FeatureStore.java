@@ -0,0 +1,123 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Read-only view of the files of FeatureStoreWriter, memory-mapped: a lookup is a binary search
+ * in the mapped index and a copy of the record, with no read call nor heap index. Only the
+ * division codes are loaded, a few hundred thousand at most.
+ *
+ * A mapped buffer is at most 2 GB, so the data file is mapped in windows of WINDOW bytes, each
+ * overlapping the next by the largest record: the window a record starts in holds all of it.
+ * Reads are absolute and the store is safe for any number of threads.
+ */
+public class FeatureStore {
+
+  private static final long WINDOW = 1L << 30;
+  private static final int HEADER = 8;
+
+  private final MappedByteBuffer[] windows;
+  private final MappedByteBuffer index;
+  private final int count;
+  private final MappedByteBuffer edges;
+  private final int edgeCount;
+  private final Map<String, Long> divisions = new HashMap<>();
+
+  private FeatureStore(Path dir) throws IOException {
+    try (FileChannel data = FileChannel.open(dir.resolve("features.dat"))) {
+      long size = data.size();
+      windows = new MappedByteBuffer[(int) Math.max(1, (size + WINDOW - 1) / WINDOW)];
+      for (int i = 0; i < windows.length; i++) {
+        long start = i * WINDOW;
+        long length = Math.min(size - start, WINDOW + FeatureStoreWriter.MAX_RECORD);
+        windows[i] = data.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+      }
+    }
+    index = map(dir.resolve("features.idx"));
+    count = index.getInt(4);
+    edges = map(dir.resolve("children.idx"));
+    edgeCount = edges.getInt(4);
+    for (String line : Files.readAllLines(dir.resolve("divisions.tsv"), UTF_8)) {
+      int tab = line.indexOf('\t');
+      divisions.putIfAbsent(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+    }
+  }
+
+  public static FeatureStore open(Path dir) throws IOException {
+    return new FeatureStore(dir);
+  }
+
+  private static MappedByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.capacity() < HEADER || buffer.getInt(0) != FeatureStoreWriter.MAGIC) {
+        throw new IOException("::: Not a feature store index " + file);
+      }
+      return buffer;
+    }
+  }
+
+  /** The N-Triples of a feature, or null when the store does not have it. */
+  public byte[] get(long id) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long key = index.getLong(HEADER + 16 * middle);
+      if (key < id) {
+        low = middle + 1;
+      } else if (key > id) {
+        high = middle - 1;
+      } else {
+        long location = index.getLong(HEADER + 16 * middle + 8);
+        long offset = location >>> 24;
+        byte[] record = new byte[(int) (location & (FeatureStoreWriter.MAX_RECORD - 1))];
+        windows[(int) (offset / WINDOW)].get((int) (offset % WINDOW), record);
+        return record;
+      }
+    }
+    return null;
+  }
+
+  /** The geonameids of the features whose parentFeature is the given one, in id order. */
+  public long[] children(long parent) {
+    // the first edge of the parent
+    long first = parent << 32;
+    int low = 0;
+    int high = edgeCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (edges.getLong(HEADER + 8 * middle) < first) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    int end = low;
+    while (end < edgeCount && edges.getLong(HEADER + 8 * end) >>> 32 == parent) {
+      end++;
+    }
+    long[] children = new long[end - low];
+    for (int i = low; i < end; i++) {
+      children[i - low] = edges.getLong(HEADER + 8 * i) & 0xFFFFFFFFL;
+    }
+    return children;
+  }
+
+  /** The geonameid of the division of an admin code (FR, FR.11, FR.11.75...), or -1. */
+  public long division(String code) {
+    return divisions.getOrDefault(code, -1L);
+  }
+
+  public int size() {
+    return count;
+  }
+}
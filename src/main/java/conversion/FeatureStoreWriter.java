@@ -0,0 +1,223 @@
+package conversion;
+
+import static conversion.GeonamesHeaders.admin1code;
+import static conversion.GeonamesHeaders.admin2code;
+import static conversion.GeonamesHeaders.admin3code;
+import static conversion.GeonamesHeaders.admin4code;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
+import static namespaces.Vocabulary.PARENT_FEATURE;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableLongArray;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.rdf4j.model.IRI;
+
+/*
+ * Writes the feature store FeatureStore serves lookups from, as features() goes: the N-Triples
+ * of every feature appended to one data file, then, once closed, the indexes by geonameid.
+ *
+ *   features.dat   the records, in the order the features were converted
+ *   features.idx   MAGIC, count, then count (geonameid, offset << 24 | length) pairs by geonameid
+ *   children.idx   MAGIC, count, then the sorted (parent << 32 | child) parentFeature edges
+ *   divisions.tsv  admin code (FR, FR.11, FR.11.75...) and geonameid of every division
+ *
+ * Records are written at offsets reserved atomically, so the converting threads never wait for
+ * each other; each collects its index entries on its own, as LabelStore does.
+ */
+public class FeatureStoreWriter implements AutoCloseable {
+
+  public static final int MAGIC = 0x474e4653; // GNFS
+  public static final int MAX_RECORD = 1 << 24;
+
+  private final Path dir;
+  private final FileChannel data;
+  private final AtomicLong size = new AtomicLong();
+  private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(this::newRecorder);
+
+  public FeatureStoreWriter(Path dir) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    data =
+        FileChannel.open(
+            dir.resolve("features.dat"),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+  }
+
+  /**
+   * The given sink, also recording the triples of the calling thread's next feature for the
+   * store; add() writes them.
+   */
+  public TripleSink tee(TripleSink output) {
+    Recorder r = recorder.get();
+    r.encoder.reset();
+    r.output = output;
+    return r;
+  }
+
+  /** Writes the triples recorded since tee(), those of the given feature. Thread-safe. */
+  public void add(GeonamesFeature feature) {
+    Recorder r = recorder.get();
+    long id = feature.getGeonameid();
+    byte[] record = r.encoder.toByteArray();
+    if (record.length >= MAX_RECORD) {
+      throw new IllegalArgumentException("::: Record too long for " + id);
+    }
+    long offset = size.getAndAdd(record.length);
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(record);
+      while (buffer.hasRemaining()) {
+        data.write(buffer, offset + buffer.position());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    r.index.add(id).add(offset << 24 | record.length);
+    if (AdminCodeIndex.isDivision(feature)) {
+      r.divisions.add(divisionCode(feature) + "\t" + id);
+    }
+    r.output = null;
+  }
+
+  // FR, FR.11, FR.11.75...
+  private static String divisionCode(GeonamesFeature feature) {
+    var code = new StringBuilder(feature.getCountry());
+    for (int column : new int[] {admin1code, admin2code, admin3code, admin4code}) {
+      if (!feature.isEmpty(column)) {
+        code.append('.').append(feature.get(column));
+      }
+    }
+    return code.toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    data.close();
+    var index = ImmutableLongArray.builder();
+    var children = ImmutableLongArray.builder();
+    try (BufferedWriter divisions = Files.newBufferedWriter(dir.resolve("divisions.tsv"), UTF_8)) {
+      for (Recorder r : recorders) {
+        index.addAll(r.index.build());
+        children.addAll(r.children.build());
+        for (String division : r.divisions.build()) {
+          divisions.write(division);
+          divisions.newLine();
+        }
+      }
+    }
+    writeIndex(index.build().toArray());
+    writeEdges(children.build().toArray());
+  }
+
+  // the (geonameid, location) pairs sorted by geonameid
+  private void writeIndex(long[] pairs) throws IOException {
+    int count = pairs.length / 2;
+    long[] order = new long[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = pairs[2 * i] << 32 | i;
+    }
+    Arrays.parallelSort(order);
+    try (var out = output("features.idx")) {
+      out.writeInt(MAGIC);
+      out.writeInt(count);
+      for (long key : order) {
+        int i = (int) key;
+        out.writeLong(pairs[2 * i]);
+        out.writeLong(pairs[2 * i + 1]);
+      }
+    }
+  }
+
+  private void writeEdges(long[] edges) throws IOException {
+    Arrays.parallelSort(edges);
+    // the admin codes parent is often a hierarchy parent as well
+    int distinct = 0;
+    for (int i = 0; i < edges.length; i++) {
+      if (i == 0 || edges[i] != edges[i - 1]) {
+        edges[distinct++] = edges[i];
+      }
+    }
+    try (var out = output("children.idx")) {
+      out.writeInt(MAGIC);
+      out.writeInt(distinct);
+      for (int i = 0; i < distinct; i++) {
+        out.writeLong(edges[i]);
+      }
+    }
+  }
+
+  private DataOutputStream output(String name) throws IOException {
+    return new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(dir.resolve(name)), 1 << 16));
+  }
+
+  private Recorder newRecorder() {
+    Recorder r = new Recorder();
+    recorders.add(r);
+    return r;
+  }
+
+  /** Passes the triples on to the output and encodes them for the store, of one thread. */
+  private static class Recorder implements TripleSink {
+    private final NTriplesEncoder encoder = new NTriplesEncoder(null);
+    private final ImmutableLongArray.Builder index = ImmutableLongArray.builder();
+    private final ImmutableLongArray.Builder children = ImmutableLongArray.builder();
+    private final ImmutableList.Builder<String> divisions = ImmutableList.builder();
+    private TripleSink output;
+
+    @Override
+    public void iri(IRI subject, IRI predicate, IRI object) {
+      output.iri(subject, predicate, object);
+      encoder.iri(subject, predicate, object);
+      if (predicate.equals(PARENT_FEATURE)) {
+        long parent = idOf(object);
+        long child = idOf(subject);
+        if (parent >= 0 && child >= 0) {
+          children.add(parent << 32 | child);
+        }
+      }
+    }
+
+    @Override
+    public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+      output.literal(subject, predicate, label, datatype);
+      encoder.literal(subject, predicate, label, datatype);
+    }
+
+    @Override
+    public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+      output.langLiteral(subject, predicate, label, lang);
+      encoder.langLiteral(subject, predicate, label, lang);
+    }
+
+    @Override
+    public void sharedLiteral(IRI subject, IRI predicate, String label, IRI datatype) {
+      output.sharedLiteral(subject, predicate, label, datatype);
+      encoder.literal(subject, predicate, label, datatype);
+    }
+  }
+
+  // the geonameid of a feature IRI, -1 for other IRIs
+  static long idOf(IRI feature) {
+    String iri = feature.stringValue();
+    if (!iri.startsWith(NS_GEONAMES_INSTANCES) || !iri.endsWith("/")) {
+      return -1;
+    }
+    return Long.parseLong(iri, NS_GEONAMES_INSTANCES.length(), iri.length() - 1, 10);
+  }
+}
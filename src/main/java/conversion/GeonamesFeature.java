@@ -5,6 +5,7 @@ import static conversion.GeonamesHeaders.admin2code;
 import static conversion.GeonamesHeaders.admin3code;
 import static conversion.GeonamesHeaders.admin4code;
 import static conversion.GeonamesHeaders.altitude;
+import static conversion.GeonamesHeaders.columns;
 import static conversion.GeonamesHeaders.countryCode;
 import static conversion.GeonamesHeaders.elevation;
 import static conversion.GeonamesHeaders.featureClass;
@@ -16,58 +17,229 @@ import static conversion.GeonamesHeaders.modificationDate;
 import static conversion.GeonamesHeaders.name;
 import static conversion.GeonamesHeaders.population;
 import static conversion.GeonamesHeaders.timezone;
+import static conversion.GeonamesHeaders.usedColumns;
 import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
 import static org.eclipse.rdf4j.model.util.Values.iri;
 
-import lombok.Getter;
-import lombok.experimental.Accessors;
+import java.util.Arrays;
 import org.eclipse.rdf4j.model.IRI;
 
-@Accessors(chain = true)
-@Getter
+/*
+ * A row of allCountries.txt. Instances are meant to be reused from row to row (one per worker
+ * thread): columns are decoded lazily, by index, and cached until the next reset(), so columns
+ * nobody reads never become Strings. Use copy() for a feature that must outlive its row.
+ */
 public class GeonamesFeature {
 
-  private String country;
-  private String id;
-  private String nameValue;
-  private String uri;
-  private final IRI subject;
-  private final String featureCodeField;
-  private final String featureClassField;
-  private final String populationValue;
-  private final String timezoneValue;
-  private final String modificationDateValue;
-  private final String latValue;
-  private final String longValue;
-  private final String altValue;
-  private final String elevationValue;
-  private final String admin1Value;
-  private final String admin2Value;
-  private final String admin3Value;
-  private final String admin4Value;
+  private static final ThreadLocal<GeonamesFeature> reusable =
+      ThreadLocal.withInitial(GeonamesFeature::new);
+
+  // the columns with few distinct values, decoded to shared Strings
+  private static final boolean[] interned = new boolean[columns];
+
+  static {
+    int[] few = {featureClass, featureCode, countryCode, admin1code, timezone, modificationDate};
+    for (int column : few) {
+      interned[column] = true;
+    }
+  }
+
+  private TsvRecord record;
+  private final String[] values = new String[columns];
+  private String featureCodeField;
+  private IRI subject;
+
+  public GeonamesFeature() {}
 
   public GeonamesFeature(String line) {
-    String[] fields = line.split("\t");
-    if (fields.length != 19) {
-      throw new RuntimeException("::: Field names mismatch on " + line);
+    reset(TsvRecord.of(line));
+  }
+
+  public GeonamesFeature(TsvRecord record) {
+    reset(record);
+  }
+
+  public GeonamesFeature(String[] fields) {
+    reset(fields);
+  }
+
+  /** The calling thread's reusable instance, reset on the record. */
+  public static GeonamesFeature reuse(TsvRecord record) {
+    return reusable.get().reset(record);
+  }
+
+  public GeonamesFeature reset(TsvRecord record) {
+    if (record.fieldCount() != columns) {
+      throw new RuntimeException("::: Field names mismatch on " + record.line());
+    }
+    this.record = record;
+    Arrays.fill(values, null);
+    featureCodeField = null;
+    subject = null;
+    return this;
+  }
+
+  public GeonamesFeature reset(String[] fields) {
+    if (fields.length != columns) {
+      throw new RuntimeException("::: Field names mismatch on " + String.join("\t", fields));
+    }
+    this.record = null;
+    System.arraycopy(fields, 0, values, 0, columns);
+    featureCodeField = null;
+    subject = null;
+    return this;
+  }
+
+  /** A detached feature holding the used columns of this one. */
+  public GeonamesFeature copy() {
+    return new GeonamesFeature(usedFields());
+  }
+
+  /** The value of a column; "" when empty. */
+  public String get(int column) {
+    String value = values[column];
+    if (value == null) {
+      if (record == null) {
+        value = "";
+      } else {
+        value =
+            interned[column]
+                ? record.getString(column, Interner.COLUMNS)
+                : record.getString(column);
+      }
+      values[column] = value;
+    }
+    return value;
+  }
+
+  // whether the column is better read from the cached String than from the record
+  private boolean decoded(int column) {
+    return values[column] != null || record == null;
+  }
+
+  public boolean isEmpty(int column) {
+    return decoded(column) ? get(column).isEmpty() : record.isEmpty(column);
+  }
+
+  /** Compares a column with an ASCII string, without decoding it. */
+  public boolean is(int column, String ascii) {
+    return decoded(column) ? get(column).equals(ascii) : record.equals(column, ascii);
+  }
+
+  public boolean startsWith(int column, String ascii) {
+    return decoded(column) ? get(column).startsWith(ascii) : record.startsWith(column, ascii);
+  }
+
+  public long getGeonameid() {
+    return decoded(geonameid) ? Long.parseLong(get(geonameid)) : record.getLong(geonameid);
+  }
+
+  public double getLatitude() {
+    return decoded(latitude) ? Double.parseDouble(get(latitude)) : record.getDouble(latitude);
+  }
+
+  public double getLongitude() {
+    return decoded(longitude) ? Double.parseDouble(get(longitude)) : record.getDouble(longitude);
+  }
+
+  /** The population, 0 when unknown. */
+  public long getPopulation() {
+    if (isEmpty(population)) {
+      return 0;
+    }
+    return decoded(population) ? Long.parseLong(get(population)) : record.getLong(population);
+  }
+
+  /** Whether the feature describes a country (A.PCLI*). */
+  public boolean isCountry() {
+    return is(featureClass, "A") && startsWith(featureCode, "PCLI");
+  }
+
+  public IRI getSubject() {
+    if (subject == null) {
+      subject = iri(getUri());
+    }
+    return subject;
+  }
+
+  public String getUri() {
+    return NS_GEONAMES_INSTANCES + getId() + "/";
+  }
+
+  public String getId() {
+    return get(geonameid);
+  }
+
+  public String getCountry() {
+    return get(countryCode);
+  }
+
+  public String getNameValue() {
+    return get(name);
+  }
+
+  public String getFeatureClassField() {
+    return get(featureClass);
+  }
+
+  public String getFeatureCodeField() {
+    if (featureCodeField == null) {
+      featureCodeField = get(featureClass) + "." + get(featureCode);
+    }
+    return featureCodeField;
+  }
+
+  public String getPopulationValue() {
+    return get(population);
+  }
+
+  public String getTimezoneValue() {
+    return get(timezone);
+  }
+
+  public String getModificationDateValue() {
+    return get(modificationDate);
+  }
+
+  public String getLatValue() {
+    return get(latitude);
+  }
+
+  public String getLongValue() {
+    return get(longitude);
+  }
+
+  public String getAltValue() {
+    return get(altitude);
+  }
+
+  public String getElevationValue() {
+    return get(elevation);
+  }
+
+  public String getAdmin1Value() {
+    return get(admin1code);
+  }
+
+  public String getAdmin2Value() {
+    return get(admin2code);
+  }
+
+  public String getAdmin3Value() {
+    return get(admin3code);
+  }
+
+  public String getAdmin4Value() {
+    return get(admin4code);
+  }
+
+  /** The used columns as Strings, the others empty. */
+  public String[] usedFields() {
+    String[] fields = new String[columns];
+    Arrays.fill(fields, "");
+    for (int column : usedColumns) {
+      fields[column] = get(column);
     }
-    country = fields[countryCode];
-    id = fields[geonameid];
-    nameValue = fields[name];
-    uri = NS_GEONAMES_INSTANCES + id + "/";
-    subject = iri(uri);
-    featureCodeField = fields[featureClass] + "." + fields[featureCode];
-    featureClassField = fields[featureClass];
-    populationValue = fields[population];
-    timezoneValue = fields[timezone];
-    modificationDateValue = fields[modificationDate];
-    latValue = fields[latitude];
-    longValue = fields[longitude];
-    altValue = fields[altitude];
-    elevationValue = fields[elevation];
-    admin1Value = fields[admin1code];
-    admin2Value = fields[admin2code];
-    admin3Value = fields[admin3code];
-    admin4Value = fields[admin4code];
+    return fields;
   }
 }
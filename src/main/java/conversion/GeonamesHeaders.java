@@ -1,5 +1,7 @@
 package conversion;
 
+import java.lang.reflect.Field;
+
 public class GeonamesHeaders {
 
   public static final int geonameid = 0; // id of record in geonames database
@@ -21,4 +23,24 @@ public class GeonamesHeaders {
   public static final int altitude = 16;
   public static final int timezone = 17;
   public static final int modificationDate = 18; // yyyy-MM-dd
+
+  public static final int columns = 19;
+  // the columns the converter reads, all but asciiname, alternatenames and cc2
+  public static final int[] usedColumns = {
+    geonameid, name, latitude, longitude, featureClass, featureCode, countryCode, admin1code,
+    admin2code, admin3code, admin4code, population, elevation, altitude, timezone, modificationDate
+  };
+
+  /** The index of a column by its name above, as --filter refers to it. */
+  public static int column(String name) {
+    try {
+      Field field = GeonamesHeaders.class.getField(name);
+      if (field.getType() == int.class && !name.equals("columns")) {
+        return field.getInt(null);
+      }
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      // not a column
+    }
+    throw new IllegalArgumentException("::: Unknown column " + name);
+  }
 }
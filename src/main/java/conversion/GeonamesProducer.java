@@ -1,46 +1,28 @@
 package conversion;
 
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Maps.newHashMap;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static namespaces.Namespaces.GN_ONTO;
-import static namespaces.Namespaces.NS_CUSTOM;
-import static namespaces.Namespaces.NS_DCTERMS;
-import static namespaces.Namespaces.NS_FOAF;
-import static namespaces.Namespaces.NS_GEONAMES_INSTANCES;
-import static namespaces.Namespaces.NS_WGS_SCHEMA;
-import static org.apache.commons.lang3.StringUtils.isNotEmpty;
-import static org.eclipse.rdf4j.model.util.Statements.statement;
-import static org.eclipse.rdf4j.model.util.Values.iri;
-import static org.eclipse.rdf4j.model.util.Values.literal;
-
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
-import com.google.common.collect.Multimaps;
-import java.io.File;
+import static conversion.GeonamesHeaders.geonameid;
+
+import conversion.ConversionOptions.JoinMode;
+import conversion.ConversionOptions.OutputFormat;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import lombok.experimental.Accessors;
 import namespaces.Namespaces;
+import namespaces.Vocabulary;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
-import org.apache.commons.lang3.StringUtils;
-import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Namespace;
-import org.eclipse.rdf4j.model.Statement;
-import org.eclipse.rdf4j.model.vocabulary.RDF;
-import org.eclipse.rdf4j.model.vocabulary.XSD;
-import org.eclipse.rdf4j.rio.turtle.TurtleWriter;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-import org.mapdb.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,425 +35,536 @@ public class GeonamesProducer {
 
   private final Set<Namespace> namespaces = Namespaces.getNamespaces();
 
+  private final ConversionOptions options;
   private final String input_source;
   private final String output;
 
-  private final Multimap<String, Statement> labels =
-      Multimaps.synchronizedSetMultimap(MultimapBuilder.hashKeys().hashSetValues().build());
-
-  private final Multimap<String, String> links =
-      Multimaps.synchronizedSetMultimap(MultimapBuilder.hashKeys().hashSetValues().build());
-  private final Multimap<String, String> broaders =
-      Multimaps.synchronizedListMultimap(MultimapBuilder.hashKeys().arrayListValues().build());
-  private final Multimap<String, String> broadersAdm =
-      Multimaps.synchronizedListMultimap(MultimapBuilder.hashKeys().arrayListValues().build());
+  private final LabelStore labels = new LabelStore();
 
-  final Map<String, TurtleWriter> files = newHashMap();
-  TurtleWriter allCountries = null;
+  private HierarchyGraph hierarchy;
+  private final SpatialIndex places = new SpatialIndex();
 
-  final ConcurrentMap<String, String> adminsToIdsMap;
+  private AdminCodeIndex admins = new AdminCodeIndex();
+  private FeatureSpill spill;
+  private Checkpoint checkpoint;
+  private final PipelineMetrics metrics = new PipelineMetrics();
+  private final Partitioner partitioner;
+  private final FeatureFilter filter;
+  // the geonameids --filter keeps, null for all
+  private BitSet survivors;
   private static final Logger logger = LoggerFactory.getLogger(GeonamesProducer.class);
 
+  static final String ALL_COUNTRIES = "all-countries";
+
   public GeonamesProducer(String input_source, String output) {
-    this.input_source = input_source;
-    this.output = output;
-    IoUtils.createDir(output);
-    DB db = DBMaker.fileDB(output + "/mapFile").make();
-    adminsToIdsMap = db.hashMap("map", Serializer.STRING, Serializer.STRING).create();
+    this(new ConversionOptions().setInput(input_source).setOutput(output));
   }
 
-  private void write(String country, Statement triple, boolean isDescriptionOfCountry) {
-    // String continent = countryToContinent.getProperty(country);
-    if (isDescriptionOfCountry) {
-      if (allCountries == null) {
-        allCountries = IoUtils.getWriter(output + "/all-countries.ttl");
-        allCountries.startRDF();
-        namespaces.forEach(ns -> allCountries.handleNamespace(ns.getPrefix(), ns.getName()));
-      }
-      allCountries.handleStatement(triple);
-    }
-
-    country = country.isBlank() ? "noCountry" : country;
-    TurtleWriter writer = files.get(country);
-    if (writer == null) {
-      writer = IoUtils.getWriter(output + "/" + country + ".ttl");
-      files.put(country, writer);
-      writer.startRDF();
-      for (Namespace ns : namespaces) {
-        writer.handleNamespace(ns.getPrefix(), ns.getName());
-      }
-    }
-    writer.handleStatement(triple);
+  public GeonamesProducer(ConversionOptions options) {
+    this.options = options;
+    this.input_source = options.getInput();
+    this.output = options.getOutput();
+    this.partitioner = Partitioner.of(options);
+    this.filter = FeatureFilter.of(options);
+    IoUtils.createDir(output, options.isResume());
   }
 
   protected GeonamesProducer collectLabels() throws Exception {
 
+    if (checkpoint != null && checkpoint.isDone("labels")) {
+      checkpoint.loadLabels(labels);
+      logger.info("Loaded {} alt names from the checkpoint", labels.size());
+      return this;
+    }
     logger.info("Loading alt names ");
-    var count = new AtomicInteger();
-    try (Stream<String> lines = Files.lines(Paths.get(input_source, "alternateNames.txt"), UTF_8)) {
-      lines
-          .parallel()
-          .forEach(
-              l -> {
-                logProgress(count, "altNames");
-                String[] fields = l.split("\t");
-                String code = fields[1];
-                String lang = fields[2];
-                String label = fields[3];
-
-                boolean isPreferred = fields.length > 4 && fields[4].equals("1");
-                boolean isShort = fields.length > 5 && fields[5].equals("1");
-                boolean isColloquial = fields.length > 6 && fields[6].equals("1");
-                boolean isHistoric = fields.length > 7 && fields[7].equals("1");
-
-                if ("link".equals(lang)) {
-                  // wikipedia links
-                  links.put(code, label);
-                } else {
-                  if (lang.length() < 3) {
-
-                    String property = GN_ONTO + "alternateName";
-                    property = isPreferred ? GN_ONTO + "officialName" : property;
-                    property = isShort ? GN_ONTO + "shortName" : property;
-                    property = isColloquial ? GN_ONTO + "colloquialName" : property;
-                    property = isHistoric ? GN_ONTO + "historicalName" : property;
-
-                    Literal literal = lang.equals("") ? literal(label) : literal(label, lang);
-
-                    Statement st = statement(iri(codeToUri(code)), iri(property), literal, null);
-                    labels.put(codeToUri(code), st);
-
-                  } else {
-                    // postcodes
-                  }
-                }
-              });
+    LabelProjection projection = LabelProjection.of(options);
+    LongAdder lines = metrics.lines("labels");
+    TsvReader.forEach(
+        Paths.get(input_source, "alternateNames.txt"),
+        record -> {
+          lines.increment();
+          if (!survives(record.getLong(1))) {
+            return;
+          }
+          String tag = projection.tagOf(record);
+          if (tag == null) {
+            return; // other languages, postcodes unless asked for...
+          }
+          AlternateName name = new AlternateName(record);
+          switch (tag) {
+            // wikipedia links
+            case LabelProjection.LINK -> labels.addLink(name.getId(), name.getLabel());
+            case LabelProjection.POSTCODE -> labels.addPostcode(name.getId(), name.getLabel());
+            default -> labels.add(name.getId(), tag, name.getLabel(), name.getFlags());
+          }
+        });
+    labels.seal(projection.getPerLanguage());
+    logger.info("Loaded {} alt names, {} MB off-heap", labels.size(), labels.offHeapBytes() >> 20);
+    if (checkpoint != null) {
+      checkpoint.saveLabels(labels);
+      checkpoint.done("labels");
     }
     return this;
   }
 
-  private String codeToUri(String code) {
-    return NS_GEONAMES_INSTANCES + code + "/";
-  }
-
   protected GeonamesProducer collectParents() throws Exception {
 
-    logger.info("Loading parents");
-
-    try (Stream<String> lines = Files.lines(Paths.get(input_source, "hierarchy.txt"), UTF_8)) {
-      lines.forEach(
-          line -> {
-            String[] fields = line.split("\t");
-            String parent = fields[0];
-            String child = fields[1];
-            boolean adm = false;
-            if (fields.length > 2) {
-              adm = fields[2].equals("ADM");
-            }
-            if (adm) {
-              broadersAdm.put(child, parent);
-            } else {
-              broaders.put(child, parent);
-            }
-          });
+    if (checkpoint != null && checkpoint.isDone("parents")) {
+      hierarchy = checkpoint.loadParents();
+    } else {
+      logger.info("Loading parents");
+      // the ancestors of the features kept may go through the others
+      hierarchy =
+          HierarchyGraph.load(
+              Paths.get(input_source, "hierarchy.txt"),
+              metrics.lines("parents"),
+              options.isAncestors() ? child -> true : this::survives);
+      if (checkpoint != null) {
+        checkpoint.saveParents(hierarchy);
+        checkpoint.done("parents");
+      }
     }
+    logger.info("Loaded {} parents of {} features", hierarchy.edges(), hierarchy.nodes());
+    if (options.isAncestors()) {
+      hierarchy.computeAncestors();
+    }
+    return this;
+  }
 
+  /** Reads the geonameids --filter keeps, so that the other indexes skip the rest. */
+  protected GeonamesProducer selectFeatures() throws IOException {
+    logger.info("Selecting features");
+    BitSet selected = new BitSet();
+    LongAdder lines = metrics.lines("filter");
+    TsvReader.forEach(
+        Paths.get(input_source, "allCountries.txt"),
+        record -> {
+          lines.increment();
+          if (filter.test(record)) {
+            long id = record.getLong(geonameid);
+            synchronized (selected) {
+              selected.set((int) id);
+            }
+          }
+        });
+    logger.info("Selected {} features", selected.cardinality());
+    survivors = selected;
     return this;
   }
 
+  private boolean survives(long id) {
+    return survivors == null || id >= 0 && id <= Integer.MAX_VALUE && survivors.get((int) id);
+  }
+
   protected GeonamesProducer features() {
     logger.info("Parsing features");
 
-    //     createDirsForContinents();
-
-    var counter = new AtomicInteger(0);
-
-    try (Stream<String> lines = Files.lines(Paths.get(input_source, "allCountries.txt"), UTF_8)) {
-      lines
-          .parallel()
-          .forEach(
-              line -> {
-                GeonamesFeature feature = new GeonamesFeature(line);
-                logProgress(counter, "features");
-                boolean isDescriptionOfCountry = feature.getFeatureCodeField().startsWith("A.PCLI");
-                Stream.concat(
-                        getStatements(feature).stream(), labels.get(feature.getUri()).stream())
-                    .forEach(st -> write(feature.getCountry(), st, isDescriptionOfCountry));
-                labels.removeAll(feature.getUri()); // no need anymore
-                links.removeAll(feature.getUri()); // no need anymore
-              });
+    LongAdder lines = metrics.lines("features");
+    var converter = newConverter();
+    try (var writer = newWriter();
+        var store = newStore()) {
+      Consumer<GeonamesFeature> action =
+          feature -> {
+            lines.increment();
+            long id = feature.getGeonameid();
+            var relations =
+                new FeatureConverter.Relations(
+                    List.of(), hierarchy.parents(id, false), hierarchy.parents(id, true));
+            TripleSink triples = writer.newSink();
+            TripleSink counted = sink(triples, store);
+            converter.getStatements(feature, relations, counted);
+            // labels and links, their memory released as features go
+            labels.take(id, feature.getSubject(), counted);
+            emit(writer, feature, triples);
+            if (store != null) {
+              store.add(feature);
+            }
+          };
+      if (checkpoint != null) {
+        forEachFeature(writer, action);
+      } else {
+        forEachFeature(action);
+      }
+      logger.info("Finished conversion, flushing and closing output files");
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    return this;
+  }
 
-    logger.info("Finished conversion, flushing and closing output files");
-
-    files.keySet().stream()
-        .filter(files::containsKey)
-        .forEach(
-            country -> {
-              files.get(country).endRDF();
-              try {
-                files.get(country).getWriter().flush();
-                files.get(country).getWriter().close();
-              } catch (IOException e) {
-                throw new RuntimeException(e);
-              }
-            });
-
-    if (allCountries != null) {
-      allCountries.endRDF();
-      try {
-        allCountries.getWriter().flush();
-        allCountries.getWriter().close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+  private FeatureConverter newConverter() {
+    var converter = new FeatureConverter(admins);
+    if (options.isAncestors() && filter.needsHierarchy()) {
+      converter.withAncestors(hierarchy);
     }
-    return this;
+    if (options.getNearby() > 0) {
+      converter.withNearby(places, options.getNearby());
+    }
+    if (options.isWkt()) {
+      converter.withWkt();
+    }
+    return converter;
   }
 
-  protected GeonamesProducer populateCodes() throws IOException {
+  /**
+   * All of allCountries in parallel, replayed from the spill when scanFeatures() read it. Features
+   * are reused from row to row: they must not escape the action.
+   */
+  private void forEachFeature(Consumer<GeonamesFeature> action) throws IOException {
+    Consumer<TsvRecord> rows = rows(action);
+    if (spill == null) {
+      TsvReader.forEach(Paths.get(input_source, "allCountries.txt"), rows);
+      return;
+    }
+    spill.replay(rows);
+    spill.delete();
+  }
 
-    LineIterator it = FileUtils.lineIterator(new File(input_source, "allCountries.txt"), "UTF-8");
+  /**
+   * forEachFeature() in batches of input chunks; after each batch the shard files are synced and
+   * the offset reached recorded in the checkpoint. The chunks a previous run completed are skipped.
+   */
+  private void forEachFeature(ShardedWriter writer, Consumer<GeonamesFeature> action)
+      throws IOException {
+    Consumer<TsvRecord> rows = rows(action);
+    List<TsvReader.Chunk> chunks =
+        TsvReader.chunks(
+            Paths.get(input_source, "allCountries.txt"), TsvReader.DEFAULT_CHUNK_SIZE);
+    long offset = checkpoint.getOffset();
+    if (offset > 0) {
+      logger.info("Resuming features at byte {}", offset);
+      writer.resume(checkpoint.getShardLengths());
+      chunks = chunks.stream().filter(chunk -> chunk.start() >= offset).toList();
+    }
+    int batch = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    for (int from = 0; from < chunks.size(); from += batch) {
+      var done = chunks.subList(from, Math.min(chunks.size(), from + batch));
+      done.parallelStream().forEach(chunk -> chunk.forEach(rows));
+      checkpoint.saveProgress(done.get(done.size() - 1).end(), writer.sync());
+    }
+  }
 
-    while (it.hasNext()) {
-      String text = it.nextLine();
-      GeonamesFeature feature = new GeonamesFeature(text);
+  // the rows --filter keeps, as features
+  private Consumer<TsvRecord> rows(Consumer<GeonamesFeature> action) {
+    return record -> {
+      if (filter.test(record)) {
+        action.accept(GeonamesFeature.reuse(record));
+      }
+    };
+  }
 
-      int adminsNumber =
-          (int)
-              Stream.of(
-                      feature.getAdmin1Value(),
-                      feature.getAdmin2Value(),
-                      feature.getAdmin3Value(),
-                      feature.getAdmin4Value())
-                  .filter(StringUtils::isNotEmpty)
-                  .count();
+  /*
+   * Single pass over allCountries.txt, in parallel: fills the admin codes index and spills the
+   * parsed rows in a compact binary form that features() replays instead of re-reading the file.
+   * Replaces populateCodes().
+   */
+  protected GeonamesProducer scanFeatures() throws IOException {
+    logger.info("Scanning features");
+
+    LongAdder lines = metrics.lines("scan");
+    Queue<Division> divisions = new ConcurrentLinkedQueue<>();
+    Path source = Paths.get(input_source, "allCountries.txt");
+    FeatureSpill rows = new FeatureSpill(Paths.get(output, "features.spill"));
+    spill = rows;
+
+    try (rows) {
+      TsvReader.forEach(
+          source,
+          record -> {
+            lines.increment();
+            GeonamesFeature feature = GeonamesFeature.reuse(record);
+            if (AdminCodeIndex.isDivision(feature)) {
+              divisions.add(new Division(record.fileOffset(), feature.copy()));
+            }
+            rows.append(record);
+          });
+    }
+    addDivisions(divisions, source);
+    return this;
+  }
 
-      if (adminsNumber == 1 && feature.getFeatureCodeField().equals("A.PCLI")) {
-        adminsToIdsMap.put(feature.getCountry() + feature.getAdmin1Value(), feature.getId());
-      }
+  private record Division(long fileOffset, GeonamesFeature feature) {}
+
+  private void addDivisions(Collection<Division> divisions, Path source) throws IOException {
+    // in file order, later rows win as they always did
+    divisions.stream()
+        .sorted(Comparator.comparingLong(Division::fileOffset))
+        .forEach(division -> admins.add(division.feature()));
+    logger.info("Loaded {} admin codes", admins.size());
+    if (options.getAdminIndex() != null) {
+      admins.save(Paths.get(options.getAdminIndex()), source);
+    } else if (checkpoint != null) {
+      admins.save(checkpoint.file("admin-index"), source);
+    }
+  }
 
-      if (adminsNumber == 1 && feature.getFeatureCodeField().equals("A.ADM1")) {
-        adminsToIdsMap.put(feature.getCountry() + feature.getAdmin1Value(), feature.getId());
-      }
-      if (adminsNumber == 2 && feature.getFeatureCodeField().equals("A.ADM2")) {
-        adminsToIdsMap.put(
-            feature.getCountry() + feature.getAdmin1Value() + feature.getAdmin2Value(),
-            feature.getId());
-      }
-      if (adminsNumber == 3 && feature.getFeatureCodeField().equals("A.ADM3")) {
-        adminsToIdsMap.put(
-            feature.getCountry()
-                + feature.getAdmin1Value()
-                + feature.getAdmin2Value()
-                + feature.getAdmin3Value(),
-            feature.getId());
-      }
-      if (adminsNumber == 4 && feature.getFeatureCodeField().equals("A.ADM4")) {
-        adminsToIdsMap.put(
-            feature.getCountry()
-                + feature.getAdmin1Value()
-                + feature.getAdmin2Value()
-                + feature.getAdmin3Value()
-                + feature.getAdmin4Value(),
-            feature.getId());
+  /*
+   * Same triples as features(), but the side tables are not loaded in memory: allCountries,
+   * alternateNames and hierarchy are externally sorted by geonameid and merge-joined, so memory
+   * stays flat whatever the size of the dump. Only the admin codes map is needed beforehand.
+   */
+  protected GeonamesProducer featuresSortMerge() throws IOException {
+    logger.info("Parsing features, sort-merge join");
+
+    LongAdder lines = metrics.lines("features");
+    Path spill = Paths.get(output, "spill");
+    var sorter = new ExternalSorter(spill, options.getLinesPerRun());
+
+    var converter = newConverter().withLabels(LabelProjection.of(options));
+    GeonamesFeature feature = new GeonamesFeature();
+    try (var writer = newWriter();
+        var store = newStore();
+        var features = sorter.sort(Paths.get(input_source, "allCountries.txt"), geonameid);
+        var altNames = sorter.sort(Paths.get(input_source, "alternateNames.txt"), 1);
+        var hierarchy = sorter.sort(Paths.get(input_source, "hierarchy.txt"), 1)) {
+      while (features.hasNext()) {
+        TsvRecord row = TsvRecord.of(features.next());
+        lines.increment();
+        if (!filter.test(row)) {
+          continue; // its names and parents are skipped with the next ones
+        }
+        feature.reset(row);
+        long id = feature.getGeonameid();
+
+        List<AlternateName> names = newArrayList();
+        skipTo(altNames, id);
+        while (altNames.peekKey() == id) {
+          names.add(new AlternateName(altNames.next()));
+        }
+
+        List<TsvRecord> parents = newArrayList();
+        skipTo(hierarchy, id);
+        while (hierarchy.peekKey() == id) {
+          parents.add(TsvRecord.of(hierarchy.next()));
+        }
+
+        TripleSink triples = writer.newSink();
+        converter.convert(feature, names, parents, sink(triples, store));
+        emit(writer, feature, triples);
+        if (store != null) {
+          store.add(feature);
+        }
       }
+      logger.info("Finished conversion, flushing and closing output files");
+    } finally {
+      FileUtils.deleteDirectory(spill.toFile());
     }
-    it.close();
     return this;
   }
 
-  private Collection<Statement> getStatements(GeonamesFeature feature) {
+  /** Skips the rows of features missing from allCountries. */
+  private static void skipTo(ExternalSorter.SortedLines lines, long id) {
+    while (lines.peekKey() < id) {
+      lines.next();
+    }
+  }
 
-    Collection<Statement> statements = newArrayList();
+  private ShardedWriter newWriter() {
+    return new ShardedWriter(output, namespaces, options)
+        .setMetrics(metrics)
+        .setMaxFileBytes(options.getMaxFileSize())
+        .setDeterministic(options.isDeterministic());
+  }
 
-    if (isNotEmpty(feature.getNameValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(GN_ONTO + "name"),
-              literal(feature.getNameValue(), "en"),
-              null);
-      statements.add(triple);
-    }
+  /** The feature store of --store, or null. */
+  private FeatureStoreWriter newStore() throws IOException {
+    String store = options.getStore();
+    return store == null ? null : new FeatureStoreWriter(Paths.get(store));
+  }
 
-    if (feature.getPopulationValue().length() > 1) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(GN_ONTO + "population"),
-              literal(feature.getPopulationValue(), XSD.INTEGER),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getLongValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_WGS_SCHEMA + "long"),
-              literal(feature.getLongValue(), XSD.DECIMAL),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getLatValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_WGS_SCHEMA + "lat"),
-              literal(feature.getLatValue(), XSD.DECIMAL),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getAltValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_WGS_SCHEMA + "alt"),
-              literal(feature.getAltValue(), XSD.DECIMAL),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getElevationValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_CUSTOM + "gtopo30"),
-              literal(feature.getElevationValue(), XSD.DECIMAL),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getFeatureClassField())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(GN_ONTO + "featureClass"),
-              iri(GN_ONTO + feature.getFeatureClassField()),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getFeatureCodeField())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(GN_ONTO + "featureCode"),
-              iri(GN_ONTO + feature.getFeatureCodeField()),
-              null);
-      statements.add(triple);
-    }
-    if (isNotEmpty(feature.getCountry())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(GN_ONTO + "countryCode"),
-              literal(feature.getCountry()),
-              null);
-      statements.add(triple);
+  // what the converter writes to: the predicates kept, counted, also recorded in the store if any
+  private TripleSink sink(TripleSink triples, FeatureStoreWriter store) {
+    return filter.project(metrics.counting(store == null ? triples : store.tee(triples)));
+  }
+
+  private void emit(ShardedWriter writer, GeonamesFeature feature, TripleSink triples) {
+    String shard = partitioner.shardOf(feature);
+    if (feature.isCountry()) {
+      writer.submit(feature.getGeonameid(), triples, shard, ALL_COUNTRIES);
+    } else {
+      writer.submit(feature.getGeonameid(), triples, shard);
     }
+  }
 
-    if (isNotEmpty(feature.getTimezoneValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_CUSTOM + "timezone"),
-              literal(feature.getTimezoneValue()),
-              null);
-      statements.add(triple);
+  protected GeonamesProducer populateCodes() throws IOException {
+    Path source = Paths.get(input_source, "allCountries.txt");
+    Path cache = options.getAdminIndex() == null ? null : Paths.get(options.getAdminIndex());
+    if (cache == null && checkpoint != null) {
+      cache = checkpoint.file("admin-index");
     }
-    if (isNotEmpty(feature.getModificationDateValue())) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_DCTERMS + "modified"),
-              literal(feature.getModificationDateValue(), XSD.DATE),
-              null);
-      statements.add(triple);
+    if (cache != null) {
+      AdminCodeIndex saved = AdminCodeIndex.load(cache, source);
+      if (saved != null) {
+        admins = saved;
+        logger.info("Loaded {} admin codes from {}", admins.size(), cache);
+        return this;
+      }
     }
 
-    if (isNotEmpty(feature.getAdmin2Value()) && feature.getFeatureCodeField().equals("A.ADM2")) {
-      Statement triple =
-          statement(
-              feature.getSubject(),
-              iri(NS_CUSTOM + "admin2"),
-              literal(feature.getAdmin2Value()),
-              null);
-      statements.add(triple);
+    logger.info("Loading admin codes");
+    Queue<Division> divisions = new ConcurrentLinkedQueue<>();
+    LongAdder lines = metrics.lines("admin codes");
+    TsvReader.forEach(
+        source,
+        record -> {
+          lines.increment();
+          // only administrative features can be divisions, the others are not even decoded
+          GeonamesFeature feature = GeonamesFeature.reuse(record);
+          if (AdminCodeIndex.isDivision(feature)) {
+            divisions.add(new Division(record.fileOffset(), feature.copy()));
+          }
+        });
+    addDivisions(divisions, source);
+    return this;
+  }
+
+  /** Reads the coordinates of the populated places into the spatial index, for nearby links. */
+  protected GeonamesProducer collectPlaces() throws IOException {
+    logger.info("Indexing places");
+    Consumer<TsvRecord> rows =
+        record -> {
+          GeonamesFeature feature = GeonamesFeature.reuse(record);
+          if (SpatialIndex.isPlace(feature)) {
+            places.add(feature.getGeonameid(), feature.getLatitude(), feature.getLongitude());
+          }
+        };
+    if (spill != null) {
+      spill.replay(rows); // kept for features()
+    } else {
+      TsvReader.forEach(Paths.get(input_source, "allCountries.txt"), rows);
     }
+    places.seal();
+    logger.info("Indexed {} places", places.size());
+    return this;
+  }
 
-    if (links.containsKey(feature.getId())) {
-      for (String link : links.get(feature.getId())) {
-        String property =
-            link.contains("wikipedia") ? GN_ONTO + "wikipediaArticle" : NS_FOAF + "page";
-        Statement triple = statement(feature.getSubject(), iri(property), literal(link), null);
-        statements.add(triple);
-      }
-      links.removeAll(feature.getId());
+  /** Builds the feature code IRIs upfront when the dump comes with featureCodes_en.txt. */
+  protected GeonamesProducer loadFeatureCodes() throws IOException {
+    Path file = Paths.get(input_source, "featureCodes_en.txt");
+    if (Files.exists(file)) {
+      logger.info("Loaded {} feature codes", Vocabulary.loadFeatureCodes(file));
     }
+    return this;
+  }
 
-    if (broaders.containsKey(feature.getId())) {
-      for (String broaderCode : broaders.get(feature.getId())) {
-        Statement triple =
-            statement(
-                feature.getSubject(),
-                iri(GN_ONTO + "locatedIn"),
-                iri(codeToUri(broaderCode)),
-                null);
-        statements.add(triple);
+  public GeonamesProducer run() throws Exception {
+    if (options.isAncestors() && options.getJoinMode() == JoinMode.SORT_MERGE) {
+      throw new IllegalArgumentException("::: --ancestors needs the hash join");
+    }
+    if (options.isCheckpoint()) {
+      if (options.getJoinMode() == JoinMode.SORT_MERGE || options.isSinglePass()) {
+        throw new IllegalArgumentException("::: --checkpoint needs the hash join, in two passes");
       }
-      broaders.removeAll(feature.getId());
+      if (options.getStore() != null) {
+        throw new IllegalArgumentException("::: --checkpoint cannot resume a feature store");
+      }
+      if (options.isDeterministic()) {
+        // the shards are only written once all features are in
+        throw new IllegalArgumentException("::: --checkpoint cannot write deterministic output");
+      }
+      if (options.getFormat() == OutputFormat.BINARY) {
+        // a resumed file would hold several documents, and parsers stop after the first one
+        throw new IllegalArgumentException("::: --checkpoint cannot append to binary RDF files");
+      }
+      checkpoint = options.isResume() ? Checkpoint.resume(options) : Checkpoint.start(options);
     }
-
-    if (broadersAdm.containsKey(feature.getId())) {
-      for (String broaderCode : broadersAdm.get(feature.getId())) {
-        Statement triple =
-            statement(
-                feature.getSubject(),
-                iri(GN_ONTO + "parentFeature"),
-                iri(codeToUri(broaderCode)),
-                null);
-        statements.add(triple);
+    if (options.getJoinMode() == JoinMode.SORT_MERGE && options.isSinglePass()) {
+      throw new IllegalArgumentException("::: --single-pass needs the hash join");
+    }
+    metrics.start(options.getProgress());
+    try {
+      stages().run();
+      if (checkpoint != null) {
+        checkpoint.delete();
       }
-      broadersAdm.removeAll(feature.getId());
+      return this;
+    } finally {
+      metrics.stop();
+      metrics.writeReport(Paths.get(options.getReport()));
     }
+  }
 
-    // fields admin1... admin4
-    String denormalizedAdmins =
-        feature.getCountry()
-            + feature.getAdmin1Value()
-            + feature.getAdmin2Value()
-            + feature.getAdmin3Value()
-            + feature.getAdmin4Value();
-
-    if (adminsToIdsMap.containsKey(denormalizedAdmins)) {
-      String father = codeToUri(adminsToIdsMap.get(denormalizedAdmins));
-
-      if (!father.equals(feature.getUri())) {
-        Statement triple =
-            statement(feature.getSubject(), iri(GN_ONTO + "parentFeature"), iri(father), null);
-        statements.add(triple);
+  /**
+   * The stages of the run and what each needs: the indexes read independent files and are built
+   * concurrently (unless --sequential-stages), the features once they all are.
+   */
+  private StageScheduler stages() {
+    var stages = new StageScheduler(metrics, !options.isSequentialStages());
+    stages.add("feature codes", null, this::loadFeatureCodes);
+    List<String> indexes = newArrayList("feature codes");
+    if (options.isSinglePass()) {
+      stages.add("scan", "allCountries.txt", this::scanFeatures);
+      indexes.add("scan");
+    } else {
+      stages.add("admin codes", "allCountries.txt", this::populateCodes);
+      indexes.add("admin codes");
+    }
+    if (options.getJoinMode() == JoinMode.HASH) {
+      // the side tables load the rows of the features kept only, once they are known
+      String[] selected = new String[0];
+      if (filter.isFiltering() && (filter.needsHierarchy() || filter.needsLabels())) {
+        stages.add("filter", "allCountries.txt", this::selectFeatures);
+        selected = new String[] {"filter"};
+      }
+      if (filter.needsHierarchy()) {
+        stages.add("parents", "hierarchy.txt", this::collectParents, selected);
+        indexes.add("parents");
+      } else {
+        hierarchy = HierarchyGraph.empty();
+      }
+      if (filter.needsLabels()) {
+        stages.add("labels", "alternateNames.txt", this::collectLabels, selected);
+        indexes.add("labels");
       }
     }
-
-    // Feature class declaration
-    Statement triple = statement(feature.getSubject(), RDF.TYPE, iri(GN_ONTO + "Feature"), null);
-    statements.add(triple);
-
-    return statements;
+    if (options.getNearby() > 0) {
+      // replays the spill of the scan, if any
+      String[] after = options.isSinglePass() ? new String[] {"scan"} : new String[0];
+      stages.add("places", null, this::collectPlaces, after);
+      indexes.add("places");
+    }
+    StageScheduler.Step features =
+        options.getJoinMode() == JoinMode.SORT_MERGE ? this::featuresSortMerge : this::features;
+    stages.add(
+        "features",
+        "allCountries.txt",
+        () -> {
+          recordIndexSizes();
+          features.run();
+        },
+        indexes.toArray(String[]::new));
+    if (options.isSaveState()) {
+      // once the output is written, for --delta to start from
+      stages.add(
+          "state",
+          null,
+          () -> FeatureState.create(Paths.get(options.getState()), Paths.get(input_source)),
+          "features");
+    }
+    return stages;
   }
 
-  private void logProgress(AtomicInteger counter, String type) {
-    counter.incrementAndGet();
-    if (counter.get() % 100000 == 0) {
-      logger.info(String.format("Processed %s %s", counter, type));
+  private void recordIndexSizes() {
+    metrics.index("adminCodes", admins.size());
+    metrics.index("labels", labels.size());
+    metrics.index("labelsOffHeapBytes", labels.offHeapBytes());
+    metrics.index("places", places.size());
+    if (hierarchy != null) {
+      metrics.index("hierarchyNodes", hierarchy.nodes());
+      metrics.index("hierarchyEdges", hierarchy.edges());
     }
   }
 
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
   public static void main(String... args) throws Exception {
-    new GeonamesProducer("input_source", "output")
-        .populateCodes()
-        .collectParents()
-        .collectLabels()
-        .features();
+    ConversionOptions options = ConversionOptions.parse(args);
+    if (options.getDelta() != null) {
+      new DeltaUpdater(options).run();
+      return;
+    }
+    new GeonamesProducer(options).run();
   }
 }
@@ -0,0 +1,272 @@
+package conversion;
+
+import com.google.common.primitives.ImmutableLongArray;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * hierarchy.txt as a compressed sparse row graph over primitive geonameids: the children sorted
+ * in an int[], the start of their edges in another, and the parents packed in a third, the sign
+ * bit telling ADM edges (parentFeature) from the others (locatedIn). Loading threads collect
+ * (child, parent) longs on their own; once built the graph is immutable and read without locks.
+ *
+ * On demand, the ADM ancestors of every child are closed transitively, a cycle being cut where
+ * it is found, so that a feature's ancestors are a lookup.
+ */
+public class HierarchyGraph {
+
+  private static final Logger logger = LoggerFactory.getLogger(HierarchyGraph.class);
+  private static final int ADM = 0x80000000;
+  private static final long[] NONE = new long[0];
+
+  private final int[] children;
+  private final int[] starts;
+  private final int[] parents;
+  private long[][] ancestors;
+
+  private HierarchyGraph(long[] edges) {
+    Arrays.parallelSort(edges);
+    int nodes = 0;
+    for (int i = 0; i < edges.length; i++) {
+      if (i == 0 || edges[i] >>> 32 != edges[i - 1] >>> 32) {
+        nodes++;
+      }
+    }
+    children = new int[nodes];
+    starts = new int[nodes + 1];
+    parents = new int[edges.length];
+    int node = -1;
+    for (int i = 0; i < edges.length; i++) {
+      if (i == 0 || edges[i] >>> 32 != edges[i - 1] >>> 32) {
+        children[++node] = (int) (edges[i] >>> 32);
+        starts[node] = i;
+      }
+      parents[i] = (int) edges[i];
+    }
+    starts[nodes] = edges.length;
+  }
+
+  /** A graph without edges. */
+  public static HierarchyGraph empty() {
+    return new HierarchyGraph(new long[0]);
+  }
+
+  /** Reads hierarchy.txt in parallel, counting its lines. */
+  public static HierarchyGraph load(Path file, LongAdder lines) {
+    return load(file, lines, child -> true);
+  }
+
+  /** load(), keeping the edges of the given children only. */
+  public static HierarchyGraph load(Path file, LongAdder lines, LongPredicate children) {
+    Queue<ImmutableLongArray.Builder> arenas = new ConcurrentLinkedQueue<>();
+    ThreadLocal<ImmutableLongArray.Builder> arena =
+        ThreadLocal.withInitial(
+            () -> {
+              var builder = ImmutableLongArray.builder();
+              arenas.add(builder);
+              return builder;
+            });
+    TsvReader.forEach(
+        file,
+        record -> {
+          lines.increment();
+          long child = record.getLong(1);
+          if (children.test(child)) {
+            boolean adm = FeatureConverter.isAdm(record);
+            arena.get().add(edge(child, record.getLong(0), adm));
+          }
+        });
+    var all = ImmutableLongArray.builder();
+    arenas.forEach(builder -> all.addAll(builder.build()));
+    return new HierarchyGraph(all.build().toArray());
+  }
+
+  // child in the high half; the low half sorts locatedIn parents before ADM ones
+  private static long edge(long child, long parent, boolean adm) {
+    if (child < 0 || child > Integer.MAX_VALUE || parent < 0 || parent > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("::: geonameid out of range " + child + "/" + parent);
+    }
+    return child << 32 | (parent | (adm ? ADM : 0)) & 0xFFFFFFFFL;
+  }
+
+  public int nodes() {
+    return children.length;
+  }
+
+  public int edges() {
+    return parents.length;
+  }
+
+  /** The ADM (parentFeature) or other (locatedIn) parents of a feature, in id order. */
+  public long[] parents(long child, boolean adm) {
+    int node = nodeOf(child);
+    if (node < 0) {
+      return NONE;
+    }
+    int count = 0;
+    for (int i = starts[node]; i < starts[node + 1]; i++) {
+      count += isAdm(i) == adm ? 1 : 0;
+    }
+    long[] result = new long[count];
+    count = 0;
+    for (int i = starts[node]; i < starts[node + 1]; i++) {
+      if (isAdm(i) == adm) {
+        result[count++] = parents[i] & ~ADM;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Closes the ADM parents transitively for every child, depth first with an explicit stack. An
+   * edge back to a node still on the stack closes a cycle: it is logged and left out.
+   */
+  public HierarchyGraph computeAncestors() {
+    long[][] closed = new long[children.length][];
+    byte[] state = new byte[children.length]; // 0 new, 1 on the stack, 2 done
+    int[] stack = new int[children.length];
+    int[] next = new int[children.length];
+    int cycles = 0;
+    for (int root = 0; root < children.length; root++) {
+      if (state[root] != 0) {
+        continue;
+      }
+      int depth = 0;
+      stack[depth] = root;
+      next[root] = starts[root];
+      state[root] = 1;
+      while (depth >= 0) {
+        int node = stack[depth];
+        if (next[node] < starts[node + 1]) {
+          int edge = next[node]++;
+          int parent = isAdm(edge) ? nodeOf(parents[edge] & ~ADM) : -1;
+          if (parent >= 0 && state[parent] == 0) {
+            state[parent] = 1;
+            next[parent] = starts[parent];
+            stack[++depth] = parent;
+          } else if (parent >= 0 && state[parent] == 1) {
+            cycles++;
+            logger.warn("::: Hierarchy cycle through {} and {}", children[node], children[parent]);
+          }
+          continue;
+        }
+        closed[node] = close(node, closed, state);
+        state[node] = 2;
+        depth--;
+      }
+    }
+    ancestors = closed;
+    logger.info("Closed the ancestors of {} features, {} cycles cut", children.length, cycles);
+    return this;
+  }
+
+  // the ADM parents of a node and their own ancestors, the parents on the stack left out
+  private long[] close(int node, long[][] closed, byte[] state) {
+    var union = new LongArrayBuilder();
+    for (int i = starts[node]; i < starts[node + 1]; i++) {
+      if (!isAdm(i)) {
+        continue;
+      }
+      long parent = parents[i] & ~ADM;
+      int parentNode = nodeOf(parent);
+      if (parentNode >= 0 && state[parentNode] != 2) {
+        continue; // a cycle
+      }
+      union.add(parent);
+      if (parentNode >= 0) {
+        union.addAll(closed[parentNode]);
+      }
+    }
+    return union.distinctWithout(children[node]);
+  }
+
+  /**
+   * The ADM ancestors of a feature: its hierarchy parents and the given admin codes parent (or
+   * -1), with all of their ancestors. computeAncestors() must have been called.
+   */
+  public long[] ancestors(long child, long adminParent) {
+    int node = nodeOf(child);
+    if (adminParent < 0 || adminParent == child) {
+      return node < 0 ? NONE : ancestors[node];
+    }
+    var union = new LongArrayBuilder();
+    if (node >= 0) {
+      union.addAll(ancestors[node]);
+    }
+    union.add(adminParent);
+    int parentNode = nodeOf(adminParent);
+    if (parentNode >= 0) {
+      union.addAll(ancestors[parentNode]);
+    }
+    return union.distinctWithout(child);
+  }
+
+  public void save(DataOutput out) throws IOException {
+    out.writeInt(parents.length);
+    for (int node = 0; node < children.length; node++) {
+      for (int i = starts[node]; i < starts[node + 1]; i++) {
+        out.writeLong((long) children[node] << 32 | parents[i] & 0xFFFFFFFFL);
+      }
+    }
+  }
+
+  public static HierarchyGraph load(DataInput in) throws IOException {
+    long[] edges = new long[in.readInt()];
+    for (int i = 0; i < edges.length; i++) {
+      edges[i] = in.readLong();
+    }
+    return new HierarchyGraph(edges);
+  }
+
+  private boolean isAdm(int edge) {
+    return (parents[edge] & ADM) != 0;
+  }
+
+  private int nodeOf(long id) {
+    if (id < 0 || id > Integer.MAX_VALUE) {
+      return -1;
+    }
+    int node = Arrays.binarySearch(children, (int) id);
+    return node < 0 ? -1 : node;
+  }
+
+  /** A small growable long[], for the ancestor sets. */
+  private static class LongArrayBuilder {
+    private long[] values = new long[8];
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void addAll(long[] more) {
+      for (long value : more) {
+        add(value);
+      }
+    }
+
+    long[] distinctWithout(long excluded) {
+      long[] result = Arrays.copyOf(values, size);
+      Arrays.sort(result);
+      int count = 0;
+      for (int i = 0; i < result.length; i++) {
+        if (result[i] != excluded && (count == 0 || result[count - 1] != result[i])) {
+          result[count++] = result[i];
+        }
+      }
+      return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.util.Values;
+
+/*
+ * Canonical String and Literal instances for the low-cardinality columns (country codes,
+ * timezones, feature classes and codes, dates, language tags), so that millions of rows share a
+ * few thousand objects instead of allocating their own.
+ *
+ * Strings are looked up by their UTF-8 bytes, straight from the input buffer, in an open
+ * addressing table: readers never lock, writers fill empty slots in place under the lock and copy
+ * the table into one twice as large when it is half full. Writes stop once maxSize strings are in,
+ * the values that did not make it being decoded as usual. Hits and misses are counted for the run
+ * report.
+ */
+public class Interner {
+
+  /** Columns of allCountries. */
+  public static final Interner COLUMNS = new Interner("columns", 1 << 14);
+  /** Language tags of alternateNames. */
+  public static final Interner LANGUAGES = new Interner("languages", 1 << 10);
+
+  private static final List<Interner> ALL = List.of(COLUMNS, LANGUAGES);
+
+  private final String name;
+  private final int maxSize;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final Map<LiteralKey, Literal> literals = new ConcurrentHashMap<>();
+  private volatile Table table = new Table(64);
+
+  public Interner(String name, int maxSize) {
+    this.name = name;
+    this.maxSize = maxSize;
+  }
+
+  public static List<Interner> all() {
+    return ALL;
+  }
+
+  /** The canonical String of the UTF-8 bytes [start, start + length) of the buffer. */
+  public String intern(ByteBuffer buffer, int start, int length) {
+    int hash = hash(buffer, start, length);
+    Table current = table;
+    String value = current.find(buffer, start, length, hash);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    byte[] bytes = new byte[length];
+    buffer.get(start, bytes);
+    return add(bytes, hash);
+  }
+
+  public String intern(byte[] bytes, int start, int length) {
+    return intern(ByteBuffer.wrap(bytes), start, length);
+  }
+
+  private synchronized String add(byte[] bytes, int hash) {
+    Table current = table;
+    String value = current.find(ByteBuffer.wrap(bytes), 0, bytes.length, hash);
+    if (value != null) {
+      return value; // added meanwhile
+    }
+    value = new String(bytes, UTF_8);
+    if (current.size < maxSize) {
+      if (current.size + 1 > current.slots.length() / 2) {
+        current = current.grown();
+      }
+      current.put(new Entry(bytes, value, hash));
+      table = current;
+    }
+    return value;
+  }
+
+  /** The canonical Literal of a label (plain when the datatype is null), up to the same cap. */
+  public Literal literal(String label, IRI datatype) {
+    var key = new LiteralKey(label, datatype);
+    Literal literal = literals.get(key);
+    if (literal != null) {
+      hits.increment();
+      return literal;
+    }
+    misses.increment();
+    literal = datatype == null ? Values.literal(label) : Values.literal(label, datatype);
+    if (literals.size() < maxSize) {
+      literals.putIfAbsent(key, literal);
+    }
+    return literal;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Strings interned. */
+  public int size() {
+    return table.size;
+  }
+
+  /** Literals interned, up to their own maxSize. */
+  public int literals() {
+    return literals.size();
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  private static int hash(ByteBuffer buffer, int start, int length) {
+    int hash = 1;
+    for (int i = start; i < start + length; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    return hash ^ hash >>> 16;
+  }
+
+  private record LiteralKey(String label, IRI datatype) {}
+
+  private record Entry(byte[] key, String value, int hash) {}
+
+  /**
+   * Slots only ever go from empty to an immutable entry, so that a reader probing while a writer
+   * fills one finds either the entry or the end of the probe, then adds under the lock.
+   */
+  private static class Table {
+    private final AtomicReferenceArray<Entry> slots;
+    // written under the Interner's lock only
+    private volatile int size;
+
+    Table(int capacity) {
+      slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    String find(ByteBuffer buffer, int start, int length, int hash) {
+      int mask = slots.length() - 1;
+      for (int i = hash & mask; ; i = (i + 1) & mask) {
+        Entry entry = slots.get(i);
+        if (entry == null) {
+          return null;
+        }
+        if (entry.hash() == hash && matches(entry.key(), buffer, start, length)) {
+          return entry.value();
+        }
+      }
+    }
+
+    // the same entries in a table twice as large
+    Table grown() {
+      Table copy = new Table(slots.length() * 2);
+      for (int i = 0; i < slots.length(); i++) {
+        Entry entry = slots.get(i);
+        if (entry != null) {
+          copy.put(entry);
+        }
+      }
+      return copy;
+    }
+
+    private void put(Entry entry) {
+      int mask = slots.length() - 1;
+      int i = entry.hash() & mask;
+      while (slots.get(i) != null) {
+        i = (i + 1) & mask;
+      }
+      slots.set(i, entry);
+      size++;
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int length) {
+      if (key.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (key[i] != buffer.get(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
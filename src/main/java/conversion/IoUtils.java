@@ -1,28 +1,39 @@
 package conversion;
 
-import static java.nio.file.Files.newOutputStream;
-
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import org.eclipse.rdf4j.rio.turtle.TurtleWriter;
+import java.nio.file.StandardOpenOption;
 
 public class IoUtils {
 
-  public static TurtleWriter getWriter(String path) {
-    TurtleWriter writer = null;
-    try {
-      writer = new TurtleWriter(newOutputStream(Path.of(path)));
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    return writer;
+  public static FileChannel getChannel(String path) throws IOException {
+    return FileChannel.open(
+        Path.of(path),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+  }
+
+  /** Opens the file for writing at its end, creating it when missing. */
+  public static FileChannel getAppendChannel(String path) throws IOException {
+    return FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
   }
 
   public static void createDir(String dir) {
+    createDir(dir, false);
+  }
+
+  /** Creates the directory; an existing one is an error unless reuse is allowed. */
+  public static void createDir(String dir, boolean reuse) {
     try {
-      Files.createDirectory(Paths.get(dir));
+      if (reuse) {
+        Files.createDirectories(Paths.get(dir));
+      } else {
+        Files.createDirectory(Paths.get(dir));
+      }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -0,0 +1,232 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IllformedLocaleException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Which alternate names become triples, decided on the raw alternateNames row while it is
+ * streamed: rows projected out are never decoded nor stored.
+ *
+ * Language codes are normalized to their BCP-47 tag through the iso-languagecodes.txt of the dump:
+ * ISO 639-1 when the language has one ("fra" and "fre" both give "fr"), else ISO 639-3. Two
+ * letter codes missing from it are kept as they are; without the table, only names with a two
+ * letter code or none are labels, as they always were. Then --languages keeps the given ones
+ * (normalized the same way, "none" for names without language), --preferred-labels the preferred
+ * names only, and --labels-per-language the best n names of each feature and language:
+ * preferred, short, plain, colloquial then historic ones, in label order among equals.
+ *
+ * Links are always kept; postcodes, the "post" rows, only with --postcodes.
+ */
+public class LabelProjection {
+
+  /** Names without language in --languages. */
+  public static final String NO_LANGUAGE = "none";
+  public static final String LINK = "link";
+  public static final String POSTCODE = "post";
+
+  /** Labels with a two letter language or none, links: the rows the converter always kept. */
+  public static final LabelProjection DEFAULT =
+      new LabelProjection(Map.of(), Set.of(), false, 0, false);
+
+  private final Map<String, String> codes;
+  private final Set<String> languages;
+  private final boolean preferredOnly;
+  private final int perLanguage;
+  private final boolean postcodes;
+  // raw language code to tag, empty when projected out
+  private final Map<String, Optional<String>> tags = new ConcurrentHashMap<>();
+
+  public LabelProjection(
+      Map<String, String> codes,
+      Set<String> languages,
+      boolean preferredOnly,
+      int perLanguage,
+      boolean postcodes) {
+    this.codes = codes;
+    this.preferredOnly = preferredOnly;
+    this.perLanguage = perLanguage;
+    this.postcodes = postcodes;
+    Set<String> normalized = new HashSet<>();
+    for (String language : languages) {
+      String tag = NO_LANGUAGE.equals(language) ? "" : normalize(language);
+      if (tag == null) {
+        throw new IllegalArgumentException("::: Unknown language " + language);
+      }
+      normalized.add(tag);
+    }
+    this.languages = normalized;
+  }
+
+  /** The projection of the options, normalizing with the input's iso-languagecodes.txt if any. */
+  public static LabelProjection of(ConversionOptions options) throws IOException {
+    Path table = Paths.get(options.getInput(), "iso-languagecodes.txt");
+    Set<String> languages = new HashSet<>();
+    if (options.getLanguages() != null) {
+      for (String language : options.getLanguages().split(",")) {
+        if (!language.isBlank()) {
+          languages.add(language.strip().toLowerCase(Locale.ROOT));
+        }
+      }
+    }
+    return new LabelProjection(
+        Files.exists(table) ? loadCodes(table) : Map.of(),
+        languages,
+        options.isPreferredLabels(),
+        options.getLabelsPerLanguage(),
+        options.isPostcodes());
+  }
+
+  /**
+   * Every ISO 639-3, 639-2 and 639-1 code of the table to the tag of its language. Columns are
+   * positional, the first ones often empty; rows whose tag is not a BCP-47 language tag are left
+   * out, as the writers output tags as they are.
+   */
+  static Map<String, String> loadCodes(Path table) throws IOException {
+    Map<String, String> codes = new HashMap<>();
+    List<String> lines = Files.readAllLines(table, UTF_8);
+    // the first line is the header
+    for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+      if (line.endsWith("\r")) {
+        line = line.substring(0, line.length() - 1);
+      }
+      String[] columns = line.split("\t", -1);
+      if (columns.length < 3) {
+        continue;
+      }
+      List<String> all = new ArrayList<>();
+      all.add(columns[2].strip());
+      all.add(columns[0].strip());
+      // 639-2 has both a bibliographic and a terminology code for some: "fre / fra"
+      for (String code : columns[1].split("/")) {
+        all.add(code.strip());
+      }
+      all.removeIf(String::isEmpty);
+      if (all.isEmpty()) {
+        continue;
+      }
+      String tag = all.getFirst().toLowerCase(Locale.ROOT);
+      if (!isLanguageTag(tag)) {
+        continue;
+      }
+      for (String code : all) {
+        codes.putIfAbsent(code.toLowerCase(Locale.ROOT), tag);
+      }
+    }
+    return codes;
+  }
+
+  // well-formed per BCP-47, as Locale.Builder checks it
+  static boolean isLanguageTag(String tag) {
+    try {
+      new Locale.Builder().setLanguageTag(tag);
+      return true;
+    } catch (IllformedLocaleException e) {
+      return false;
+    }
+  }
+
+  /**
+   * What a raw alternateNames row is kept as: LINK, POSTCODE, the language tag of a label (""
+   * for none), or null when it is projected out.
+   */
+  public String tagOf(TsvRecord record) {
+    if (record.equals(2, LINK)) {
+      return LINK;
+    }
+    if (record.equals(2, POSTCODE)) {
+      return postcodes ? POSTCODE : null;
+    }
+    // the codes of languages have at most three letters, the other "languages" are pseudo codes
+    if (record.length(2) > 3 || preferredOnly && !record.equals(4, "1")) {
+      return null;
+    }
+    return tag(record.getString(2, Interner.LANGUAGES));
+  }
+
+  /** The same as tagOf() for a name already decoded. */
+  public String tagOf(AlternateName name) {
+    String lang = name.getLang();
+    if (LINK.equals(lang)) {
+      return LINK;
+    }
+    if (POSTCODE.equals(lang)) {
+      return postcodes ? POSTCODE : null;
+    }
+    if (lang.length() > 3 || preferredOnly && (name.getFlags() & LabelStore.PREFERRED) == 0) {
+      return null;
+    }
+    return tag(lang);
+  }
+
+  private String tag(String lang) {
+    return tags.computeIfAbsent(lang, l -> Optional.ofNullable(project(l))).orElse(null);
+  }
+
+  private String project(String lang) {
+    String tag = lang.isEmpty() ? "" : normalize(lang);
+    return tag == null || !languages.isEmpty() && !languages.contains(tag) ? null : tag;
+  }
+
+  // null for a code that is not a language; two letter ones are kept as they are
+  private String normalize(String lang) {
+    String tag = codes.get(lang.toLowerCase(Locale.ROOT));
+    return tag != null ? tag : lang.length() < 3 && isLanguageTag(lang) ? lang : null;
+  }
+
+  /** How many labels per feature and language are kept, 0 for all. */
+  public int getPerLanguage() {
+    return perLanguage;
+  }
+
+  /** Rank of a label among those of its language, the lowest kept first. */
+  static int rank(int flags) {
+    if ((flags & LabelStore.PREFERRED) != 0) {
+      return 0;
+    }
+    if ((flags & LabelStore.HISTORIC) != 0) {
+      return 4;
+    }
+    if ((flags & LabelStore.COLLOQUIAL) != 0) {
+      return 3;
+    }
+    return (flags & LabelStore.SHORT) != 0 ? 1 : 2;
+  }
+
+  /** The labels of one feature that --labels-per-language keeps, in their original order. */
+  public List<AlternateName> best(List<AlternateName> labels) {
+    if (perLanguage <= 0) {
+      return labels;
+    }
+    List<AlternateName> ranked = new ArrayList<>(labels);
+    ranked.sort(
+        Comparator.comparing(AlternateName::getLang)
+            .thenComparingInt(name -> rank(name.getFlags()))
+            .thenComparing(AlternateName::getLabel));
+    Set<AlternateName> kept = new HashSet<>();
+    for (int i = 0, n = 0; i < ranked.size(); i++) {
+      boolean sameLanguage = i > 0 && ranked.get(i).getLang().equals(ranked.get(i - 1).getLang());
+      n = sameLanguage ? n + 1 : 0;
+      if (n < perLanguage) {
+        kept.add(ranked.get(i));
+      }
+    }
+    List<AlternateName> best = new ArrayList<>(labels);
+    best.retainAll(kept);
+    return best;
+  }
+}
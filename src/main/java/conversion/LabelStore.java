@@ -0,0 +1,375 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static namespaces.Vocabulary.ALTERNATE_NAME;
+import static namespaces.Vocabulary.COLLOQUIAL_NAME;
+import static namespaces.Vocabulary.HISTORICAL_NAME;
+import static namespaces.Vocabulary.OFFICIAL_NAME;
+import static namespaces.Vocabulary.POSTAL_CODE;
+import static namespaces.Vocabulary.SHORT_NAME;
+
+import com.google.common.primitives.ImmutableLongArray;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.eclipse.rdf4j.model.IRI;
+
+/*
+ * Alternate names, labels and links, keyed by the primitive geonameid. Records are packed into
+ * direct (off-heap) chunks, each loading thread appending to its own chunk; the only heap
+ * structure is a sorted long[] of (geonameid << 32 | offset / 8) keys. Triples are built only
+ * when a feature asks.
+ *
+ * seal() compacts the records in geonameid order, so that each chunk holds a range of features
+ * and can be dropped once all of them have been taken: off-heap memory goes down as features()
+ * goes through allCountries. Names of ids allCountries does not have keep their chunk to the end.
+ * Compacting is also when --labels-per-language drops the extra labels of each feature, the rows
+ * of a feature being scattered over the file and the loading threads until then.
+ *
+ * Record layout, 8-byte aligned: flags (1), lang length (1), label length (4), lang, label.
+ */
+public class LabelStore {
+
+  public static final int PREFERRED = 1;
+  public static final int SHORT = 2;
+  public static final int COLLOQUIAL = 4;
+  public static final int HISTORIC = 8;
+  /** A wikipedia or other web link rather than a label. */
+  public static final int LINK = 16;
+  /** A postal code of the feature. */
+  public static final int POSTCODE = 32;
+
+  static final int CHUNK_SIZE = 8 << 20;
+  private static final int HEADER = 6;
+
+  private final List<ByteBuffer> chunks = new CopyOnWriteArrayList<>();
+  private final Queue<Arena> arenas = new ConcurrentLinkedQueue<>();
+  // dropped by seal(), with what the arenas of the loading threads hold; null once sealed
+  private volatile ThreadLocal<Arena> arena = ThreadLocal.withInitial(this::newArena);
+  private long[] index = new long[0];
+
+  // once sealed: the compacted chunks (null when released), their records not taken yet and
+  // a bit per index entry, set on the first entry of the features taken
+  private ByteBuffer[] sealed = new ByteBuffer[0];
+  private AtomicIntegerArray remaining = new AtomicIntegerArray(0);
+  private AtomicLongArray taken = new AtomicLongArray(0);
+  private final AtomicInteger liveChunks = new AtomicInteger();
+
+  /** Thread-safe, until {@link #seal()}. */
+  public void add(long id, String lang, String label, int flags) {
+    ThreadLocal<Arena> arenaOf = arena;
+    if (arenaOf == null) {
+      throw new IllegalStateException("::: Label added to a sealed store for " + id);
+    }
+    if (id < 0 || id > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("::: geonameid out of range " + id);
+    }
+    byte[] langBytes = lang.getBytes(UTF_8);
+    byte[] labelBytes = label.getBytes(UTF_8);
+    int size = align(HEADER + langBytes.length + labelBytes.length);
+    if (size > CHUNK_SIZE) {
+      throw new IllegalArgumentException("::: label too long for " + id);
+    }
+
+    Arena a = arenaOf.get();
+    if (a.buffer == null || a.buffer.remaining() < size) {
+      a.chunk = allocateChunk();
+      a.buffer = chunks.get(a.chunk);
+    }
+    long offset = (long) a.chunk * CHUNK_SIZE + a.buffer.position();
+    a.buffer
+        .put((byte) flags)
+        .put((byte) langBytes.length)
+        .putInt(labelBytes.length)
+        .put(langBytes)
+        .put(labelBytes);
+    a.buffer.position((int) (offset % CHUNK_SIZE) + size);
+    a.keys.add(id << 32 | offset >>> 3);
+  }
+
+  /** Thread-safe, as add(). */
+  public void addLink(long id, String link) {
+    add(id, "", link, LINK);
+  }
+
+  /** Thread-safe, as add(). */
+  public void addPostcode(long id, String postcode) {
+    add(id, "", postcode, POSTCODE);
+  }
+
+  /** Builds the id index and compacts the records; call once, after all rows have been added. */
+  public LabelStore seal() {
+    return seal(0);
+  }
+
+  /** seal(), keeping at most the best perLanguage labels of each feature and language (0: all). */
+  public LabelStore seal(int perLanguage) {
+    if (arena == null) {
+      throw new IllegalStateException("::: Label store sealed twice");
+    }
+    // the thread-local values of the pool threads outlive the store: they keep nothing
+    arena = null;
+    var all = ImmutableLongArray.builder();
+    for (Arena a : arenas) {
+      all.addAll(a.keys.build());
+      a.buffer = null;
+      a.keys = null;
+    }
+    arenas.clear();
+    index = all.build().toArray();
+    Arrays.parallelSort(index);
+    compact(perLanguage);
+    return this;
+  }
+
+  // copies the records in index order into new chunks, the loading chunks are then dropped
+  private void compact(int perLanguage) {
+    List<ByteBuffer> compacted = new ArrayList<>();
+    List<Integer> counts = new ArrayList<>();
+    ByteBuffer target = null;
+    int kept = 0;
+    for (int from = 0, to; from < index.length; from = to) {
+      to = from + 1;
+      while (to < index.length && index[to] >>> 32 == index[from] >>> 32) {
+        to++;
+      }
+      boolean[] dropped = perLanguage > 0 ? beyond(from, to, perLanguage) : null;
+      for (int i = from; i < to; i++) {
+        if (dropped != null && dropped[i - from]) {
+          continue;
+        }
+        long offset = offsetOf(index[i]);
+        ByteBuffer chunk = chunks.get((int) (offset / CHUNK_SIZE));
+        int pos = (int) (offset % CHUNK_SIZE);
+        int size = align(HEADER + (chunk.get(pos + 1) & 0xFF) + chunk.getInt(pos + 2));
+        if (target == null || target.remaining() < size) {
+          target = ByteBuffer.allocateDirect(CHUNK_SIZE);
+          compacted.add(target);
+          counts.add(0);
+        }
+        int last = compacted.size() - 1;
+        long newOffset = (long) last * CHUNK_SIZE + target.position();
+        target.put(target.position(), chunk, pos, size);
+        target.position(target.position() + size);
+        counts.set(last, counts.get(last) + 1);
+        index[kept++] = index[i] & 0xFFFFFFFF00000000L | newOffset >>> 3;
+      }
+    }
+    index = kept < index.length ? Arrays.copyOf(index, kept) : index;
+    chunks.clear();
+    sealed = compacted.toArray(ByteBuffer[]::new);
+    remaining = new AtomicIntegerArray(counts.stream().mapToInt(Integer::intValue).toArray());
+    taken = new AtomicLongArray((index.length + 63) / 64);
+    liveChunks.set(sealed.length);
+  }
+
+  // the labels of one feature, index [from, to), beyond the best perLanguage of their language
+  private boolean[] beyond(int from, int to, int perLanguage) {
+    boolean[] dropped = new boolean[to - from];
+    if (to - from <= perLanguage) {
+      return dropped;
+    }
+    List<Ranked> labels = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      long offset = offsetOf(index[i]);
+      ByteBuffer chunk = chunks.get((int) (offset / CHUNK_SIZE));
+      int pos = (int) (offset % CHUNK_SIZE);
+      int flags = chunk.get(pos);
+      if ((flags & (LINK | POSTCODE)) != 0) {
+        continue;
+      }
+      int langLength = chunk.get(pos + 1) & 0xFF;
+      byte[] label = new byte[chunk.getInt(pos + 2)];
+      chunk.get(pos + HEADER + langLength, label);
+      String lang = Interner.LANGUAGES.intern(chunk, pos + HEADER, langLength);
+      labels.add(
+          new Ranked(i - from, lang, LabelProjection.rank(flags), new String(label, UTF_8)));
+    }
+    labels.sort(
+        Comparator.comparing(Ranked::lang)
+            .thenComparingInt(Ranked::rank)
+            .thenComparing(Ranked::label));
+    for (int i = 0, n = 0; i < labels.size(); i++) {
+      n = i > 0 && labels.get(i).lang().equals(labels.get(i - 1).lang()) ? n + 1 : 0;
+      dropped[labels.get(i).position()] = n >= perLanguage;
+    }
+    return dropped;
+  }
+
+  private record Ranked(int position, String lang, int rank, String label) {}
+
+  public int size() {
+    return index.length;
+  }
+
+  public long offHeapBytes() {
+    return (long) (chunks.size() + liveChunks.get()) * CHUNK_SIZE;
+  }
+
+  /** Writes the label and link triples of the given feature, decoded from the packed records. */
+  public void statements(long id, IRI subject, TripleSink sink) {
+    emit(firstIndexOf(id), id, subject, sink);
+  }
+
+  /**
+   * statements(), then gives up the records of the feature: a chunk is released once all its
+   * records have been taken. Taking a feature a second time writes nothing.
+   */
+  public void take(long id, IRI subject, TripleSink sink) {
+    int first = firstIndexOf(id);
+    if (first == index.length || index[first] >>> 32 != id || !markTaken(first)) {
+      return;
+    }
+    emit(first, id, subject, sink);
+    for (int i = first; i < index.length && index[i] >>> 32 == id; i++) {
+      int chunk = (int) (offsetOf(index[i]) / CHUNK_SIZE);
+      if (remaining.decrementAndGet(chunk) == 0) {
+        // freed by the buffer's cleaner, no other feature reads it anymore
+        sealed[chunk] = null;
+        liveChunks.decrementAndGet();
+      }
+    }
+  }
+
+  private void emit(int from, long id, IRI subject, TripleSink sink) {
+    List<String> links = null;
+    for (int i = from; i < index.length && index[i] >>> 32 == id; i++) {
+      long offset = offsetOf(index[i]);
+      ByteBuffer chunk = sealed[(int) (offset / CHUNK_SIZE)];
+      int pos = (int) (offset % CHUNK_SIZE);
+
+      int flags = chunk.get(pos);
+      int langLength = chunk.get(pos + 1) & 0xFF;
+      byte[] label = new byte[chunk.getInt(pos + 2)];
+      chunk.get(pos + HEADER + langLength, label);
+
+      if ((flags & POSTCODE) != 0) {
+        postcode(sink, subject, new String(label, UTF_8));
+        continue;
+      }
+      if ((flags & LINK) == 0) {
+        String lang = Interner.LANGUAGES.intern(chunk, pos + HEADER, langLength);
+        label(sink, subject, lang, new String(label, UTF_8), flags);
+        continue;
+      }
+      // a link listed twice is written once, as the links set did
+      links = links == null ? new ArrayList<>(2) : links;
+      String link = new String(label, UTF_8);
+      if (!links.contains(link)) {
+        links.add(link);
+        FeatureConverter.link(sink, subject, link);
+      }
+    }
+  }
+
+  private boolean markTaken(int i) {
+    long bit = 1L << (i & 63);
+    while (true) {
+      long word = taken.get(i >>> 6);
+      if ((word & bit) != 0) {
+        return false;
+      }
+      if (taken.compareAndSet(i >>> 6, word, word | bit)) {
+        return true;
+      }
+    }
+  }
+
+  static void label(TripleSink sink, IRI subject, String lang, String label, int flags) {
+    if (lang.isEmpty()) {
+      sink.literal(subject, property(flags), label, null);
+    } else {
+      sink.langLiteral(subject, property(flags), label, lang);
+    }
+  }
+
+  static void postcode(TripleSink sink, IRI subject, String postcode) {
+    sink.literal(subject, POSTAL_CODE, postcode, null);
+  }
+
+  private static IRI property(int flags) {
+    // the last matching flag wins, as it always did
+    if ((flags & HISTORIC) != 0) {
+      return HISTORICAL_NAME;
+    }
+    if ((flags & COLLOQUIAL) != 0) {
+      return COLLOQUIAL_NAME;
+    }
+    if ((flags & SHORT) != 0) {
+      return SHORT_NAME;
+    }
+    if ((flags & PREFERRED) != 0) {
+      return OFFICIAL_NAME;
+    }
+    return ALTERNATE_NAME;
+  }
+
+  /** Writes every row, in geonameid order, for {@link #load}; call before any take(). */
+  public void save(DataOutput out) throws IOException {
+    out.writeInt(index.length);
+    for (long key : index) {
+      long offset = offsetOf(key);
+      ByteBuffer chunk = sealed[(int) (offset / CHUNK_SIZE)];
+      int pos = (int) (offset % CHUNK_SIZE);
+      byte[] record = new byte[HEADER + (chunk.get(pos + 1) & 0xFF) + chunk.getInt(pos + 2)];
+      chunk.get(pos, record);
+      out.writeInt((int) (key >>> 32));
+      out.write(record);
+    }
+  }
+
+  /** Adds the rows written by {@link #save} to a new store and seals it. */
+  public LabelStore load(DataInput in) throws IOException {
+    for (int i = in.readInt(); i > 0; i--) {
+      long id = in.readInt();
+      int flags = in.readByte();
+      byte[] lang = new byte[in.readByte() & 0xFF];
+      byte[] label = new byte[in.readInt()];
+      in.readFully(lang);
+      in.readFully(label);
+      add(id, new String(lang, UTF_8), new String(label, UTF_8), flags);
+    }
+    return seal();
+  }
+
+  private int firstIndexOf(long id) {
+    int i = Arrays.binarySearch(index, id << 32);
+    return i < 0 ? -i - 1 : i;
+  }
+
+  private static long offsetOf(long key) {
+    return (key & 0xFFFFFFFFL) << 3;
+  }
+
+  private static int align(int size) {
+    return (size + 7) & ~7;
+  }
+
+  private synchronized int allocateChunk() {
+    chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+    return chunks.size() - 1;
+  }
+
+  private Arena newArena() {
+    Arena a = new Arena();
+    arenas.add(a);
+    return a;
+  }
+
+  private static class Arena {
+    private ByteBuffer buffer;
+    private int chunk;
+    private ImmutableLongArray.Builder keys = ImmutableLongArray.builder();
+  }
+}
@@ -0,0 +1,60 @@
+package conversion;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts latencies in logarithmic buckets, four per power of two, so that a percentile is known
+ * within 25% whatever its magnitude, in a fixed array of counters and without locks.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKETS = 4;
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+  public void record(long nanos) {
+    counts.incrementAndGet(bucketOf(Math.max(1, nanos)));
+  }
+
+  static int bucketOf(long nanos) {
+    int power = 63 - Long.numberOfLeadingZeros(nanos);
+    if (power < 2) {
+      return (int) nanos;
+    }
+    // the two bits after the leading one
+    int sub = (int) (nanos >>> (power - 2)) & (SUB_BUCKETS - 1);
+    return power * SUB_BUCKETS + sub;
+  }
+
+  // the largest latency of a bucket
+  static long upperBound(int bucket) {
+    int power = bucket / SUB_BUCKETS;
+    if (power < 2) {
+      return bucket;
+    }
+    int sub = bucket % SUB_BUCKETS;
+    return (1L << power) + ((sub + 1L) << (power - 2)) - 1;
+  }
+
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /** The latency under which the given fraction (0.5, 0.99...) of them were, in nanoseconds. */
+  public long percentile(double fraction) {
+    long total = count();
+    long rank = (long) Math.ceil(fraction * total);
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank && seen > 0) {
+        return upperBound(i);
+      }
+    }
+    return 0;
+  }
+}
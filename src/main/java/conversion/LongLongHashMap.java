@@ -0,0 +1,141 @@
+package conversion;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing (linear probing) map from long to long, without boxing. Not thread-safe: build
+ * it from one thread, then share it read-only. Long.MIN_VALUE cannot be used as a key.
+ */
+public class LongLongHashMap {
+
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private long[] keys;
+  private long[] values;
+  private int size;
+  private int mask;
+
+  public LongLongHashMap() {
+    this(16);
+  }
+
+  public LongLongHashMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+    allocate(capacity);
+  }
+
+  public long get(long key, long defaultValue) {
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      long k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == EMPTY) {
+        return defaultValue;
+      }
+    }
+  }
+
+  public boolean containsKey(long key) {
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      long k = keys[i];
+      if (k == key) {
+        return true;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+    }
+  }
+
+  public void put(long key, long value) {
+    if (key == EMPTY) {
+      throw new IllegalArgumentException("::: Unsupported key " + key);
+    }
+    int i = slot(key);
+    while (keys[i] != EMPTY && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    if (keys[i] == EMPTY) {
+      keys[i] = key;
+      if (++size * 2 > keys.length) {
+        values[i] = value;
+        rehash(keys.length * 2);
+        return;
+      }
+    }
+    values[i] = value;
+  }
+
+  /** Removes the key, if there. */
+  public void remove(long key) {
+    int i = slot(key);
+    while (keys[i] != key) {
+      if (keys[i] == EMPTY) {
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    // moves back the keys after it that could not be found past the hole
+    for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+      if (((j - slot(keys[j])) & mask) >= ((j - i) & mask)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = EMPTY;
+    size--;
+  }
+
+  /** Adds delta to the value of the key (0 when absent) and returns the new value. */
+  public long addTo(long key, long delta) {
+    long value = get(key, 0) + delta;
+    put(key, value);
+    return value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public interface Entry {
+    void accept(long key, long value);
+  }
+
+  public void forEach(Entry consumer) {
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY) {
+        consumer.accept(keys[i], values[i]);
+      }
+    }
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int j = slot(oldKeys[i]);
+        while (keys[j] != EMPTY) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    Arrays.fill(keys, EMPTY);
+    mask = capacity - 1;
+  }
+}
@@ -0,0 +1,164 @@
+package conversion;
+
+import java.util.Arrays;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+
+/*
+ * Serializes triples straight to N-Triples (or N-Quads, when given a graph) UTF-8 bytes, escaping
+ * as the RDF 1.1 grammar requires. No Statement or intermediate String is built; the buffer is
+ * reused from feature to feature by the thread that owns the encoder.
+ */
+public class NTriplesEncoder implements TripleSink {
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+  private final String graph;
+  private byte[] bytes = new byte[4096];
+  private int length;
+
+  /** Encoder of N-Quads in the given graph, or of N-Triples when graph is null. */
+  public NTriplesEncoder(IRI graph) {
+    this.graph = graph == null ? null : graph.stringValue();
+  }
+
+  @Override
+  public void iri(IRI subject, IRI predicate, IRI object) {
+    start(subject, predicate);
+    iri(object.stringValue());
+    end();
+  }
+
+  @Override
+  public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+    start(subject, predicate);
+    string(label);
+    // xsd:string is the implicit datatype of plain literals
+    if (datatype != null && !XSD.STRING.equals(datatype)) {
+      put((byte) '^').put((byte) '^');
+      iri(datatype.stringValue());
+    }
+    end();
+  }
+
+  @Override
+  public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+    start(subject, predicate);
+    string(label);
+    put((byte) '@');
+    for (int i = 0; i < lang.length(); i++) {
+      put((byte) lang.charAt(i));
+    }
+    end();
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /** The bytes encoded since the last reset. */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, length);
+  }
+
+  public NTriplesEncoder reset() {
+    length = 0;
+    return this;
+  }
+
+  private void start(IRI subject, IRI predicate) {
+    iri(subject.stringValue());
+    put((byte) ' ');
+    iri(predicate.stringValue());
+    put((byte) ' ');
+  }
+
+  private void end() {
+    if (graph != null) {
+      put((byte) ' ');
+      iri(graph);
+    }
+    put((byte) ' ').put((byte) '.').put((byte) '\n');
+  }
+
+  private void iri(String iri) {
+    put((byte) '<');
+    for (int i = 0; i < iri.length(); i++) {
+      char c = iri.charAt(i);
+      switch (c) {
+        case '<', '>', '"', '{', '}', '|', '^', '`', '\\' -> unicode(c);
+        default -> {
+          if (c <= 0x20) {
+            unicode(c);
+          } else {
+            i = utf8(iri, i);
+          }
+        }
+      }
+    }
+    put((byte) '>');
+  }
+
+  private void string(String label) {
+    put((byte) '"');
+    for (int i = 0; i < label.length(); i++) {
+      char c = label.charAt(i);
+      switch (c) {
+        case '"' -> put((byte) '\\').put((byte) '"');
+        case '\\' -> put((byte) '\\').put((byte) '\\');
+        case '\n' -> put((byte) '\\').put((byte) 'n');
+        case '\r' -> put((byte) '\\').put((byte) 'r');
+        case '\t' -> put((byte) '\\').put((byte) 't');
+        default -> {
+          if (c < 0x20 || c == 0x7F) {
+            unicode(c);
+          } else {
+            i = utf8(label, i);
+          }
+        }
+      }
+    }
+    put((byte) '"');
+  }
+
+  // writes the code point at i, returns the index of its last char
+  private int utf8(String s, int i) {
+    char c = s.charAt(i);
+    if (c < 0x80) {
+      put((byte) c);
+    } else if (c < 0x800) {
+      put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+    } else if (Character.isHighSurrogate(c)
+        && i + 1 < s.length()
+        && Character.isLowSurrogate(s.charAt(i + 1))) {
+      int cp = Character.toCodePoint(c, s.charAt(++i));
+      put((byte) (0xF0 | cp >> 18))
+          .put((byte) (0x80 | cp >> 12 & 0x3F))
+          .put((byte) (0x80 | cp >> 6 & 0x3F))
+          .put((byte) (0x80 | cp & 0x3F));
+    } else if (Character.isSurrogate(c)) {
+      // lone surrogate, not encodable
+      unicode(0xFFFD);
+    } else {
+      put((byte) (0xE0 | c >> 12))
+          .put((byte) (0x80 | c >> 6 & 0x3F))
+          .put((byte) (0x80 | c & 0x3F));
+    }
+    return i;
+  }
+
+  private void unicode(int c) {
+    put((byte) '\\').put((byte) 'u');
+    for (int shift = 12; shift >= 0; shift -= 4) {
+      put(HEX[c >> shift & 0xF]);
+    }
+  }
+
+  private NTriplesEncoder put(byte b) {
+    if (length == bytes.length) {
+      bytes = Arrays.copyOf(bytes, length * 2);
+    }
+    bytes[length++] = b;
+    return this;
+  }
+}
@@ -0,0 +1,70 @@
+package conversion;
+
+import com.google.common.io.CountingOutputStream;
+import conversion.ConversionOptions.Compression;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * An output file, compressed or not, counting the bytes written to it and the bytes stored. It can
+ * be reopened to append to what an earlier run left.
+ */
+public class OutputFile implements Closeable {
+
+  private final long initialLength;
+  private final CountingOutputStream stored;
+  private final ParallelGzipOutputStream compressor;
+  private final CountingOutputStream written;
+
+  public OutputFile(Path path, Compression compression) throws IOException {
+    this(path, compression, false);
+  }
+
+  public OutputFile(Path path, Compression compression, boolean append) throws IOException {
+    initialLength = append && Files.exists(path) ? Files.size(path) : 0;
+    OutputStream file =
+        append
+            ? Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+            : Files.newOutputStream(path);
+    stored = new CountingOutputStream(new BufferedOutputStream(file, 1 << 16));
+    compressor =
+        compression == Compression.GZIP
+            ? new ParallelGzipOutputStream(stored, initialLength > 0)
+            : null;
+    written = new CountingOutputStream(compressor != null ? compressor : stored);
+  }
+
+  public OutputStream stream() {
+    return written;
+  }
+
+  /** Bytes before compression. */
+  public long getWrittenBytes() {
+    return written.getCount();
+  }
+
+  /** Bytes on disk. */
+  public long getStoredBytes() {
+    return stored.getCount();
+  }
+
+  /** Writes everything out (ending the gzip member) and returns the length of the file. */
+  public long sync() throws IOException {
+    written.flush();
+    if (compressor != null) {
+      compressor.sync();
+    }
+    stored.flush();
+    return initialLength + stored.getCount();
+  }
+
+  @Override
+  public void close() throws IOException {
+    written.close();
+  }
+}
@@ -0,0 +1,146 @@
+package conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Gzip output compressed pigz-style: the data is cut into fixed size blocks that are deflated in
+ * parallel on a shared pool, each into a complete gzip member, and the members are written in
+ * order. A concatenation of members is a valid gzip file that gunzip and GZIPInputStream read as
+ * one stream. At most a few blocks per stream are in flight, which bounds memory and makes the
+ * writer wait when compression falls behind. A new stream closed without any data still writes an
+ * empty member, so the file is a valid (empty) gzip file rather than zero bytes.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  static final int BLOCK_SIZE = 256 << 10;
+  private static final int MAX_PENDING = 4;
+
+  private static final ExecutorService pool =
+      Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          runnable -> {
+            Thread thread = new Thread(runnable, "gzip-block");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final OutputStream out;
+  private final boolean append;
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int length;
+  private boolean empty = true;
+  private boolean closed = false;
+
+  public ParallelGzipOutputStream(OutputStream out) {
+    this(out, false);
+  }
+
+  /** Appending to members already written, nothing is added when no data is. */
+  public ParallelGzipOutputStream(OutputStream out, boolean append) {
+    this.out = out;
+    this.append = append;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    block[length++] = (byte) b;
+    if (length == BLOCK_SIZE) {
+      submit();
+    }
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    while (count > 0) {
+      int n = Math.min(count, BLOCK_SIZE - length);
+      System.arraycopy(bytes, offset, block, length, n);
+      length += n;
+      offset += n;
+      count -= n;
+      if (length == BLOCK_SIZE) {
+        submit();
+      }
+    }
+  }
+
+  /** Writes the blocks already compressed; the current one is kept to avoid tiny members. */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isDone()) {
+      writeOldest();
+    }
+    out.flush();
+  }
+
+  /** Ends the current member and writes everything out, so the file ends on a member boundary. */
+  public void sync() throws IOException {
+    if (length > 0) {
+      submit();
+    }
+    while (!pending.isEmpty()) {
+      writeOldest();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (length > 0 || empty && !append) {
+        submit();
+      }
+      while (!pending.isEmpty()) {
+        writeOldest();
+      }
+    } finally {
+      pending.forEach(future -> future.cancel(false));
+      out.close();
+    }
+  }
+
+  private void submit() throws IOException {
+    byte[] data = block;
+    int size = length;
+    empty = false;
+    pending.add(pool.submit(() -> member(data, size)));
+    block = new byte[BLOCK_SIZE];
+    length = 0;
+    while (pending.size() > MAX_PENDING) {
+      writeOldest();
+    }
+  }
+
+  private void writeOldest() throws IOException {
+    try {
+      out.write(pending.poll().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("::: Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("::: Block compression failed", e.getCause());
+    }
+  }
+
+  private static byte[] member(byte[] data, int size) throws IOException {
+    var member = new ByteArrayOutputStream(size / 3 + 64);
+    try (var gzip = new GZIPOutputStream(member, 1 << 16)) {
+      gzip.write(data, 0, size);
+    }
+    return member.toByteArray();
+  }
+}
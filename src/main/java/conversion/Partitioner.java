@@ -0,0 +1,67 @@
+package conversion;
+
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+/*
+ * Routes every feature to its shard, the output file it is written to (name without extension).
+ * Called by the parser workers, concurrently: implementations are stateless or read-only. Shard
+ * files are owned by the writer stage, which may roll them over by size (see ShardedWriter).
+ */
+public interface Partitioner {
+
+  String NO_COUNTRY = "noCountry";
+  String NO_CONTINENT = "noContinent";
+
+  String shardOf(GeonamesFeature feature);
+
+  /** The partitioner chosen by --partition (and --shards). */
+  static Partitioner of(ConversionOptions options) {
+    return switch (options.getPartition()) {
+      case COUNTRY -> byCountry();
+      case CONTINENT -> byContinent();
+      case HASH -> byHash(options.getShards());
+    };
+  }
+
+  /** One file per ISO country code, features without one in noCountry. */
+  static Partitioner byCountry() {
+    return feature -> {
+      String country = feature.getCountry();
+      return country.isBlank() ? NO_COUNTRY : country;
+    };
+  }
+
+  /** One file per continent code (AF, AN, AS, EU, NA, OC, SA) of the feature's country. */
+  static Partitioner byContinent() {
+    Properties properties = new Properties();
+    try (InputStream in = Partitioner.class.getResourceAsStream("/countryToContinent.properties")) {
+      properties.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Map<String, String> continents = Maps.fromProperties(properties);
+    return feature -> continents.getOrDefault(feature.getCountry(), NO_CONTINENT);
+  }
+
+  /** Files of about the same size, part-0000 to part-(shards - 1), by hash of the geonameid. */
+  static Partitioner byHash(int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("::: --shards must be positive, not " + shards);
+    }
+    String[] names =
+        IntStream.range(0, shards)
+            .mapToObj(i -> String.format("part-%04d", i))
+            .toArray(String[]::new);
+    return feature -> {
+      // geonameids come in runs: spread them with a multiplicative hash first
+      long mixed = feature.getGeonameid() * 0x9E3779B97F4A7C15L;
+      return names[(int) ((mixed >>> 32) % shards)];
+    };
+  }
+}
@@ -0,0 +1,404 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.eclipse.rdf4j.model.IRI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Counters and timers of one conversion run. Workers only touch striped LongAdders (one per stage,
+ * one per predicate), read when the progress line is logged, through JMX while the run lasts, and
+ * once more for the JSON run report written at the end. Lines are counted by stage rather than by
+ * input file: several stages read allCountries.txt, some of them at the same time.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+  private static final Logger logger = LoggerFactory.getLogger(PipelineMetrics.class);
+  private static final String OBJECT_NAME = "conversion:type=PipelineMetrics";
+
+  private final Instant startedAt = Instant.now();
+  private final long start = System.nanoTime();
+  private final Map<String, LongAdder> lines = new ConcurrentHashMap<>();
+  private final Map<IRI, LongAdder> statements = new ConcurrentHashMap<>();
+  private final Map<String, long[]> files = new ConcurrentSkipListMap<>();
+  private final Map<String, Long> indexes = new ConcurrentSkipListMap<>();
+  private final List<Stage> stages = new ArrayList<>();
+  private final LongAccumulator heapPeak = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator offHeapPeak = new LongAccumulator(Math::max, 0);
+  private final ThreadLocal<CountingSink> sinks = ThreadLocal.withInitial(CountingSink::new);
+  // stages overlap when the scheduler runs them concurrently
+  private final List<Stage> running = new CopyOnWriteArrayList<>();
+  private volatile List<String> criticalPath = List.of();
+  private volatile long criticalPathMillis;
+  private ScheduledExecutorService reporter;
+
+  /** A timed stage of the run, reading one input file (or none) and counting its lines. */
+  public class Stage implements AutoCloseable {
+
+    private final String name;
+    private final String input;
+    private final long start = System.nanoTime();
+    private final LongAdder lines;
+    private volatile long nanos = -1;
+
+    private Stage(String name, String input) {
+      this.name = name;
+      this.input = input;
+      this.lines = lines(name);
+    }
+
+    long linesRead() {
+      return lines.sum();
+    }
+
+    long nanos() {
+      return nanos >= 0 ? nanos : System.nanoTime() - start;
+    }
+
+    long linesPerSecond() {
+      return linesRead() * 1_000_000_000L / Math.max(1, nanos());
+    }
+
+    @Override
+    public void close() {
+      nanos = System.nanoTime() - start;
+      running.remove(this);
+      sampleMemory();
+      if (input == null) {
+        logger.info("Stage {} done in {} ms", name, nanos / 1_000_000);
+      } else {
+        logger.info(
+            "Stage {} done in {} ms, {} lines, {} lines/s",
+            name,
+            nanos / 1_000_000,
+            linesRead(),
+            linesPerSecond());
+      }
+    }
+  }
+
+  /** Starts a stage; close it when done. */
+  public Stage stage(String name, String input) {
+    Stage stage = new Stage(name, input);
+    synchronized (stages) {
+      stages.add(stage);
+    }
+    running.add(stage);
+    return stage;
+  }
+
+  /** Records the chain of stages that bounded the run, as found by the StageScheduler. */
+  public void criticalPath(List<String> stages, long millis) {
+    criticalPath = List.copyOf(stages);
+    criticalPathMillis = millis;
+  }
+
+  /** The line counter of a stage; callers keep it rather than looking it up per line. */
+  public LongAdder lines(String stage) {
+    return lines.computeIfAbsent(stage, name -> new LongAdder());
+  }
+
+  /**
+   * The sink, counting its statements by predicate. The wrapper is the calling thread's and is
+   * reused: use it before the next call.
+   */
+  public TripleSink counting(TripleSink sink) {
+    CountingSink counting = sinks.get();
+    counting.delegate = sink;
+    return counting;
+  }
+
+  public void index(String name, long size) {
+    indexes.put(name, size);
+  }
+
+  /** Records the bytes written to an output file, before and after compression. */
+  public void file(String name, long written, long stored) {
+    files.put(name, new long[] {written, stored});
+  }
+
+  /** Registers the MXBean and logs a progress line every given seconds (none if 0). */
+  public void start(int progressSeconds) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    } catch (JMException e) {
+      logger.warn("::: Metrics not registered in JMX: {}", e.getMessage());
+    }
+    if (progressSeconds > 0) {
+      reporter =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "progress");
+                thread.setDaemon(true);
+                return thread;
+              });
+      reporter.scheduleAtFixedRate(
+          this::logProgress, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  public void stop() {
+    if (reporter != null) {
+      reporter.shutdownNow();
+    }
+    try {
+      var server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      logger.warn("::: Metrics not unregistered from JMX: {}", e.getMessage());
+    }
+  }
+
+  private void logProgress() {
+    sampleMemory();
+    for (Stage stage : running) {
+      logger.info(
+          "{}: {} lines, {} lines/s, {} statements, heap {} MB, off-heap {} MB",
+          stage.name,
+          stage.linesRead(),
+          stage.linesPerSecond(),
+          totalStatements(),
+          getHeapUsed() >> 20,
+          getOffHeapUsed() >> 20);
+    }
+  }
+
+  private void sampleMemory() {
+    heapPeak.accumulate(getHeapUsed());
+    offHeapPeak.accumulate(getOffHeapUsed());
+  }
+
+  private long totalStatements() {
+    return statements.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  @Override
+  public String getStage() {
+    return String.join(", ", running.stream().map(stage -> stage.name).toList());
+  }
+
+  @Override
+  public long getElapsedMillis() {
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  @Override
+  public Map<String, Long> getLines() {
+    return sums(lines);
+  }
+
+  @Override
+  public Map<String, Long> getStatements() {
+    Map<String, Long> byPredicate = new TreeMap<>();
+    statements.forEach((predicate, count) -> byPredicate.put(predicate.stringValue(), count.sum()));
+    return byPredicate;
+  }
+
+  @Override
+  public Map<String, Long> getBytesWritten() {
+    Map<String, Long> written = new TreeMap<>();
+    files.forEach((file, bytes) -> written.put(file, bytes[0]));
+    return written;
+  }
+
+  @Override
+  public Map<String, Long> getIndexSizes() {
+    return new TreeMap<>(indexes);
+  }
+
+  @Override
+  public Map<String, Long> getInterning() {
+    Map<String, Long> interning = new TreeMap<>();
+    for (Interner interner : Interner.all()) {
+      long hits = interner.hits();
+      long lookups = hits + interner.misses();
+      interning.put(interner.getName() + ".size", (long) interner.size());
+      interning.put(interner.getName() + ".literals", (long) interner.literals());
+      interning.put(interner.getName() + ".hits", hits);
+      interning.put(interner.getName() + ".misses", interner.misses());
+      interning.put(interner.getName() + ".hitPercent", lookups == 0 ? 0 : 100 * hits / lookups);
+    }
+    return interning;
+  }
+
+  @Override
+  public long getHeapUsed() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  @Override
+  public long getOffHeapUsed() {
+    long used = 0;
+    for (var pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      used += Math.max(0, pool.getMemoryUsed());
+    }
+    return used;
+  }
+
+  /** Writes the JSON run report: stages, lines, statements, files, indexes, interning, memory. */
+  public void writeReport(Path file) throws IOException {
+    sampleMemory();
+    var json = new StringBuilder("{\n");
+    json.append("  \"startedAt\": ").append(quote(startedAt.toString())).append(",\n");
+    json.append("  \"elapsedMillis\": ").append(getElapsedMillis()).append(",\n");
+    json.append("  \"stages\": [");
+    synchronized (stages) {
+      for (int i = 0; i < stages.size(); i++) {
+        Stage stage = stages.get(i);
+        json.append(i == 0 ? "\n" : ",\n")
+            .append("    {\"name\": ")
+            .append(quote(stage.name))
+            .append(", \"input\": ")
+            .append(stage.input == null ? "null" : quote(stage.input))
+            .append(", \"startMillis\": ")
+            .append((stage.start - start) / 1_000_000)
+            .append(", \"millis\": ")
+            .append(stage.nanos() / 1_000_000)
+            .append(", \"lines\": ")
+            .append(stage.linesRead())
+            .append(", \"linesPerSecond\": ")
+            .append(stage.linesPerSecond())
+            .append('}');
+      }
+    }
+    json.append("\n  ],\n");
+    json.append("  \"criticalPath\": {\"millis\": ").append(criticalPathMillis);
+    json.append(", \"stages\": [");
+    json.append(String.join(", ", criticalPath.stream().map(PipelineMetrics::quote).toList()));
+    json.append("]},\n");
+    json.append("  \"lines\": ");
+    object(json, getLines(), "  ");
+    json.append(",\n  \"statements\": {\"total\": ").append(totalStatements());
+    json.append(", \"byPredicate\": ");
+    object(json, getStatements(), "  ");
+    json.append("},\n  \"files\": {");
+    String separator = "\n";
+    for (var entry : files.entrySet()) {
+      json.append(separator)
+          .append("    ")
+          .append(quote(entry.getKey()))
+          .append(": {\"written\": ")
+          .append(entry.getValue()[0])
+          .append(", \"stored\": ")
+          .append(entry.getValue()[1])
+          .append('}');
+      separator = ",\n";
+    }
+    json.append("\n  },\n  \"indexes\": ");
+    object(json, getIndexSizes(), "  ");
+    json.append(",\n  \"interning\": ");
+    object(json, getInterning(), "  ");
+    json.append(",\n  \"memory\": {")
+        .append("\"heapUsed\": ")
+        .append(getHeapUsed())
+        .append(", \"heapPeak\": ")
+        .append(heapPeak.get())
+        .append(", \"heapMax\": ")
+        .append(Runtime.getRuntime().maxMemory())
+        .append(", \"offHeapUsed\": ")
+        .append(getOffHeapUsed())
+        .append(", \"offHeapPeak\": ")
+        .append(offHeapPeak.get())
+        .append("}\n}\n");
+    Files.writeString(file, json, UTF_8);
+    logger.info("Run report written to {}", file);
+  }
+
+  private static Map<String, Long> sums(Map<String, LongAdder> adders) {
+    Map<String, Long> sums = new TreeMap<>();
+    adders.forEach((key, adder) -> sums.put(key, adder.sum()));
+    return sums;
+  }
+
+  private static void object(StringBuilder json, Map<String, Long> values, String indent) {
+    json.append('{');
+    String separator = "\n";
+    for (var entry : values.entrySet()) {
+      json.append(separator).append(indent).append("  ").append(quote(entry.getKey()));
+      json.append(": ").append(entry.getValue());
+      separator = ",\n";
+    }
+    json.append(values.isEmpty() ? "}" : "\n" + indent + "}");
+  }
+
+  private static String quote(String value) {
+    var quoted = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> quoted.append("\\\"");
+        case '\\' -> quoted.append("\\\\");
+        default -> {
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+        }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  /** Counts the statements by predicate on their way to the real sink. */
+  private class CountingSink implements TripleSink {
+
+    private TripleSink delegate;
+
+    @Override
+    public void iri(IRI subject, IRI predicate, IRI object) {
+      count(predicate);
+      delegate.iri(subject, predicate, object);
+    }
+
+    @Override
+    public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+      count(predicate);
+      delegate.literal(subject, predicate, label, datatype);
+    }
+
+    @Override
+    public void sharedLiteral(IRI subject, IRI predicate, String label, IRI datatype) {
+      count(predicate);
+      delegate.sharedLiteral(subject, predicate, label, datatype);
+    }
+
+    @Override
+    public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+      count(predicate);
+      delegate.langLiteral(subject, predicate, label, lang);
+    }
+
+    private void count(IRI predicate) {
+      LongAdder count = statements.get(predicate);
+      if (count == null) {
+        count = statements.computeIfAbsent(predicate, p -> new LongAdder());
+      }
+      count.increment();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package conversion;
+
+import java.util.Map;
+
+/* The live view of PipelineMetrics in JMX, under conversion:type=PipelineMetrics. */
+public interface PipelineMetricsMXBean {
+
+  /** The stages running, comma separated, "" between stages. */
+  String getStage();
+
+  long getElapsedMillis();
+
+  /** Lines read so far, by stage. */
+  Map<String, Long> getLines();
+
+  /** Statements emitted so far, by predicate IRI. */
+  Map<String, Long> getStatements();
+
+  /** Bytes written (before compression) to each closed output file. */
+  Map<String, Long> getBytesWritten();
+
+  /** Entries of the in-memory indexes, as last recorded. */
+  Map<String, Long> getIndexSizes();
+
+  /** Size, hits, misses and hit percent of each Interner, as name.size and so on. */
+  Map<String, Long> getInterning();
+
+  long getHeapUsed();
+
+  /** Direct and mapped buffers. */
+  long getOffHeapUsed();
+}
@@ -0,0 +1,151 @@
+package conversion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/*
+ * The records of one shard in deterministic mode, keyed by geonameid: buffered by the owner of
+ * the shard, spilled as sorted runs when it runs out of budget, then merged back in key order with
+ * a k-way merge, as ExternalSorter does with lines. Equal keys keep the order they were added in.
+ *
+ * Run layout: key (8), length (4), record, until the end of the file.
+ */
+public class ShardRuns {
+
+  private final Path dir;
+  private final String shard;
+  private final List<Keyed> pending = new ArrayList<>();
+  private final List<Path> runs = new ArrayList<>();
+  private long pendingBytes;
+
+  ShardRuns(Path dir, String shard) {
+    this.dir = dir;
+    this.shard = shard;
+  }
+
+  void add(long key, byte[] record) {
+    pending.add(new Keyed(key, record));
+    pendingBytes += record.length + 32;
+  }
+
+  /** Heap taken by the records not spilled yet, roughly. */
+  long pendingBytes() {
+    return pendingBytes;
+  }
+
+  void spill() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    pending.sort(Comparator.comparingLong(Keyed::key)); // stable
+    Files.createDirectories(dir);
+    Path run = Files.createTempFile(dir, shard + "-", ".run");
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+      for (Keyed keyed : pending) {
+        out.writeLong(keyed.key());
+        out.writeInt(keyed.record().length);
+        out.write(keyed.record());
+      }
+    }
+    runs.add(run);
+    pending.clear();
+    pendingBytes = 0;
+  }
+
+  /** Hands all the records to the consumer in key order, then deletes the runs. */
+  void merge(Consumer<byte[]> records) throws IOException {
+    if (runs.isEmpty()) {
+      pending.sort(Comparator.comparingLong(Keyed::key));
+      pending.forEach(keyed -> records.accept(keyed.record()));
+      pending.clear();
+      return;
+    }
+    spill();
+    var heads =
+        new PriorityQueue<>(Comparator.comparingLong(Run::key).thenComparingInt(Run::index));
+    try {
+      for (int i = 0; i < runs.size(); i++) {
+        Run run = new Run(runs.get(i), i);
+        if (run.advance()) {
+          heads.add(run);
+        } else {
+          run.close();
+        }
+      }
+      while (!heads.isEmpty()) {
+        Run run = heads.poll();
+        records.accept(run.record());
+        if (run.advance()) {
+          heads.add(run);
+        } else {
+          run.close();
+        }
+      }
+    } finally {
+      for (Run run : heads) {
+        run.close();
+      }
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+      runs.clear();
+    }
+  }
+
+  private record Keyed(long key, byte[] record) {}
+
+  /** A run being merged, positioned on its current record. */
+  private static class Run implements Closeable {
+
+    private final DataInputStream in;
+    private final int index;
+    private long key;
+    private byte[] record;
+
+    Run(Path file, int index) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+      this.index = index;
+    }
+
+    boolean advance() throws IOException {
+      try {
+        key = in.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+      record = new byte[in.readInt()];
+      in.readFully(record);
+      return true;
+    }
+
+    long key() {
+      return key;
+    }
+
+    // runs of equal keys are taken in the order they were spilled
+    int index() {
+      return index;
+    }
+
+    byte[] record() {
+      return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
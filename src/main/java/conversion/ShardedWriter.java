@@ -0,0 +1,818 @@
+package conversion;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.eclipse.rdf4j.model.util.Statements.statement;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+import conversion.ConversionOptions.Compression;
+import conversion.ConversionOptions.OutputFormat;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.util.Values;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.binary.BinaryRDFWriter;
+import org.eclipse.rdf4j.rio.turtle.TurtleWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Writer stage of the conversion. Every shard (one output file) is owned by exactly one writer
+ * thread, chosen by hashing the shard name, so an rdf4j writer is never touched by two threads.
+ * Parser workers hand off whole batches through bounded per-owner queues: they only contend when
+ * they target the same owner, and they block (back-pressure) when that owner falls behind.
+ *
+ * In the line based formats workers serialize their batches to bytes themselves; owners only copy
+ * them into a direct buffer per shard that is drained to the file channel. Compressed shards go
+ * through a ParallelGzipOutputStream, so the owner thread does not deflate either. The dictionary
+ * format is fed the same bytes, which its owner encodes block by block.
+ *
+ * With a size cap, a shard is written to numbered segment files (US-0000, US-0001...), the owner
+ * rolling over to the next one once a segment has been written that many bytes (before
+ * compression): bulk loaders then get files of about the same size, whatever the partitioning.
+ *
+ * In deterministic mode the files come out the same from run to run, however the parser workers
+ * were scheduled: the triples of every batch are put in a canonical order by the worker, owners
+ * buffer the batches of their shards by key (the geonameid), spilling the largest as sorted runs
+ * past their budget, and each shard is written out in key order by a k-way merge of its runs once
+ * all batches are in. The SHA-256 of every file is then listed in SHA256SUMS, sha256sum style, so
+ * that the files that did not change since the previous run need not be uploaded again.
+ */
+public class ShardedWriter implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ShardedWriter.class);
+  private static final Batch POISON = new Batch(null, 0, List.of(), null, null);
+  private static final int SHARD_BUFFER = 256 << 10;
+  // per owner, in deterministic mode
+  private static final long SORT_BUFFER = 64 << 20;
+  private static final String MANIFEST = "SHA256SUMS";
+  private static final Comparator<Statement> CANONICAL =
+      Comparator.<Statement, String>comparing(s -> s.getSubject().stringValue())
+          .thenComparing(s -> s.getPredicate().stringValue())
+          .thenComparing(s -> s.getObject().toString());
+
+  private final String output;
+  private final Set<Namespace> namespaces;
+  private final OutputFormat format;
+  private final Compression compression;
+  private final ThreadLocal<NTriplesEncoder> encoders;
+  private final List<Owner> owners;
+  private final Map<String, Length> synced = new ConcurrentHashMap<>();
+  private Map<String, Length> resumed = Map.of();
+  private PipelineMetrics metrics;
+  private long maxFileBytes;
+  // where the sorted runs are spilled in deterministic mode, else null
+  private Path runDir;
+  private final Map<String, String> hashes = new ConcurrentSkipListMap<>();
+  private volatile Throwable failure;
+  private boolean closed = false;
+
+  public ShardedWriter(
+      String output,
+      Set<Namespace> namespaces,
+      OutputFormat format,
+      IRI graph,
+      Compression compression,
+      int threads,
+      int queueCapacity) {
+    this.output = output;
+    this.namespaces = namespaces;
+    this.format = format;
+    this.compression = compression;
+    IRI context = format == OutputFormat.NQUADS ? graph : null;
+    this.encoders = ThreadLocal.withInitial(() -> new NTriplesEncoder(context));
+    this.owners =
+        IntStream.range(0, threads).mapToObj(i -> new Owner(i, queueCapacity)).collect(toList());
+    owners.forEach(Thread::start);
+  }
+
+  public ShardedWriter(String output, Set<Namespace> namespaces, ConversionOptions options) {
+    this(
+        output,
+        namespaces,
+        options.getFormat(),
+        iri(options.getGraph()),
+        options.getCompression(),
+        Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+        1024);
+  }
+
+  public ShardedWriter(String output, Set<Namespace> namespaces) {
+    this(output, namespaces, new ConversionOptions());
+  }
+
+  /** Where the bytes of every shard file are recorded once it is closed. */
+  public ShardedWriter setMetrics(PipelineMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /** Rolls shards over to a new segment file every given bytes, before compression; 0 never. */
+  public ShardedWriter setMaxFileBytes(long maxFileBytes) {
+    this.maxFileBytes = maxFileBytes;
+    return this;
+  }
+
+  /** Writes every shard in key order and lists the hashes of the files; see submit(). */
+  public ShardedWriter setDeterministic(boolean deterministic) {
+    this.runDir = deterministic ? Path.of(output, "sorted-runs") : null;
+    return this;
+  }
+
+  /**
+   * A sink for the triples of one batch, in the form this writer's format needs. The sink belongs
+   * to the calling thread until it is submitted.
+   */
+  public TripleSink newSink() {
+    return format.isRdf4j() ? new StatementCollector() : encoders.get().reset();
+  }
+
+  /**
+   * Queues the triples of a sink from newSink() for each of the shards. In deterministic mode the
+   * batches of a shard are written in the order of their keys, those of equal keys as they came.
+   */
+  public void submit(long key, TripleSink triples, String... shards) {
+    checkFailure();
+    // serialized once, shared by the shards
+    List<Statement> statements = null;
+    byte[] bytes = null;
+    if (runDir != null) {
+      bytes = canonical(triples);
+    } else if (triples instanceof NTriplesEncoder encoder) {
+      bytes = encoder.toByteArray();
+    } else {
+      statements = ((StatementCollector) triples).getStatements();
+    }
+    for (String shard : shards) {
+      Owner owner = owners.get(Math.floorMod(shard.hashCode(), owners.size()));
+      try {
+        owner.queue.put(new Batch(shard, key, statements, bytes, null));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Continues the shards of an interrupted run: every shard file is cut back to the given length
+   * and appended to, shard files the map does not know are deleted. Call before any submit().
+   */
+  public void resume(Map<String, Length> lengths) throws IOException {
+    String suffix = "." + format.getExtension() + compression.getSuffix();
+    try (Stream<Path> files = Files.list(Path.of(output))) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(suffix) && !lengths.containsKey(shardOf(name, suffix))) {
+          Files.delete(file);
+        }
+      }
+    }
+    for (var shard : lengths.entrySet()) {
+      try (FileChannel channel = IoUtils.getAppendChannel(path(shard.getKey()))) {
+        channel.truncate(shard.getValue().stored());
+      }
+    }
+    resumed = Map.copyOf(lengths);
+    synced.putAll(lengths);
+  }
+
+  /**
+   * Waits until every batch submitted so far is written, ends the current segment of every shard
+   * (rdf4j document, dictionary block, gzip member) and returns the length of all the shard
+   * files. The files can be truncated back to these lengths and appended to: see resume().
+   */
+  public Map<String, Length> sync() {
+    checkFailure();
+    var barrier = new CountDownLatch(owners.size());
+    try {
+      for (Owner owner : owners) {
+        owner.queue.put(new Batch(null, 0, null, null, barrier));
+      }
+      barrier.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    checkFailure();
+    return Map.copyOf(synced);
+  }
+
+  /** Drains every queue, then ends and closes all shard files. */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (Owner owner : owners) {
+        owner.queue.put(POISON);
+      }
+      for (Owner owner : owners) {
+        owner.join();
+      }
+      if (runDir != null) {
+        FileUtils.deleteDirectory(runDir.toFile());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    checkFailure();
+    if (runDir != null) {
+      writeManifest();
+    }
+  }
+
+  private void writeManifest() {
+    try (BufferedWriter manifest = Files.newBufferedWriter(Path.of(output, MANIFEST), UTF_8)) {
+      for (var file : hashes.entrySet()) {
+        manifest.write(file.getValue() + "  " + file.getKey());
+        manifest.newLine();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    logger.info("Listed the hashes of {} files in {}", hashes.size(), MANIFEST);
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new RuntimeException("::: Writer stage failed", failure);
+    }
+  }
+
+  /**
+   * Statements for rdf4j writers, or already serialized bytes, or a sync() barrier. In
+   * deterministic mode the bytes are a record() of the statements for rdf4j writers.
+   */
+  private record Batch(
+      String shard, long key, List<Statement> statements, byte[] bytes, CountDownLatch barrier) {}
+
+  /**
+   * The triples of a sink in a canonical order, whatever the order they were added in (that of the
+   * labels depends on how the loading threads went): N-Triples lines, or statements, sorted.
+   */
+  private static byte[] canonical(TripleSink triples) {
+    var out = new ByteArrayOutputStream();
+    if (triples instanceof NTriplesEncoder encoder) {
+      List<byte[]> lines = new ArrayList<>();
+      byte[] bytes = encoder.toByteArray();
+      for (int start = 0, end; start < bytes.length; start = end + 1) {
+        end = start;
+        while (bytes[end] != '\n') {
+          end++;
+        }
+        lines.add(Arrays.copyOfRange(bytes, start, end + 1));
+      }
+      lines.sort(Arrays::compareUnsigned);
+      lines.forEach(out::writeBytes);
+    } else {
+      ((StatementCollector) triples)
+          .getStatements()
+          .stream()
+          .sorted(CANONICAL)
+          .forEach(s -> out.writeBytes(record(s)));
+    }
+    return out.toByteArray();
+  }
+
+  // subject, predicate, then the object: an IRI, a typed literal or a language tagged one
+  private static byte[] record(Statement statement) {
+    var bytes = new ByteArrayOutputStream(128);
+    var out = new DataOutputStream(bytes);
+    try {
+      writeString(out, statement.getSubject().stringValue());
+      writeString(out, statement.getPredicate().stringValue());
+      if (statement.getObject() instanceof Literal literal) {
+        String lang = literal.getLanguage().orElse(null);
+        out.writeByte(lang == null ? 1 : 2);
+        writeString(out, literal.getLabel());
+        writeString(out, lang == null ? literal.getDatatype().stringValue() : lang);
+      } else {
+        out.writeByte(0);
+        writeString(out, statement.getObject().stringValue());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** The statements of consecutive record()s. */
+  private static List<Statement> statements(byte[] records) throws IOException {
+    List<Statement> statements = new ArrayList<>();
+    var in = new DataInputStream(new ByteArrayInputStream(records));
+    while (in.available() > 0) {
+      IRI subject = iri(readString(in));
+      IRI predicate = iri(readString(in));
+      int kind = in.readByte();
+      String value = readString(in);
+      Value object =
+          switch (kind) {
+            case 0 -> iri(value);
+            case 1 -> Values.literal(value, iri(readString(in)));
+            default -> Values.literal(value, readString(in));
+          };
+      statements.add(statement(subject, predicate, object, null));
+    }
+    return statements;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private String path(String file) {
+    return output + "/" + file + "." + format.getExtension() + compression.getSuffix();
+  }
+
+  private static String segment(String shard, int index) {
+    return String.format("%s-%04d", shard, index);
+  }
+
+  /** The segment of a shard to go on with: the last one resumed, else the first. */
+  private int firstSegment(String shard) {
+    int index = 0;
+    while (resumed.containsKey(segment(shard, index + 1))) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * The length of a shard file: on disk, to cut it back to, and before compression, which
+   * --max-file-size is about.
+   */
+  public record Length(long stored, long written) {}
+
+  /** The open file of a shard: the shard itself, or its current segment when rolling over. */
+  private record Segment(String file, int index, ShardFile out, long resumedBytes) {
+
+    long bytes() {
+      return resumedBytes + out.writtenBytes();
+    }
+  }
+
+  private static String shardOf(String fileName, String suffix) {
+    return fileName.substring(0, fileName.length() - suffix.length());
+  }
+
+  /** An open output file, only ever used by its owner thread. */
+  private interface ShardFile {
+
+    void write(Batch batch) throws IOException;
+
+    void close() throws IOException;
+
+    /** Ends the current segment, writes everything out and returns the length of the file. */
+    long sync() throws IOException;
+
+    /** Bytes before compression. */
+    long writtenBytes();
+
+    /** Bytes on disk. */
+    long storedBytes();
+  }
+
+  /** Statements through an rdf4j writer: Turtle, binary RDF. */
+  private static class RioShard implements ShardFile {
+
+    private final OutputFile file;
+    private final Set<Namespace> namespaces;
+    private final Function<OutputStream, RDFWriter> writers;
+    // a new document, prefixes included, after each sync()
+    private RDFWriter writer;
+
+    RioShard(
+        OutputFile file, Set<Namespace> namespaces, Function<OutputStream, RDFWriter> writers) {
+      this.file = file;
+      this.namespaces = namespaces;
+      this.writers = writers;
+    }
+
+    @Override
+    public void write(Batch batch) {
+      if (writer == null) {
+        writer = writers.apply(file.stream());
+        writer.startRDF();
+        namespaces.forEach(ns -> writer.handleNamespace(ns.getPrefix(), ns.getName()));
+      }
+      batch.statements().forEach(writer::handleStatement);
+    }
+
+    @Override
+    public void close() throws IOException {
+      end();
+      file.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+      end();
+      return file.sync();
+    }
+
+    private void end() throws IOException {
+      if (writer != null) {
+        writer.endRDF();
+        file.stream().flush();
+        writer = null;
+      }
+    }
+
+    @Override
+    public long writtenBytes() {
+      return file.getWrittenBytes();
+    }
+
+    @Override
+    public long storedBytes() {
+      return file.getStoredBytes();
+    }
+  }
+
+  /** Serialized bytes through a (compressing) stream. */
+  private static class StreamShard implements ShardFile {
+
+    private final OutputFile file;
+
+    StreamShard(OutputFile file) {
+      this.file = file;
+    }
+
+    @Override
+    public void write(Batch batch) throws IOException {
+      file.stream().write(batch.bytes());
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+      return file.sync();
+    }
+
+    @Override
+    public long writtenBytes() {
+      return file.getWrittenBytes();
+    }
+
+    @Override
+    public long storedBytes() {
+      return file.getStoredBytes();
+    }
+  }
+
+  /** Serialized bytes, dictionary encoded into blocks ended by sync() and close(). */
+  private static class DictionaryShard implements ShardFile {
+
+    private final OutputFile file;
+    private final DictionaryWriter writer;
+    private final long maxBlockInput;
+    private long blockInput;
+
+    // with a size cap, blocks end every that many N-Triples bytes, much more than they take
+    DictionaryShard(OutputFile file, long maxBlockInput) {
+      this.file = file;
+      this.writer = new DictionaryWriter(file.stream());
+      this.maxBlockInput = maxBlockInput;
+    }
+
+    @Override
+    public void write(Batch batch) throws IOException {
+      writer.addNTriples(batch.bytes());
+      blockInput = writer.pending() == 0 ? 0 : blockInput + batch.bytes().length;
+      if (maxBlockInput > 0 && blockInput >= maxBlockInput) {
+        writer.endBlock();
+        blockInput = 0;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.endBlock();
+      file.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+      writer.endBlock();
+      return file.sync();
+    }
+
+    @Override
+    public long writtenBytes() {
+      return file.getWrittenBytes();
+    }
+
+    @Override
+    public long storedBytes() {
+      return file.getStoredBytes();
+    }
+  }
+
+  /** Serialized bytes, uncompressed, through a direct buffer. */
+  private static class ChannelShard implements ShardFile {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SHARD_BUFFER);
+    private long written;
+
+    ChannelShard(String path, boolean append) throws IOException {
+      channel = append ? IoUtils.getAppendChannel(path) : IoUtils.getChannel(path);
+    }
+
+    @Override
+    public void write(Batch batch) throws IOException {
+      byte[] bytes = batch.bytes();
+      written += bytes.length;
+      if (bytes.length > buffer.remaining()) {
+        drain();
+      }
+      if (bytes.length > buffer.capacity()) {
+        ByteBuffer large = ByteBuffer.wrap(bytes);
+        while (large.hasRemaining()) {
+          channel.write(large);
+        }
+      } else {
+        buffer.put(bytes);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      drain();
+      channel.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+      drain();
+      return channel.size();
+    }
+
+    @Override
+    public long writtenBytes() {
+      return written;
+    }
+
+    @Override
+    public long storedBytes() {
+      return written;
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  private class Owner extends Thread {
+
+    private final BlockingQueue<Batch> queue;
+    private final Map<String, Segment> writers = newHashMap();
+    // the segment to open next, for the shards rolled over
+    private final Map<String, Integer> next = newHashMap();
+    // deterministic mode: the batches of every shard until all are in, and their heap
+    private final Map<String, ShardRuns> sorted = new TreeMap<>();
+    private long sortedBytes;
+
+    Owner(int index, int queueCapacity) {
+      super("shard-writer-" + index);
+      this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (Batch batch = queue.take(); batch != POISON; batch = queue.take()) {
+          if (batch.barrier() != null) {
+            sync(batch.barrier());
+          } else if (runDir != null) {
+            buffer(batch);
+          } else if (failure == null) {
+            write(batch);
+          }
+        }
+        if (failure == null) {
+          writeSorted();
+        }
+      } catch (Throwable t) {
+        fail(t);
+      } finally {
+        writers.values().forEach(this::finish);
+      }
+    }
+
+    private void write(Batch batch) {
+      try {
+        Segment writer = writers.get(batch.shard());
+        if (writer == null) {
+          writer = open(batch.shard());
+          writers.put(batch.shard(), writer);
+        }
+        writer.out().write(batch);
+        if (maxFileBytes > 0 && writer.bytes() >= maxFileBytes) {
+          rollOver(batch.shard(), writer);
+        }
+      } catch (Throwable t) {
+        // keep draining so that producers blocked on a full queue are released
+        fail(t);
+      }
+    }
+
+    private void buffer(Batch batch) {
+      if (failure != null) {
+        return;
+      }
+      try {
+        ShardRuns runs =
+            sorted.computeIfAbsent(batch.shard(), shard -> new ShardRuns(runDir, shard));
+        long before = runs.pendingBytes();
+        runs.add(batch.key(), batch.bytes());
+        sortedBytes += runs.pendingBytes() - before;
+        if (sortedBytes >= SORT_BUFFER) {
+          spill();
+        }
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    // the largest shards, down to half the budget: the small ones do not end up in many runs
+    private void spill() throws IOException {
+      List<ShardRuns> largest = new ArrayList<>(sorted.values());
+      largest.sort(Comparator.comparingLong(ShardRuns::pendingBytes).reversed());
+      for (ShardRuns runs : largest) {
+        if (sortedBytes < SORT_BUFFER / 2) {
+          break;
+        }
+        sortedBytes -= runs.pendingBytes();
+        runs.spill();
+      }
+    }
+
+    // each shard written out in key order, then closed
+    private void writeSorted() throws IOException {
+      for (var shard : sorted.entrySet()) {
+        String name = shard.getKey();
+        shard
+            .getValue()
+            .merge(
+                record -> {
+                  try {
+                    List<Statement> statements = format.isRdf4j() ? statements(record) : null;
+                    write(new Batch(name, 0, statements, statements == null ? record : null, null));
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+        Segment writer = writers.remove(name);
+        if (writer != null) {
+          finish(writer);
+        }
+      }
+      sorted.clear();
+    }
+
+    // the next batch of the shard opens its next segment
+    private void rollOver(String shard, Segment writer) throws IOException {
+      writers.remove(shard);
+      finish(writer);
+      long stored = Files.size(Path.of(path(writer.file())));
+      synced.put(writer.file(), new Length(stored, writer.bytes()));
+      next.put(shard, writer.index() + 1);
+    }
+
+    private void sync(CountDownLatch barrier) {
+      try {
+        for (Segment writer : writers.values()) {
+          // the written bytes once the segment is ended
+          long stored = writer.out().sync();
+          synced.put(writer.file(), new Length(stored, writer.bytes()));
+        }
+      } catch (Throwable t) {
+        fail(t);
+      } finally {
+        barrier.countDown();
+      }
+    }
+
+    private Segment open(String shard) throws IOException {
+      int index = maxFileBytes > 0 ? next.getOrDefault(shard, firstSegment(shard)) : 0;
+      String name = maxFileBytes > 0 ? segment(shard, index) : shard;
+      String path = path(name);
+      Length length = next.containsKey(shard) ? null : resumed.get(name);
+      boolean append = length != null;
+      return new Segment(name, index, open(path, append), append ? length.written() : 0);
+    }
+
+    private ShardFile open(String path, boolean append) throws IOException {
+      boolean lines = format == OutputFormat.NTRIPLES || format == OutputFormat.NQUADS;
+      if (lines && compression == Compression.NONE) {
+        return new ChannelShard(path, append);
+      }
+      OutputFile file = new OutputFile(Path.of(path), compression, append);
+      return switch (format) {
+        case TURTLE -> new RioShard(file, namespaces, TurtleWriter::new);
+        case BINARY -> new RioShard(file, namespaces, BinaryRDFWriter::new);
+        case DICTIONARY -> new DictionaryShard(file, maxFileBytes);
+        case NTRIPLES, NQUADS -> new StreamShard(file);
+      };
+    }
+
+    private void finish(Segment writer) {
+      try {
+        writer.out().close();
+      } catch (IOException | RuntimeException e) {
+        fail(e);
+      }
+      logger.info(
+          "Closed shard {}: {} bytes written, {} stored",
+          writer.file(),
+          writer.out().writtenBytes(),
+          writer.out().storedBytes());
+      if (metrics != null) {
+        metrics.file(writer.file(), writer.out().writtenBytes(), writer.out().storedBytes());
+      }
+      if (runDir != null) {
+        hash(Path.of(path(writer.file())));
+      }
+    }
+
+    // read back once closed, so that the hash is that of the bytes on disk, compressed or not
+    private void hash(Path file) {
+      try (InputStream in = Files.newInputStream(file)) {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[1 << 16];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+          digest.update(buffer, 0, n);
+        }
+        hashes.put(file.getFileName().toString(), HexFormat.of().formatHex(digest.digest()));
+      } catch (IOException | NoSuchAlgorithmException e) {
+        fail(e);
+      }
+    }
+
+    private void fail(Throwable t) {
+      if (failure == null) {
+        failure = t;
+      }
+      logger.error("::: Writer {} failed", getName(), t);
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package conversion;
+
+import com.google.common.primitives.ImmutableLongArray;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * The populated places (feature class P) on a grid of square cells, for their k nearest
+ * neighbours. Points are kept in primitive arrays sorted by cell, with a sorted int[] of the
+ * non-empty cells and the start of their points, so that a row of cells is one binary search
+ * and a scan. Loading threads collect (geonameid, lat, lon) on their own, as in LabelStore; once
+ * sealed the index is immutable and queried from any thread.
+ *
+ * A query scans rings of cells around the point until it has k candidates, then the cells of the
+ * box bounding the circle through the farthest of them, where the k nearest must be. With k or
+ * fewer other places, which the rings would look for all around the globe, every point is
+ * scanned at once instead. Distances are great-circle.
+ */
+public class SpatialIndex {
+
+  /** Cells of 0.1 degree, about 11 km. */
+  public static final double CELL_DEGREES = 0.1;
+
+  private static final double EARTH_KM = 6371.0088;
+
+  private final double cellDegrees;
+  private final int latCells;
+  private final int lonCells;
+  private final Queue<Arena> arenas = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Arena> arena = ThreadLocal.withInitial(this::newArena);
+
+  private int[] cells = new int[0];
+  private int[] starts = new int[] {0};
+  private int[] ids = new int[0];
+  private float[] lats = new float[0];
+  private float[] lons = new float[0];
+
+  public SpatialIndex() {
+    this(CELL_DEGREES);
+  }
+
+  public SpatialIndex(double cellDegrees) {
+    this.cellDegrees = cellDegrees;
+    this.latCells = (int) Math.ceil(180 / cellDegrees);
+    this.lonCells = (int) Math.ceil(360 / cellDegrees);
+  }
+
+  /** The features given neighbours: populated places with coordinates. */
+  public static boolean isPlace(GeonamesFeature feature) {
+    return feature.is(GeonamesHeaders.featureClass, "P")
+        && !feature.isEmpty(GeonamesHeaders.latitude)
+        && !feature.isEmpty(GeonamesHeaders.longitude);
+  }
+
+  /** Thread-safe; points added after {@link #seal()} are not visible. */
+  public void add(long id, double lat, double lon) {
+    if (id < 0 || id > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("::: geonameid out of range " + id);
+    }
+    Arena a = arena.get();
+    a.ids.add(id);
+    a.points.add((long) Float.floatToRawIntBits((float) lat) << 32 | packed((float) lon));
+  }
+
+  private static long packed(float value) {
+    return Float.floatToRawIntBits(value) & 0xFFFFFFFFL;
+  }
+
+  private static float lat(long point) {
+    return Float.intBitsToFloat((int) (point >>> 32));
+  }
+
+  private static float lon(long point) {
+    return Float.intBitsToFloat((int) point);
+  }
+
+  /** Sorts the points by cell; call once, after all points have been added. */
+  public SpatialIndex seal() {
+    var allIds = ImmutableLongArray.builder();
+    var allPoints = ImmutableLongArray.builder();
+    arenas.forEach(
+        a -> {
+          allIds.addAll(a.ids.build());
+          allPoints.addAll(a.points.build());
+        });
+    arenas.clear();
+    long[] points = allPoints.build().toArray();
+    long[] pointIds = allIds.build().toArray();
+
+    // the cell in the high half, the point in the low one
+    long[] keys = new long[points.length];
+    for (int i = 0; i < points.length; i++) {
+      keys[i] = (long) cellOf(lat(points[i]), lon(points[i])) << 32 | i;
+    }
+    Arrays.parallelSort(keys);
+
+    int distinct = 0;
+    for (int i = 0; i < keys.length; i++) {
+      distinct += i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32 ? 1 : 0;
+    }
+    cells = new int[distinct];
+    starts = new int[distinct + 1];
+    ids = new int[points.length];
+    lats = new float[points.length];
+    lons = new float[points.length];
+    int cell = -1;
+    for (int i = 0; i < keys.length; i++) {
+      if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32) {
+        cells[++cell] = (int) (keys[i] >>> 32);
+        starts[cell] = i;
+      }
+      int point = (int) keys[i];
+      ids[i] = (int) pointIds[point];
+      lats[i] = lat(points[point]);
+      lons[i] = lon(points[point]);
+    }
+    starts[distinct] = keys.length;
+    return this;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  /** The k places nearest to the point, nearest first, the given id left out. */
+  public long[] nearest(long id, double lat, double lon, int k) {
+    // rings of cells around the point until k places are found, the farthest of them bounding
+    // the distance of the k nearest
+    var found = new Neighbours(Math.min(k, ids.length));
+    if (k >= ids.length - 1) {
+      // all the others, or all but one: no need to look for them ring by ring
+      scanCells(0, latCells * lonCells, id, lat, lon, found);
+      return found.ids();
+    }
+    int latCell = latCell(lat);
+    int lonCell = lonCell(lon);
+    for (int ring = 0; !found.isFull() && ring <= latCells + lonCells / 2; ring++) {
+      for (int row = latCell - ring; row <= latCell + ring; row++) {
+        if (row < 0 || row >= latCells) {
+          continue;
+        }
+        if (row == latCell - ring || row == latCell + ring) {
+          // a new row: every cell of the ring in it, once
+          scan(row, lonCell - ring, Math.min(2 * ring + 1, lonCells), id, lat, lon, found);
+        } else if (2 * ring - 1 < lonCells) {
+          // the two ends of a row scanned already, unless they wrapped around into it
+          scan(row, lonCell - ring, 1, id, lat, lon, found);
+          if (2 * ring != lonCells) {
+            scan(row, lonCell + ring, 1, id, lat, lon, found);
+          }
+        }
+      }
+    }
+    if (!found.isFull()) {
+      return found.ids(); // fewer places than k, all of them
+    }
+
+    // then every cell of the box around the circle of that radius
+    var best = new Neighbours(found.ids.length);
+    double radius = found.worst() * (1 + 1e-9) / EARTH_KM;
+    double minLat = lat - Math.toDegrees(radius);
+    double maxLat = lat + Math.toDegrees(radius);
+    int from = 0;
+    int width = lonCells;
+    if (minLat > -90 && maxLat < 90) {
+      double dLon = Math.asin(Math.min(1, Math.sin(radius) / Math.cos(Math.toRadians(lat))));
+      from = (int) Math.floor((lon - Math.toDegrees(dLon) + 180) / cellDegrees);
+      int to = (int) Math.floor((lon + Math.toDegrees(dLon) + 180) / cellDegrees);
+      width = Math.min(to - from + 1, lonCells);
+    }
+    for (int row = latCell(minLat); row <= latCell(maxLat); row++) {
+      scan(row, from, width, id, lat, lon, best);
+    }
+    return best.ids();
+  }
+
+  // width cells of a row from the given (unwrapped) lon cell, split where they cross 180
+  private void scan(
+      int row, int from, int width, long id, double lat, double lon, Neighbours best) {
+    int start = Math.floorMod(from, lonCells);
+    int first = Math.min(width, lonCells - start);
+    scanCells(row * lonCells + start, row * lonCells + start + first, id, lat, lon, best);
+    if (first < width) {
+      scanCells(row * lonCells, row * lonCells + width - first, id, lat, lon, best);
+    }
+  }
+
+  // the points of the cells in [fromCell, toCell)
+  private void scanCells(
+      int fromCell, int toCell, long id, double lat, double lon, Neighbours best) {
+    int cell = Arrays.binarySearch(cells, fromCell);
+    cell = cell < 0 ? -cell - 1 : cell;
+    if (cell == cells.length || cells[cell] >= toCell) {
+      return;
+    }
+    int end = Arrays.binarySearch(cells, cell, cells.length, toCell);
+    end = end < 0 ? -end - 1 : end;
+    for (int i = starts[cell]; i < starts[end]; i++) {
+      if (ids[i] != id) {
+        best.offer(ids[i], distance(lat, lon, lats[i], lons[i]));
+      }
+    }
+  }
+
+  /** Great-circle distance in km, haversine. */
+  static double distance(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  private int cellOf(double lat, double lon) {
+    return latCell(lat) * lonCells + lonCell(lon);
+  }
+
+  private int latCell(double lat) {
+    return Math.clamp((long) Math.floor((lat + 90) / cellDegrees), 0, latCells - 1);
+  }
+
+  private int lonCell(double lon) {
+    return Math.floorMod((long) Math.floor((lon + 180) / cellDegrees), lonCells);
+  }
+
+  private Arena newArena() {
+    Arena a = new Arena();
+    arenas.add(a);
+    return a;
+  }
+
+  private static class Arena {
+    private final ImmutableLongArray.Builder ids = ImmutableLongArray.builder();
+    private final ImmutableLongArray.Builder points = ImmutableLongArray.builder();
+  }
+
+  /** The k best so far, sorted by distance then id, in two small arrays. */
+  private static class Neighbours {
+    private final long[] ids;
+    private final double[] distances;
+    private int size;
+
+    Neighbours(int k) {
+      ids = new long[k];
+      distances = new double[k];
+    }
+
+    boolean isFull() {
+      return size == ids.length;
+    }
+
+    double worst() {
+      return size == 0 ? 0 : distances[size - 1];
+    }
+
+    void offer(long id, double distance) {
+      if (isFull() && !closer(distance, id, size - 1)) {
+        return;
+      }
+      int i = isFull() ? size - 1 : size++;
+      for (; i > 0 && closer(distance, id, i - 1); i--) {
+        ids[i] = ids[i - 1];
+        distances[i] = distances[i - 1];
+      }
+      ids[i] = id;
+      distances[i] = distance;
+    }
+
+    private boolean closer(double distance, long id, int than) {
+      return distance < distances[than] || distance == distances[than] && id < ids[than];
+    }
+
+    long[] ids() {
+      return Arrays.copyOf(ids, size);
+    }
+  }
+}
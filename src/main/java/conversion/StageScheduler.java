@@ -0,0 +1,199 @@
+package conversion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Runs the stages of a conversion as a dependency graph: a stage starts as soon as the stages it
+ * needs are done, so that the index builds reading independent files overlap and the features
+ * start once the last of them is ready. Each stage is driven from a virtual thread of its own,
+ * which mostly waits: the parsing itself runs on the common ForkJoin pool, the bounded platform
+ * pool TsvReader splits its chunks over.
+ *
+ * The first stage to fail cancels the run, in the manner of a structured task scope (a preview
+ * API in Java 21): the stages not started yet never start, and the running ones stop at the next
+ * check of their parsing loops, whose ForkJoin workers would not see an interrupt: TsvReader and
+ * FeatureSpill capture the cancellation() of the stage they read for and throw a
+ * CancellationException once it is set. run() returns once all the stages have stopped, throwing
+ * that first failure.
+ *
+ * Once done, the critical path is logged and recorded in the metrics: the chain of dependencies,
+ * back from the stage that ended last, through the one that ended last among the dependencies of
+ * each. Its length bounds the time of the run, whatever the number of cores.
+ */
+public class StageScheduler {
+
+  private static final Logger logger = LoggerFactory.getLogger(StageScheduler.class);
+  private static final BooleanSupplier NEVER = () -> false;
+  // the flag of the run whose stage the calling thread drives
+  private static final ThreadLocal<AtomicBoolean> running = new ThreadLocal<>();
+
+  /** The work of a stage. */
+  public interface Step {
+    void run() throws Exception;
+  }
+
+  private final PipelineMetrics metrics;
+  private final boolean concurrent;
+  private final Map<String, Node> stages = new LinkedHashMap<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+
+  /** Stages run in the order they were added when not concurrent. */
+  public StageScheduler(PipelineMetrics metrics, boolean concurrent) {
+    this.metrics = metrics;
+    this.concurrent = concurrent;
+  }
+
+  /**
+   * Adds a stage reading the given input file (or null), to run after the given stages, which
+   * must have been added before.
+   */
+  public StageScheduler add(String name, String input, Step step, String... after) {
+    List<Node> dependencies = new ArrayList<>();
+    for (String dependency : after) {
+      Node node = stages.get(dependency);
+      if (node == null) {
+        throw new IllegalArgumentException("::: Stage " + name + " after unknown " + dependency);
+      }
+      dependencies.add(node);
+    }
+    if (stages.putIfAbsent(name, new Node(name, input, step, dependencies)) != null) {
+      throw new IllegalArgumentException("::: Stage " + name + " added twice");
+    }
+    return this;
+  }
+
+  /**
+   * Whether another stage of the run failed, for the stage the calling thread runs, to be captured
+   * before handing work to other threads. Never true outside of a stage.
+   */
+  public static BooleanSupplier cancellation() {
+    AtomicBoolean flag = running.get();
+    return flag == null ? NEVER : flag::get;
+  }
+
+  public void run() throws Exception {
+    long start = System.nanoTime();
+    if (concurrent) {
+      runConcurrently();
+    } else {
+      for (Node node : stages.values()) {
+        node.run();
+      }
+    }
+    Throwable first = failure.get();
+    if (first instanceof Exception e) {
+      throw e;
+    } else if (first instanceof Error e) {
+      throw e;
+    }
+    logCriticalPath(System.nanoTime() - start);
+  }
+
+  private void runConcurrently() {
+    try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<CompletableFuture<Void>> all = new ArrayList<>();
+      // insertion order is a topological order: dependencies come first
+      for (Node node : stages.values()) {
+        CompletableFuture<?>[] ready =
+            node.after.stream().map(before -> before.done).toArray(CompletableFuture[]::new);
+        node.done =
+            CompletableFuture.allOf(ready)
+                .thenRunAsync(
+                    () -> {
+                      try {
+                        node.run();
+                      } catch (Exception e) {
+                        throw new CompletionException(e);
+                      }
+                    },
+                    threads);
+        node.done.whenComplete(
+            (done, t) -> {
+              if (t != null) {
+                // the dependents fail in turn without running
+                threads.shutdownNow();
+              }
+            });
+        all.add(node.done);
+      }
+      try {
+        CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).join();
+      } catch (CompletionException e) {
+        failure.compareAndSet(null, e.getCause());
+      }
+      // closing the executor waits for the stages still running
+    }
+  }
+
+  private void logCriticalPath(long nanos) {
+    Node last = null;
+    for (Node node : stages.values()) {
+      last = last == null || node.end > last.end ? node : last;
+    }
+    List<String> path = new ArrayList<>();
+    for (Node node = last; node != null; ) {
+      path.addFirst(node.name);
+      Node previous = null;
+      for (Node dependency : node.after) {
+        previous = previous == null || dependency.end > previous.end ? dependency : previous;
+      }
+      node = previous;
+    }
+    long millis = 0;
+    for (String name : path) {
+      millis += stages.get(name).nanos() / 1_000_000;
+    }
+    logger.info(
+        "Critical path {} ms of {} ms: {}", millis, nanos / 1_000_000, String.join(" > ", path));
+    metrics.criticalPath(path, millis);
+  }
+
+  private class Node {
+    private final String name;
+    private final String input;
+    private final Step step;
+    private final List<Node> after;
+    private CompletableFuture<Void> done;
+    private volatile long begin;
+    private volatile long end;
+
+    Node(String name, String input, Step step, List<Node> after) {
+      this.name = name;
+      this.input = input;
+      this.step = step;
+      this.after = after;
+    }
+
+    void run() throws Exception {
+      begin = System.nanoTime();
+      running.set(cancelled);
+      try (var stage = metrics.stage(name, input)) {
+        step.run();
+      } catch (Exception | Error e) {
+        failure.compareAndSet(null, e);
+        cancelled.set(true);
+        throw e;
+      } finally {
+        running.remove();
+        end = System.nanoTime();
+      }
+    }
+
+    long nanos() {
+      return end - begin;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package conversion;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.eclipse.rdf4j.model.util.Statements.statement;
+
+import java.util.List;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.util.Values;
+
+/* Collects the triples as rdf4j Statements, for the formats written through rdf4j. */
+public class StatementCollector implements TripleSink {
+
+  private final List<Statement> statements = newArrayList();
+
+  @Override
+  public void iri(IRI subject, IRI predicate, IRI object) {
+    statements.add(statement(subject, predicate, object, null));
+  }
+
+  @Override
+  public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+    Literal object = datatype == null ? Values.literal(label) : Values.literal(label, datatype);
+    statements.add(statement(subject, predicate, object, null));
+  }
+
+  @Override
+  public void sharedLiteral(IRI subject, IRI predicate, String label, IRI datatype) {
+    Literal object = Interner.COLUMNS.literal(label, datatype);
+    statements.add(statement(subject, predicate, object, null));
+  }
+
+  @Override
+  public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+    statements.add(statement(subject, predicate, Values.literal(label, lang), null));
+  }
+
+  public List<Statement> getStatements() {
+    return statements;
+  }
+}
@@ -0,0 +1,25 @@
+package conversion;
+
+import org.eclipse.rdf4j.model.IRI;
+
+/*
+ * Receives the triples of a feature as they are built. Implementations either collect rdf4j
+ * Statements for an rdf4j writer, or serialize straight to bytes without any Statement.
+ */
+public interface TripleSink {
+
+  void iri(IRI subject, IRI predicate, IRI object);
+
+  /** A typed literal; a null datatype stands for a plain (xsd:string) literal. */
+  void literal(IRI subject, IRI predicate, String label, IRI datatype);
+
+  void langLiteral(IRI subject, IRI predicate, String label, String lang);
+
+  /**
+   * A literal of a column with few distinct values (country code, timezone, date): sinks that
+   * build objects may share one per value.
+   */
+  default void sharedLiteral(IRI subject, IRI predicate, String label, IRI datatype) {
+    literal(subject, predicate, label, datatype);
+  }
+}
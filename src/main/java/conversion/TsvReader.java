@@ -0,0 +1,116 @@
+package conversion;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/*
+ * Reads the tab separated GeoNames dumps through memory mappings. The file is cut into
+ * newline-aligned chunks that are parsed independently, in parallel on the common ForkJoin pool.
+ * Lines are handed out as a reusable TsvRecord: fields are offset/length views over the mapping
+ * and only become Strings when asked for. Parallel reads stop when the stage they are for is
+ * cancelled, see StageScheduler.
+ */
+public class TsvReader {
+
+  public static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+  // lines between two checks of the cancellation
+  static final int CHECK_EVERY = 4096;
+
+  /** A newline-aligned byte range of the file. */
+  public record Chunk(Path file, long start, long end) {
+
+    public void forEach(Consumer<TsvRecord> consumer) {
+      forEach(consumer, StageScheduler.cancellation());
+    }
+
+    /** forEach(), throwing a CancellationException once cancelled says so. */
+    public void forEach(Consumer<TsvRecord> consumer, BooleanSupplier cancelled) {
+      checkCancelled(cancelled);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(READ_ONLY, start, end - start);
+        TsvRecord record = new TsvRecord();
+        int lineStart = 0;
+        int limit = buffer.limit();
+        int lines = 0;
+        for (int i = 0; i < limit; i++) {
+          if (buffer.get(i) == '\n') {
+            consumer.accept(record.reset(buffer, start, lineStart, i));
+            lineStart = i + 1;
+            if (++lines % CHECK_EVERY == 0) {
+              checkCancelled(cancelled);
+            }
+          }
+        }
+        if (lineStart < limit) {
+          // last line without a trailing newline
+          consumer.accept(record.reset(buffer, start, lineStart, limit));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  public static List<Chunk> chunks(Path file, int chunkSize) {
+    List<Chunk> chunks = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer probe = ByteBuffer.allocate(4096);
+      for (long start = 0, end; start < size; start = end) {
+        end = start + chunkSize >= size ? size : lineEnd(channel, start + chunkSize - 1, probe);
+        chunks.add(new Chunk(file, start, end));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return chunks;
+  }
+
+  /** Runs the consumer on every line, chunks in parallel; records must not escape the call. */
+  public static void forEach(Path file, Consumer<TsvRecord> consumer) {
+    // captured on the calling thread, the one running the stage
+    BooleanSupplier cancelled = StageScheduler.cancellation();
+    chunks(file, DEFAULT_CHUNK_SIZE).parallelStream()
+        .forEach(chunk -> chunk.forEach(consumer, cancelled));
+  }
+
+  static void checkCancelled(BooleanSupplier cancelled) {
+    if (cancelled.getAsBoolean()) {
+      throw new CancellationException("::: Stopped reading, another stage failed");
+    }
+  }
+
+  /** Runs the consumer on every line, in file order. */
+  public static void forEachSequential(Path file, Consumer<TsvRecord> consumer) {
+    chunks(file, DEFAULT_CHUNK_SIZE).forEach(chunk -> chunk.forEach(consumer));
+  }
+
+  // the offset right after the first newline at or after position
+  private static long lineEnd(FileChannel channel, long position, ByteBuffer probe)
+      throws IOException {
+    long size = channel.size();
+    while (position < size) {
+      probe.clear();
+      int read = channel.read(probe, position);
+      for (int i = 0; i < read; i++) {
+        if (probe.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+}
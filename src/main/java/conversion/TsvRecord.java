@@ -0,0 +1,210 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * One line of a tab separated file, as offset/length views over a buffer. Instances are reused
+ * from line to line by TsvReader: copy out whatever must outlive the callback.
+ */
+public class TsvRecord {
+
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  private ByteBuffer buffer;
+  private long fileOffset;
+  private int[] starts = new int[24];
+  private int[] ends = new int[24];
+  private int fields;
+  private byte[] scratch = new byte[256];
+
+  /** Views the line [start, end) of the buffer, trailing carriage return excluded. */
+  TsvRecord reset(ByteBuffer buffer, long bufferOffset, int start, int end) {
+    this.buffer = buffer;
+    this.fileOffset = bufferOffset + start;
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    fields = 0;
+    int fieldStart = start;
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == '\t') {
+        addField(fieldStart, i);
+        fieldStart = i + 1;
+      }
+    }
+    addField(fieldStart, end);
+    return this;
+  }
+
+  /** Views a whole line given as a String. */
+  public static TsvRecord of(String line) {
+    byte[] bytes = line.getBytes(UTF_8);
+    return new TsvRecord().reset(ByteBuffer.wrap(bytes), 0, 0, bytes.length);
+  }
+
+  /** Starts a record whose fields are then given one by one with addField(). */
+  TsvRecord clear(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.fileOffset = -1;
+    fields = 0;
+    return this;
+  }
+
+  void addField(int start, int end) {
+    if (fields == starts.length) {
+      starts = Arrays.copyOf(starts, fields * 2);
+      ends = Arrays.copyOf(ends, fields * 2);
+    }
+    starts[fields] = start;
+    ends[fields++] = end;
+  }
+
+  public int fieldCount() {
+    return fields;
+  }
+
+  /** Offset of the line in the file. */
+  public long fileOffset() {
+    return fileOffset;
+  }
+
+  public int length(int field) {
+    return field < fields ? ends[field] - starts[field] : 0;
+  }
+
+  public boolean isEmpty(int field) {
+    return length(field) == 0;
+  }
+
+  public String getString(int field) {
+    int length = length(field);
+    if (length == 0) {
+      return "";
+    }
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    buffer.get(starts[field], scratch, 0, length);
+    return new String(scratch, 0, length, UTF_8);
+  }
+
+  /** The canonical instance of the field's value, for columns with few distinct values. */
+  public String getString(int field, Interner interner) {
+    int length = length(field);
+    return length == 0 ? "" : interner.intern(buffer, starts[field], length);
+  }
+
+  /** Parses a (possibly signed) integer field without building a String. */
+  public long getLong(int field) {
+    int length = length(field);
+    if (length == 0) {
+      throw new NumberFormatException("::: Empty field " + field + " in " + line());
+    }
+    int i = starts[field];
+    int end = ends[field];
+    boolean negative = buffer.get(i) == '-';
+    if (negative) {
+      i++;
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("::: Not a number in field " + field + " of " + line());
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /** Parses a plain decimal field ([-]digits[.digits]) without building a String. */
+  public double getDouble(int field) {
+    int length = length(field);
+    if (length == 0 || length > 15) {
+      // longer mantissas may not be exact in a double
+      return Double.parseDouble(getString(field));
+    }
+    int i = starts[field];
+    int end = ends[field];
+    boolean negative = buffer.get(i) == '-';
+    if (negative) {
+      i++;
+    }
+    long mantissa = 0;
+    int scale = -1;
+    for (; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b == '.' && scale < 0) {
+        scale = 0;
+      } else if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        scale += scale >= 0 ? 1 : 0;
+      } else {
+        // exponents and the like
+        return Double.parseDouble(getString(field));
+      }
+    }
+    // exact operands, so the division is correctly rounded like parseDouble
+    double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+    return negative ? -value : value;
+  }
+
+  public boolean startsWith(int field, String ascii) {
+    if (length(field) < ascii.length()) {
+      return false;
+    }
+    for (int i = 0; i < ascii.length(); i++) {
+      if (buffer.get(starts[field] + i) != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Compares the field with an ASCII string, without building a String. */
+  public boolean equals(int field, String ascii) {
+    int length = length(field);
+    if (length != ascii.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(starts[field] + i) != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Writes the field as an unsigned short length followed by its bytes. */
+  public void writeTo(int field, DataOutput out) throws IOException {
+    int length = length(field);
+    if (length > 0xFFFF) {
+      throw new IOException("::: Field " + field + " too long in " + line());
+    }
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    buffer.get(starts[field], scratch, 0, length);
+    out.writeShort(length);
+    out.write(scratch, 0, length);
+  }
+
+  public String[] toArray() {
+    String[] values = new String[fields];
+    for (int i = 0; i < fields; i++) {
+      values[i] = getString(i);
+    }
+    return values;
+  }
+
+  public String line() {
+    return String.join("\t", toArray());
+  }
+}
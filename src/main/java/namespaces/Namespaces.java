@@ -17,6 +17,7 @@ public class Namespaces {
   public static final String NS_DCTERMS = "http://purl.org/dc/terms/";
   public static final String NS_FOAF = "http://xmlns.com/foaf/0.1/";
   public static final String NS_EUROPEANA_SCHEMA = "http://www.europeana.eu/resolve/ontology/";
+  public static final String NS_GEOSPARQL = "http://www.opengis.net/ont/geosparql#";
 
   public static Set<Namespace> getNamespaces() {
     return new ImmutableSet.Builder<Namespace>()
@@ -0,0 +1,101 @@
+package namespaces;
+
+import static namespaces.Namespaces.GN_ONTO;
+import static namespaces.Namespaces.NS_CUSTOM;
+import static namespaces.Namespaces.NS_DCTERMS;
+import static namespaces.Namespaces.NS_FOAF;
+import static namespaces.Namespaces.NS_GEOSPARQL;
+import static namespaces.Namespaces.NS_WGS_SCHEMA;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.rdf4j.model.IRI;
+
+/*
+ * The IRIs the converter emits as predicates and classes, built once. Feature classes are a fixed
+ * table; feature codes are preloaded from featureCodes_en.txt when the dump has it and memoized
+ * otherwise, so each distinct code is turned into an IRI a single time.
+ */
+public class Vocabulary {
+
+  public static final IRI FEATURE = iri(GN_ONTO + "Feature");
+
+  public static final IRI NAME = iri(GN_ONTO + "name");
+  public static final IRI POPULATION = iri(GN_ONTO + "population");
+  public static final IRI FEATURE_CLASS = iri(GN_ONTO + "featureClass");
+  public static final IRI FEATURE_CODE = iri(GN_ONTO + "featureCode");
+  public static final IRI COUNTRY_CODE = iri(GN_ONTO + "countryCode");
+  public static final IRI WIKIPEDIA_ARTICLE = iri(GN_ONTO + "wikipediaArticle");
+  public static final IRI LOCATED_IN = iri(GN_ONTO + "locatedIn");
+  public static final IRI PARENT_FEATURE = iri(GN_ONTO + "parentFeature");
+  public static final IRI NEARBY = iri(GN_ONTO + "nearby");
+  public static final IRI POSTAL_CODE = iri(GN_ONTO + "postalCode");
+
+  public static final IRI ALTERNATE_NAME = iri(GN_ONTO + "alternateName");
+  public static final IRI OFFICIAL_NAME = iri(GN_ONTO + "officialName");
+  public static final IRI SHORT_NAME = iri(GN_ONTO + "shortName");
+  public static final IRI COLLOQUIAL_NAME = iri(GN_ONTO + "colloquialName");
+  public static final IRI HISTORICAL_NAME = iri(GN_ONTO + "historicalName");
+
+  public static final IRI LAT = iri(NS_WGS_SCHEMA + "lat");
+  public static final IRI LONG = iri(NS_WGS_SCHEMA + "long");
+  public static final IRI ALT = iri(NS_WGS_SCHEMA + "alt");
+
+  public static final IRI AS_WKT = iri(NS_GEOSPARQL + "asWKT");
+  public static final IRI WKT_LITERAL = iri(NS_GEOSPARQL + "wktLiteral");
+
+  public static final IRI GTOPO30 = iri(NS_CUSTOM + "gtopo30");
+  public static final IRI TIMEZONE = iri(NS_CUSTOM + "timezone");
+  public static final IRI ADMIN2 = iri(NS_CUSTOM + "admin2");
+  /** Any ADM feature above, transitively through parentFeature. */
+  public static final IRI ANCESTOR = iri(NS_CUSTOM + "ancestor");
+
+  public static final IRI MODIFIED = iri(NS_DCTERMS + "modified");
+  public static final IRI PAGE = iri(NS_FOAF + "page");
+
+  private static final Map<String, IRI> FEATURE_CLASSES = featureClasses("AHLPRSTUV");
+  private static final Map<String, IRI> FEATURE_CODES = new ConcurrentHashMap<>();
+
+  /** The IRI of a feature class (A, H, L...). */
+  public static IRI featureClass(String featureClass) {
+    IRI iri = FEATURE_CLASSES.get(featureClass);
+    return iri != null ? iri : iri(GN_ONTO + featureClass);
+  }
+
+  /** The IRI of a feature code given as class.code (A.ADM1, P.PPL...). */
+  public static IRI featureCode(String featureCode) {
+    IRI iri = FEATURE_CODES.get(featureCode);
+    if (iri == null) {
+      iri = FEATURE_CODES.computeIfAbsent(featureCode, code -> iri(GN_ONTO + code));
+    }
+    return iri;
+  }
+
+  /** Preloads the feature codes of a featureCodes_en.txt file; returns how many were read. */
+  public static int loadFeatureCodes(Path file) throws IOException {
+    int count = 0;
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      int tab = line.indexOf('\t');
+      // skips the "null" code of features without one
+      if (tab > 0 && line.lastIndexOf('.', tab) > 0) {
+        featureCode(line.substring(0, tab));
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static Map<String, IRI> featureClasses(String classes) {
+    ImmutableMap.Builder<String, IRI> builder = ImmutableMap.builder();
+    for (char featureClass : classes.toCharArray()) {
+      builder.put(String.valueOf(featureClass), iri(GN_ONTO + featureClass));
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,86 @@
+package conversion;
+
+import static conversion.ConversionFolder.lines;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class AdminCodeIndexTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void savedIndexIsStampedWithItsSource() throws Exception {
+    Path source = folder.newFile("allCountries.txt").toPath();
+    Files.writeString(source, "2993457\tMonaco\n", UTF_8);
+    Path file = folder.getRoot().toPath().resolve("admin-index");
+    var index = new AdminCodeIndex();
+    index.put(2993457, "MC", "", "", "", "");
+    index.save(file, source);
+
+    assertEquals(2993457, AdminCodeIndex.load(file, source).lookup("MC", "", "", "", ""));
+    FileTime modified = Files.getLastModifiedTime(source);
+    Files.writeString(source, "2993457\tMonacO\n", UTF_8);
+    Files.setLastModifiedTime(source, modified);
+    assertNull(AdminCodeIndex.load(file, source));
+  }
+
+  @Test
+  public void cacheIsBuiltReusedAndRebuiltWhenCorrupt() throws Exception {
+    File cache = new File(folder.getRoot(), "admin-index");
+    File built = convert("built", cache);
+    assertTrue(cache.exists());
+    long size = cache.length();
+
+    // loaded, not saved again
+    FileTime old = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(cache.toPath(), old);
+    File reused = convert("reused", cache);
+    assertEquals(old, Files.getLastModifiedTime(cache.toPath()));
+    assertEquals(lines(built, "nt"), lines(reused, "nt"));
+
+    try (var channel = FileChannel.open(cache.toPath(), StandardOpenOption.WRITE)) {
+      channel.truncate(size / 2);
+    }
+    File rebuilt = convert("rebuilt", cache);
+    assertEquals(size, cache.length());
+    assertEquals(lines(built, "nt"), lines(rebuilt, "nt"));
+  }
+
+  @Test
+  public void removedDivisionsAreNotFoundTheOthersAre() {
+    var index = new AdminCodeIndex();
+    for (int id = 0; id < 5000; id++) {
+      index.put(id, "AD", String.valueOf(id), "", "", "");
+    }
+    Set<Long> removed = new HashSet<>();
+    for (long id = 0; id < 5000; id += 3) {
+      removed.add(id);
+    }
+    index.removeAll(removed);
+    assertEquals(5000 - removed.size(), index.size());
+    for (int id = 0; id < 5000; id++) {
+      long expected = removed.contains((long) id) ? -1 : id;
+      assertEquals(expected, index.lookup("AD", String.valueOf(id), "", "", ""));
+    }
+  }
+
+  private File convert(String name, File cache) throws Exception {
+    return folder.convert(
+        name,
+        new ConversionOptions().setFormat(OutputFormat.NTRIPLES).setAdminIndex(cache.getPath()));
+  }
+}
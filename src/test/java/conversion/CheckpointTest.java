@@ -0,0 +1,118 @@
+package conversion;
+
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.Compression;
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CheckpointTest {
+
+  private static final IRI NAME = iri("http://www.geonames.org/ontology#name");
+  private static final String[] SHARDS = {"AD", "FR"};
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void resumedNTriplesAreTheSameBytes() throws Exception {
+    assertResumedAsWritten(OutputFormat.NTRIPLES, Compression.NONE, 0);
+    assertResumedAsWritten(OutputFormat.NTRIPLES, Compression.GZIP, 0);
+  }
+
+  @Test
+  public void resumedTurtleIsTheSameBytes() throws Exception {
+    assertResumedAsWritten(OutputFormat.TURTLE, Compression.NONE, 0);
+    assertResumedAsWritten(OutputFormat.TURTLE, Compression.GZIP, 0);
+  }
+
+  @Test
+  public void resumedSegmentsRollOverAtTheSameBytes() throws Exception {
+    // gzip stores fewer bytes than written: the roll-over counts the latter
+    assertResumedAsWritten(OutputFormat.NTRIPLES, Compression.GZIP, 2000);
+    assertResumedAsWritten(OutputFormat.TURTLE, Compression.NONE, 2000);
+    assertResumedAsWritten(OutputFormat.TURTLE, Compression.GZIP, 2000);
+  }
+
+  @Test
+  public void progressIsSavedAndResumed() throws Exception {
+    var options = new ConversionOptions().setInput(ConversionFolder.INPUT);
+    options.setOutput(folder.getRoot().getPath());
+    Map<String, ShardedWriter.Length> lengths =
+        Map.of(
+            "AD-0000", new ShardedWriter.Length(120, 480),
+            "AD-0001", new ShardedWriter.Length(7, 9));
+    Checkpoint.start(options).saveProgress(4096, lengths);
+
+    Checkpoint resumed = Checkpoint.resume(options);
+    assertEquals(4096, resumed.getOffset());
+    assertEquals(lengths, resumed.getShardLengths());
+  }
+
+  /**
+   * Writes the same batches twice: at once, and stopped after a sync() with more batches written
+   * that the checkpoint does not know of, then resumed in a new writer.
+   */
+  private void assertResumedAsWritten(OutputFormat format, Compression compression, long max)
+      throws Exception {
+    String name = format + "-" + compression + "-" + max;
+    File straight = folder.newFolder(name);
+    try (var writer = writer(straight, format, compression, max)) {
+      write(writer, 0, 50);
+      writer.sync();
+      write(writer, 50, 100);
+    }
+
+    File resumed = folder.newFolder(name + "-resumed");
+    Map<String, ShardedWriter.Length> lengths;
+    try (var writer = writer(resumed, format, compression, max)) {
+      write(writer, 0, 50);
+      lengths = writer.sync();
+      // lost with the run
+      write(writer, 50, 80);
+    }
+    try (var writer = writer(resumed, format, compression, max)) {
+      writer.resume(lengths);
+      write(writer, 50, 100);
+    }
+
+    String[] files = straight.list();
+    Arrays.sort(files);
+    assertTrue(name, files.length >= (max > 0 ? 4 : 2));
+    String[] resumedFiles = resumed.list();
+    Arrays.sort(resumedFiles);
+    assertArrayEquals(name, files, resumedFiles);
+    for (String file : files) {
+      assertArrayEquals(
+          name + " " + file,
+          Files.readAllBytes(new File(straight, file).toPath()),
+          Files.readAllBytes(new File(resumed, file).toPath()));
+    }
+  }
+
+  private static ShardedWriter writer(
+      File dir, OutputFormat format, Compression compression, long max) {
+    return new ShardedWriter(dir.getPath(), Set.of(), format, null, compression, 2, 16)
+        .setMaxFileBytes(max);
+  }
+
+  // one batch per feature, in every shard
+  private static void write(ShardedWriter writer, int from, int to) {
+    for (int id = from; id < to; id++) {
+      TripleSink sink = writer.newSink();
+      IRI feature = iri("https://sws.geonames.org/" + id + "/");
+      sink.literal(feature, NAME, "Place number " + id, XSD.STRING);
+      writer.submit(id, sink, SHARDS);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.rules.TemporaryFolder;
+
+/* A temporary folder the test fixture is converted into, and what the tests read back of it. */
+public class ConversionFolder extends TemporaryFolder {
+
+  public static final String INPUT = "src/test/resources/input_source";
+
+  /** Converts the fixture into the given subfolder, with the given options otherwise. */
+  public File convert(String name, ConversionOptions options) throws Exception {
+    File output = new File(getRoot(), name);
+    new GeonamesProducer(options.setInput(INPUT).setOutput(output.getPath())).run();
+    return output;
+  }
+
+  /** The names of the files of a directory with the given extension, without it. */
+  public static Set<String> shards(File dir, String extension) {
+    return Arrays.stream(dir.list())
+        .filter(f -> f.endsWith("." + extension))
+        .map(f -> f.substring(0, f.length() - extension.length() - 1))
+        .collect(Collectors.toSet());
+  }
+
+  /** The lines of all the files of a directory with the given extension. */
+  public static Set<String> lines(File dir, String extension) throws Exception {
+    Set<String> lines = new HashSet<>();
+    for (File file : dir.listFiles((d, name) -> name.endsWith("." + extension))) {
+      lines.addAll(Files.readAllLines(file.toPath(), UTF_8));
+    }
+    return lines;
+  }
+
+  public static Model parse(File file, RDFFormat format) throws Exception {
+    try (InputStream in = new FileInputStream(file)) {
+      return Rio.parse(in, "", format);
+    }
+  }
+}
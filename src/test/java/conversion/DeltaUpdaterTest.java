@@ -0,0 +1,215 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DeltaUpdaterTest {
+
+  private static final String DAY = "2024-01-02";
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  private Path state;
+  private Path delta;
+
+  @Before
+  public void saveState() throws Exception {
+    state = folder.getRoot().toPath().resolve("state");
+    delta = folder.newFolder("delta").toPath();
+    folder.convert(
+        "full",
+        new ConversionOptions()
+            .setFormat(OutputFormat.NTRIPLES)
+            .setSaveState(true)
+            .setState(state.toString()));
+    // Port Dret renamed, Font de la Xona deleted, a name added to Pic de Font Blanca and one of
+    // Roc Mélé deleted
+    write(
+        "modifications",
+        "3034945\tPort Dret Nou\tPort Dret Nou\t\t42.60172\t1.45562\tT\tPASS\tAD\t\t00\t\t\t\t0"
+            + "\t\t2257\tEurope/Andorra\t" + DAY);
+    write("deletes", "3038815\tFont de la Xona\tduplicate");
+    write("alternateNamesModifications", "9999999\t2986043\tfr\tPic du Port Neuf\t1\t\t\t");
+    write("alternateNamesDeletes", "1284820\t2994701\tRoc Meler");
+  }
+
+  @Test
+  public void patchHoldsTheChangedTriplesOnly() throws Exception {
+    List<String> patch = update(new ConversionOptions());
+    assertEquals("TX .", patch.getFirst());
+    assertEquals("TC .", patch.getLast());
+    assertTrue(has(patch, "D ", "\"Port Dret\""));
+    assertTrue(has(patch, "A ", "\"Port Dret Nou\""));
+    assertTrue(has(patch, "D ", "/3038815/"));
+    assertFalse(has(patch, "A ", "/3038815/"));
+    assertTrue(has(patch, "A ", "Pic du Port Neuf"));
+    assertTrue(has(patch, "D ", "Roc Meler"));
+    // the other features are untouched
+    assertFalse(has(patch, "D ", "/3017832/") || has(patch, "A ", "/3017832/"));
+
+    var reopened = FeatureState.open(state);
+    assertEquals(DAY, reopened.getLastDelta());
+    assertNull(reopened.load(FeatureState.bucketOf(3038815)).features.get(3038815L));
+    assertTrue(
+        reopened.load(FeatureState.bucketOf(3034945)).features.get(3034945L).contains("Nou"));
+    reopened.loadAdmins();
+    try (Stream<Path> files = Files.list(state)) {
+      assertFalse(files.anyMatch(file -> file.toString().endsWith(FeatureState.NEXT)));
+    }
+  }
+
+  @Test
+  public void appliedDaysAreSkipped() throws Exception {
+    update(new ConversionOptions());
+    Path bucket = bucket(FeatureState.bucketOf(3034945));
+    String features = Files.readString(bucket, UTF_8);
+    Files.delete(patch());
+
+    new DeltaUpdater(options(new ConversionOptions())).run();
+    assertFalse(Files.exists(patch()));
+    assertEquals(features, Files.readString(bucket, UTF_8));
+  }
+
+  @Test
+  public void patchKeepsThePredicatesAsked() throws Exception {
+    List<String> patch = update(new ConversionOptions().setPredicates("name"));
+    assertTrue(patch.size() > 2);
+    for (String row : patch.subList(1, patch.size() - 1)) {
+      assertTrue(row, row.contains("ontology#name>"));
+    }
+  }
+
+  @Test
+  public void uncommittedBucketsAreDroppedAndJournaledOnesCompleted() throws Exception {
+    int index = FeatureState.bucketOf(3034945);
+    var staging = FeatureState.open(state);
+    FeatureState.Bucket bucket = staging.load(index);
+    bucket.features.remove(3034945L);
+    staging.stage(bucket);
+
+    // stopped before the journal
+    assertTrue(FeatureState.open(state).load(index).features.containsKey(3034945L));
+
+    staging.stage(bucket);
+    Files.writeString(state.resolve("commit.journal"), bucket(index) + "\n", UTF_8);
+    assertFalse(FeatureState.open(state).load(index).features.containsKey(3034945L));
+    assertFalse(Files.exists(state.resolve("commit.journal")));
+  }
+
+  @Test
+  public void journalListsAbsolutePathsAndIsKeptUntilComplete() throws Exception {
+    var staging = FeatureState.open(state);
+    staging.stage(staging.load(FeatureState.bucketOf(3034945)));
+    // relative, and never written
+    Path missing = Path.of("patch-" + DAY + ".rdfp");
+    try {
+      staging.commit(DAY, staging.loadAdmins(), missing);
+      fail();
+    } catch (IOException e) {
+      // the journal lists it
+    }
+    Path journal = state.resolve("commit.journal");
+    List<String> targets = Files.readAllLines(journal, UTF_8);
+    assertTrue(targets.contains(missing.toAbsolutePath().toString()));
+    for (String target : targets) {
+      assertTrue(target, Path.of(target).isAbsolute());
+    }
+
+    try {
+      FeatureState.open(state);
+      fail();
+    } catch (IOException e) {
+      // nothing moved, the journal kept
+      assertTrue(Files.exists(journal));
+      assertTrue(Files.exists(FeatureState.next(bucket(FeatureState.bucketOf(3034945)))));
+      assertTrue(Files.exists(FeatureState.next(state.resolve("state.properties"))));
+    }
+  }
+
+  @Test
+  public void uncommittedPatchesAreDropped() throws Exception {
+    Path patches = Files.createDirectories(patch().getParent());
+    Path uncommitted = patches.resolve("patch-2023-12-31.rdfp" + FeatureState.NEXT);
+    Files.writeString(uncommitted, "TX .\n", UTF_8);
+    update(new ConversionOptions());
+    assertFalse(Files.exists(uncommitted));
+    assertTrue(Files.exists(patch()));
+  }
+
+  @Test
+  public void adminIndexTakesTheAppliedDivisionsOnly() throws Exception {
+    // a day before: two parishes
+    String dayBefore = "2024-01-01";
+    write("modifications", dayBefore, division(9000001, "07", dayBefore));
+    write("modifications", dayBefore, division(9000002, "A9", dayBefore));
+    // then the first one moved in an older row, the second deleted
+    write("modifications", DAY, division(9000001, "B3", "2023-12-01"));
+    write("deletes", DAY, "9000002\tParish 9000002\tgone");
+
+    List<String> patch = update(new ConversionOptions());
+    assertFalse(has(patch, "A ", "/9000001/"));
+    assertTrue(has(patch, "D ", "/9000002/"));
+    AdminCodeIndex admins = FeatureState.open(state).loadAdmins();
+    assertEquals(9000001, admins.lookup("AD", "07", "", "", ""));
+    assertEquals(-1, admins.lookup("AD", "B3", "", "", ""));
+    assertEquals(-1, admins.lookup("AD", "A9", "", "", ""));
+  }
+
+  private List<String> update(ConversionOptions options) throws Exception {
+    new DeltaUpdater(options(options)).run();
+    return Files.readAllLines(patch(), UTF_8);
+  }
+
+  private Path patch() {
+    return folder.getRoot().toPath().resolve("patches/patch-" + DAY + ".rdfp");
+  }
+
+  private Path bucket(int index) {
+    return state.resolve(String.format("features-%02d.tsv", index));
+  }
+
+  private static boolean has(List<String> patch, String operation, String text) {
+    return patch.stream().anyMatch(row -> row.startsWith(operation) && row.contains(text));
+  }
+
+  private ConversionOptions options(ConversionOptions options) {
+    return options
+        .setState(state.toString())
+        .setDelta(delta.toString())
+        .setOutput(new File(folder.getRoot(), "patches").getPath());
+  }
+
+  private void write(String kind, String line) throws Exception {
+    write(kind, DAY, line);
+  }
+
+  private void write(String kind, String day, String line) throws Exception {
+    Files.writeString(
+        delta.resolve(kind + "-" + day + ".txt"),
+        line + "\n",
+        UTF_8,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  private static String division(long id, String admin1, String modified) {
+    return id + "\tParish " + id + "\tParish " + id + "\t\t42.5\t1.5\tA\tADM1\tAD\t\t" + admin1
+        + "\t\t\t\t0\t\t1000\tEurope/Andorra\t" + modified;
+  }
+}
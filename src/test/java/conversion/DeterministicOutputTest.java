@@ -0,0 +1,80 @@
+package conversion;
+
+import static conversion.ConversionFolder.lines;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import conversion.ConversionOptions.Partition;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DeterministicOutputTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void runsGiveTheSameFilesInGeonameidOrder() throws Exception {
+    File first = convert("first", true);
+    File second = convert("second", true);
+    List<String> manifest = Files.readAllLines(new File(first, "SHA256SUMS").toPath(), UTF_8);
+    assertEquals(manifest, Files.readAllLines(new File(second, "SHA256SUMS").toPath(), UTF_8));
+    assertTrue(manifest.size() > 3);
+    for (String line : manifest) {
+      String[] hashAndFile = line.split("  ");
+      byte[] bytes = Files.readAllBytes(new File(first, hashAndFile[1]).toPath());
+      String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+      assertEquals(hashAndFile[1], hashAndFile[0], hash);
+      assertTrue(hashAndFile[1], inGeonameidOrder(new String(bytes, UTF_8).split("\n")));
+    }
+    assertEquals(lines(convert("unordered", false), "nt"), lines(first, "nt"));
+  }
+
+  @Test
+  public void runsAreMergedInKeyOrder() throws Exception {
+    var runs = new ShardRuns(folder.getRoot().toPath(), "XX");
+    long[] keys = {5, 3, 9, 1, 3, 7, 2, 8};
+    for (int i = 0; i < keys.length; i++) {
+      runs.add(keys[i], new byte[] {(byte) keys[i], (byte) i});
+      if (i % 3 == 2) {
+        runs.spill();
+      }
+    }
+    List<byte[]> merged = new ArrayList<>();
+    runs.merge(merged::add);
+    byte[][] expected = {{1, 3}, {2, 6}, {3, 1}, {3, 4}, {5, 0}, {7, 5}, {8, 7}, {9, 2}};
+    assertArrayEquals(expected, merged.toArray(byte[][]::new));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  private File convert(String name, boolean deterministic) throws Exception {
+    return folder.convert(
+        name,
+        new ConversionOptions()
+            .setFormat(OutputFormat.NTRIPLES)
+            .setPartition(Partition.HASH)
+            .setShards(3)
+            .setMaxFileSize(2048)
+            .setDeterministic(deterministic));
+  }
+
+  private static boolean inGeonameidOrder(String[] lines) {
+    long previous = 0;
+    for (String line : lines) {
+      long id = Long.parseLong(line.substring(0, line.indexOf(' ')).replaceAll("\\D", ""));
+      if (id < previous) {
+        return false;
+      }
+      previous = id;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,83 @@
+package conversion;
+
+import static namespaces.Vocabulary.NAME;
+import static namespaces.Vocabulary.POPULATION;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.rdf4j.model.IRI;
+import org.junit.Test;
+
+public class FeatureFilterTest {
+
+  // geonameid, name, asciiname, alternatenames, lat, long, class, code, country, ..., population
+  private static TsvRecord row(String featureClass, String country, String population) {
+    return TsvRecord.of(
+        String.join(
+            "\t", "1", "Paris", "", "", "48.85", "2.35", featureClass, "PPLC", country, "", "", "",
+            "", "", population, "", "", "Europe/Paris", "2024-01-01"));
+  }
+
+  @Test
+  public void rowsMustMatchEveryClause() {
+    var filter = FeatureFilter.parse("featureClass=P;population>=15000;countryCode=FR,DE", null);
+    assertTrue(filter.test(row("P", "FR", "2138551")));
+    assertFalse(filter.test(row("A", "FR", "2138551")));
+    assertFalse(filter.test(row("P", "IT", "2138551")));
+    assertFalse(filter.test(row("P", "DE", "800")));
+    assertFalse(filter.test(row("P", "DE", "")));
+    var prefix = FeatureFilter.parse("featureCode^=PPL;countryCode!=IT", "");
+    assertTrue(prefix.test(row("P", "FR", "")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownColumnsAreRejected() {
+    FeatureFilter.parse("continent=EU", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void comparisonsOfTextColumnsAreRejected() {
+    FeatureFilter.parse("admin1code>=5", null);
+  }
+
+  @Test
+  public void malformedNumbersDoNotMatch() {
+    var filter = FeatureFilter.parse("population>=15000", null);
+    assertFalse(filter.test(row("P", "FR", "A1")));
+    assertTrue(filter.test(row("P", "FR", "2138551")));
+  }
+
+  @Test
+  public void onlyTheGivenPredicatesAreWritten() {
+    var filter = FeatureFilter.parse(null, "name,type");
+    assertFalse(filter.needsLabels());
+    assertFalse(filter.needsHierarchy());
+    List<IRI> written = new ArrayList<>();
+    TripleSink sink =
+        filter.project(
+            new TripleSink() {
+              @Override
+              public void iri(IRI subject, IRI predicate, IRI object) {
+                written.add(predicate);
+              }
+
+              @Override
+              public void literal(IRI subject, IRI predicate, String label, IRI datatype) {
+                written.add(predicate);
+              }
+
+              @Override
+              public void langLiteral(IRI subject, IRI predicate, String label, String lang) {
+                written.add(predicate);
+              }
+            });
+    IRI paris = iri("http://sws.geonames.org/2988507/");
+    sink.langLiteral(paris, NAME, "Paris", "en");
+    sink.literal(paris, POPULATION, "2138551", null);
+    assertEquals(List.of(NAME), written);
+  }
+}
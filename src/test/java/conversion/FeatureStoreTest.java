@@ -0,0 +1,59 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class FeatureStoreTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  private FeatureStore convert() throws Exception {
+    File store = new File(folder.getRoot(), "store");
+    folder.convert(
+        "nt", new ConversionOptions().setFormat(OutputFormat.NTRIPLES).setStore(store.getPath()));
+    return FeatureStore.open(store.toPath());
+  }
+
+  @Test
+  public void everyFeatureHasItsTriples() throws Exception {
+    FeatureStore store = convert();
+    File shard = new File(folder.getRoot(), "nt/AD.nt");
+    Map<String, Set<String>> bySubject =
+        Files.readAllLines(shard.toPath(), UTF_8).stream()
+            .collect(Collectors.groupingBy(line -> line.split(" ")[0], Collectors.toSet()));
+    assertEquals(bySubject.size(), store.size());
+    for (var feature : bySubject.entrySet()) {
+      String subject = feature.getKey();
+      long id = Long.parseLong(subject.replaceAll("\\D", ""));
+      String record = new String(store.get(id), UTF_8);
+      assertEquals(subject, feature.getValue(), Set.of(record.split("\n")));
+    }
+    assertNull(store.get(1));
+    assertArrayEquals(new long[0], store.children(1));
+  }
+
+  @Test
+  public void lookupsGoThroughTheCache() throws Exception {
+    FeatureStore store = convert();
+    var service = new FeatureLookupService(store, 1 << 20);
+    long id = 2986043;
+    byte[] record = service.feature(id);
+    assertArrayEquals(store.get(id), record);
+    assertArrayEquals(record, service.feature(id));
+    assertNull(service.feature(1));
+    assertEquals(1, service.getCacheStats().hitCount());
+    assertEquals(3, service.getLatencies().count());
+    assertEquals(0, service.children("XX.01").length);
+  }
+}
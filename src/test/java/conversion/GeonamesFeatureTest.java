@@ -0,0 +1,101 @@
+package conversion;
+
+import static conversion.GeonamesHeaders.admin2code;
+import static conversion.GeonamesHeaders.columns;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class GeonamesFeatureTest {
+
+  private static final Path ALL_COUNTRIES = Path.of(ConversionFolder.INPUT, "allCountries.txt");
+
+  @Test
+  public void reusedFeatureKeepsNothingOfThePreviousRow() {
+    List<String> reused = new ArrayList<>();
+    List<String> fresh = new ArrayList<>();
+    List<GeonamesFeature> instances = new ArrayList<>();
+    TsvReader.forEachSequential(
+        ALL_COUNTRIES,
+        record -> {
+          fresh.add(describe(new GeonamesFeature(record.line())));
+          GeonamesFeature feature = GeonamesFeature.reuse(record);
+          instances.add(feature);
+          reused.add(describe(feature));
+        });
+    assertEquals(10, reused.size());
+    assertEquals(fresh, reused);
+    for (GeonamesFeature feature : instances) {
+      assertSame(instances.get(0), feature);
+    }
+  }
+
+  @Test
+  public void copiesOutliveTheRow() {
+    List<GeonamesFeature> copies = new ArrayList<>();
+    List<String> rows = new ArrayList<>();
+    TsvReader.forEachSequential(
+        ALL_COUNTRIES,
+        record -> {
+          GeonamesFeature feature = GeonamesFeature.reuse(record);
+          // only some columns decoded before the copy
+          feature.getAdmin1Value();
+          copies.add(feature.copy());
+          rows.add(describe(new GeonamesFeature(record.line())));
+        });
+    for (int i = 0; i < copies.size(); i++) {
+      assertEquals(rows.get(i), describe(copies.get(i)));
+    }
+  }
+
+  @Test
+  public void resetFromFieldsThenFromARecord() {
+    // 3017832 has admin2 to admin4 codes, 3017833 after it none
+    var feature = new GeonamesFeature();
+    String[] fields = new String[columns];
+    List<Long> checked = new ArrayList<>();
+    TsvReader.forEachSequential(
+        ALL_COUNTRIES,
+        record -> {
+          if (record.getLong(0) == 3017832) {
+            System.arraycopy(record.toArray(), 0, fields, 0, columns);
+          } else if (record.getLong(0) == 3017833) {
+            feature.reset(fields);
+            assertEquals("66", feature.get(admin2code));
+            assertEquals("3017832", feature.getId());
+            feature.reset(record);
+            assertEquals("", feature.get(admin2code));
+            assertEquals(describe(new GeonamesFeature(record.line())), describe(feature));
+            checked.add(feature.getGeonameid());
+          }
+        });
+    assertEquals(List.of(3017833L), checked);
+  }
+
+  // every value the converter reads, cached or not
+  private static String describe(GeonamesFeature feature) {
+    return String.join(
+        "|",
+        feature.getSubject().stringValue(),
+        feature.getFeatureCodeField(),
+        String.valueOf(feature.isCountry()),
+        String.valueOf(feature.getPopulation()),
+        String.valueOf(feature.getLatitude()),
+        String.valueOf(feature.getLongitude()),
+        String.valueOf(feature.isEmpty(GeonamesHeaders.elevation)),
+        feature.getNameValue(),
+        feature.getCountry(),
+        feature.getAdmin1Value(),
+        feature.getAdmin2Value(),
+        feature.getAdmin3Value(),
+        feature.getAdmin4Value(),
+        feature.getAltValue(),
+        feature.getElevationValue(),
+        feature.getTimezoneValue(),
+        feature.getModificationDateValue());
+  }
+}
@@ -0,0 +1,114 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HierarchyGraphTest {
+
+  // parent, child, type: 1 > 2 > 3 > 4 under ADM, 4 also in 10, 5 under 6 and 7, 20 and 21 under
+  // each other
+  private static final String HIERARCHY =
+      """
+      1\t2\tADM
+      2\t3\tADM
+      3\t4\tADM
+      10\t4\t
+      7\t5\tADM
+      6\t5\tADM
+      21\t20\tADM
+      20\t21\tADM
+      """;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private HierarchyGraph graph;
+
+  @Before
+  public void load() throws Exception {
+    Path file = folder.newFile("hierarchy.txt").toPath();
+    Files.writeString(file, HIERARCHY, UTF_8);
+    var lines = new LongAdder();
+    graph = HierarchyGraph.load(file, lines);
+    assertEquals(8, lines.sum());
+  }
+
+  @Test
+  public void parentsAreSplitByType() {
+    assertEquals(6, graph.nodes());
+    assertEquals(8, graph.edges());
+    assertArrayEquals(new long[] {3}, graph.parents(4, true));
+    assertArrayEquals(new long[] {10}, graph.parents(4, false));
+    assertArrayEquals(new long[] {6, 7}, graph.parents(5, true));
+    assertArrayEquals(new long[0], graph.parents(5, false));
+    assertArrayEquals(new long[0], graph.parents(1, true));
+  }
+
+  @Test
+  public void loadKeepsTheChildrenAsked() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("hierarchy.txt");
+    var kept = HierarchyGraph.load(file, new LongAdder(), child -> child == 4);
+    assertEquals(1, kept.nodes());
+    assertArrayEquals(new long[] {3}, kept.parents(4, true));
+    assertArrayEquals(new long[0], kept.parents(3, true));
+  }
+
+  @Test
+  public void ancestorsAreClosedOverAdmParents() {
+    graph.computeAncestors();
+    assertArrayEquals(new long[] {1, 2, 3}, graph.ancestors(4, -1));
+    assertArrayEquals(new long[] {1, 2}, graph.ancestors(3, -1));
+    assertArrayEquals(new long[] {6, 7}, graph.ancestors(5, -1));
+    assertArrayEquals(new long[0], graph.ancestors(1, -1));
+  }
+
+  @Test
+  public void adminCodesParentAddsItsOwnAncestors() {
+    graph.computeAncestors();
+    assertArrayEquals(new long[] {1, 2, 3, 6, 7}, graph.ancestors(5, 3));
+    // already among them, or the feature itself
+    assertArrayEquals(new long[] {1, 2, 3}, graph.ancestors(4, 2));
+    assertArrayEquals(new long[] {1, 2, 3}, graph.ancestors(4, 4));
+    // not in the hierarchy
+    assertArrayEquals(new long[] {99}, graph.ancestors(98, 99));
+  }
+
+  @Test
+  public void cyclesAreCut() {
+    graph.computeAncestors();
+    long[] of20 = graph.ancestors(20, -1);
+    long[] of21 = graph.ancestors(21, -1);
+    // the edge found closing the cycle is left out, the other kept
+    assertEquals(1, of20.length + of21.length);
+    assertArrayEquals(of20.length == 1 ? new long[] {21} : new long[0], of20);
+    assertArrayEquals(of21.length == 1 ? new long[] {20} : new long[0], of21);
+  }
+
+  @Test
+  public void savedGraphLoadsTheSame() throws Exception {
+    var bytes = new ByteArrayOutputStream();
+    graph.save(new DataOutputStream(bytes));
+    HierarchyGraph loaded =
+        HierarchyGraph.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(graph.nodes(), loaded.nodes());
+    assertEquals(graph.edges(), loaded.edges());
+    for (long child : new long[] {2, 3, 4, 5, 20, 21}) {
+      assertArrayEquals(graph.parents(child, true), loaded.parents(child, true));
+      assertArrayEquals(graph.parents(child, false), loaded.parents(child, false));
+    }
+    loaded.computeAncestors();
+    assertArrayEquals(new long[] {1, 2, 3}, loaded.ancestors(4, -1));
+  }
+}
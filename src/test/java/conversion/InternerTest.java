@@ -0,0 +1,71 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.junit.Test;
+
+public class InternerTest {
+
+  @Test
+  public void equalBytesGiveTheSameInstance() {
+    var interner = new Interner("test", 16);
+    String first = intern(interner, "Europe/Andorra");
+    assertEquals("Europe/Andorra", first);
+    // at another offset of another buffer
+    byte[] row = "2986043\tEurope/Andorra\t2014-11-05".getBytes(UTF_8);
+    assertSame(first, interner.intern(ByteBuffer.wrap(row), 8, 14));
+    assertSame(first, intern(interner, "Europe/Andorra"));
+    assertEquals(1, interner.size());
+    assertEquals(2, interner.hits());
+    assertEquals(1, interner.misses());
+  }
+
+  @Test
+  public void tableGrowsUpToTheCap() {
+    var interner = new Interner("test", 1 << 14);
+    String[] values = new String[20_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = intern(interner, "value " + i);
+    }
+    assertEquals(1 << 14, interner.size());
+    assertEquals(20_000, interner.misses());
+    for (int i = 0; i < values.length; i++) {
+      String again = intern(interner, "value " + i);
+      assertEquals(values[i], again);
+      if (i < 1 << 14) {
+        assertSame(values[i], again);
+      } else {
+        // beyond the cap: decoded every time
+        assertNotSame(values[i], again);
+      }
+    }
+    assertEquals(1 << 14, interner.hits());
+    assertEquals(20_000 + 20_000 - (1 << 14), interner.misses());
+  }
+
+  @Test
+  public void literalsAreCountedApart() {
+    var interner = new Interner("test", 2);
+    intern(interner, "AD");
+    Literal ad = interner.literal("AD", null);
+    assertSame(ad, interner.literal("AD", null));
+    interner.literal("2860", XSD.INTEGER);
+    Literal beyond = interner.literal("2803", XSD.INTEGER);
+    assertNotSame(beyond, interner.literal("2803", XSD.INTEGER));
+    assertEquals(1, interner.size());
+    assertEquals(2, interner.literals());
+    assertEquals(1, interner.hits());
+    assertEquals(5, interner.misses());
+  }
+
+  private static String intern(Interner interner, String value) {
+    byte[] bytes = value.getBytes(UTF_8);
+    return interner.intern(bytes, 0, bytes.length);
+  }
+}
@@ -0,0 +1,113 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LabelProjectionTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final Map<String, String> CODES =
+      Map.of("fra", "fr", "fre", "fr", "fr", "fr", "chr", "chr", "eng", "en", "en", "en");
+
+  private static String tag(LabelProjection projection, String lang, String preferred) {
+    return projection.tagOf(TsvRecord.of("1\t42\t" + lang + "\tname\t" + preferred + "\t\t\t"));
+  }
+
+  @Test
+  public void threeLetterCodesAreNormalizedAndFiltered() {
+    var projection = new LabelProjection(CODES, Set.of("fre", "chr", "none"), false, 0, false);
+    assertEquals("fr", tag(projection, "fra", ""));
+    assertEquals("fr", tag(projection, "fr", ""));
+    assertEquals("chr", tag(projection, "chr", ""));
+    assertEquals("", tag(projection, "", ""));
+    assertNull(tag(projection, "eng", ""));
+    assertNull(tag(projection, "post", ""));
+    assertEquals("link", tag(projection, "link", ""));
+  }
+
+  @Test
+  public void theDefaultKeepsTwoLetterCodesOnly() {
+    assertEquals("de", tag(LabelProjection.DEFAULT, "de", ""));
+    assertNull(tag(LabelProjection.DEFAULT, "fra", ""));
+    assertNull(tag(LabelProjection.DEFAULT, "iata", ""));
+  }
+
+  @Test
+  public void preferredOnlyAndPostcodes() {
+    var projection = new LabelProjection(CODES, Set.of(), true, 0, true);
+    assertNull(tag(projection, "en", ""));
+    assertEquals("en", tag(projection, "en", "1"));
+    assertEquals("post", tag(projection, "post", ""));
+  }
+
+  @Test
+  public void theBestLabelsOfEachLanguageAreKept() {
+    var historic = name("fr", "Lutèce", LabelStore.HISTORIC);
+    var plain = name("fr", "Paname", 0);
+    var preferred = name("fr", "Paris", LabelStore.PREFERRED);
+    var english = name("en", "Paris", 0);
+    var projection = new LabelProjection(CODES, Set.of(), false, 1, false);
+    assertEquals(
+        List.of(preferred, english), projection.best(List.of(historic, plain, preferred, english)));
+  }
+
+  @Test
+  public void theDumpTableIsReadByColumn() throws Exception {
+    // group codes: only the 639-2 column, the 639-3 one empty
+    Map<String, String> codes =
+        LabelProjection.loadCodes(Path.of(ConversionFolder.INPUT, "iso-languagecodes.txt"));
+    assertEquals(9, codes.size());
+    assertEquals("afa", codes.get("afa"));
+    assertEquals("bat", codes.get("bat"));
+    for (String tag : codes.values()) {
+      assertTrue(tag, LabelProjection.isLanguageTag(tag));
+    }
+  }
+
+  @Test
+  public void rowsWithoutALanguageTagAreLeftOut() throws Exception {
+    Path table = folder.newFile("iso-languagecodes.txt").toPath();
+    Files.writeString(
+        table,
+        String.join(
+            "\r\n",
+            "ISO 639-3\tISO 639-2\tISO 639-1\tLanguage Name",
+            "fra\tfre / fra\tfr\tFrench",
+            "chr\tchr\t\tCherokee",
+            "\tafa\t\tAfro-Asiatic languages",
+            "x y\t\t\tNot a tag",
+            "\t\t\t"),
+        UTF_8);
+    assertEquals(
+        Map.of("fra", "fr", "fre", "fr", "fr", "fr", "chr", "chr", "afa", "afa"),
+        LabelProjection.loadCodes(table));
+  }
+
+  private static AlternateName name(String lang, String label, int flags) {
+    return new AlternateName(
+        String.join(
+            "\t",
+            "1",
+            "42",
+            lang,
+            label,
+            (flags & LabelStore.PREFERRED) != 0 ? "1" : "",
+            "",
+            "",
+            (flags & LabelStore.HISTORIC) != 0 ? "1" : "",
+            "",
+            ""));
+  }
+}
@@ -0,0 +1,148 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import org.eclipse.rdf4j.model.IRI;
+import org.junit.Test;
+
+public class LabelStoreTest {
+
+  private static final IRI PIC = iri("https://sws.geonames.org/2986043/");
+  private static final IRI ROC = iri("https://sws.geonames.org/2994701/");
+
+  @Test
+  public void labelsAreFoundByGeonameid() {
+    LabelStore store = fill(new LabelStore()).seal();
+    assertEquals(4, store.size());
+    Set<String> pic = statements(store, 2986043, PIC);
+    assertEquals(3, pic.size());
+    assertEquals(
+        Set.of(
+            "<https://sws.geonames.org/2986043/> <http://www.geonames.org/ontology#officialName>"
+                + " \"Pic de Font Blanca\"@fr .",
+            "<https://sws.geonames.org/2986043/> <http://www.geonames.org/ontology#alternateName>"
+                + " \"Pic du Port\" .",
+            "<https://sws.geonames.org/2986043/> <http://www.geonames.org/ontology#postalCode>"
+                + " \"AD100\" ."),
+        pic);
+    assertEquals(1, statements(store, 2994701, ROC).size());
+    assertEquals(Set.of(), statements(store, 3007683, iri("https://sws.geonames.org/3007683/")));
+  }
+
+  @Test
+  public void labelsAddedByManyThreadsAreAllSealed() throws Exception {
+    LabelStore store = new LabelStore();
+    ForkJoinPool.commonPool()
+        .submit(
+            () ->
+                IntStream.range(0, 10_000)
+                    .parallel()
+                    .forEach(id -> store.add(id, "en", "Place " + id, 0)))
+        .get();
+    store.seal();
+    assertEquals(10_000, store.size());
+    assertEquals(1, statements(store, 4321, iri("https://sws.geonames.org/4321/")).size());
+  }
+
+  @Test
+  public void savedLabelsLoadTheSame() throws Exception {
+    LabelStore store = fill(new LabelStore()).seal();
+    var bytes = new ByteArrayOutputStream();
+    store.save(new DataOutputStream(bytes));
+
+    LabelStore loaded =
+        new LabelStore().load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(store.size(), loaded.size());
+    assertEquals(statements(store, 2986043, PIC), statements(loaded, 2986043, PIC));
+    assertEquals(statements(store, 2994701, ROC), statements(loaded, 2994701, ROC));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void labelsCannotBeAddedOnceSealed() {
+    fill(new LabelStore()).seal().add(3007683, "", "Pic des Langounelles", 0);
+  }
+
+  @Test
+  public void takenLabelsReleaseTheirChunks() {
+    // about 1 KB a record, several chunks
+    LabelStore store = new LabelStore();
+    int ids = 3 * LabelStore.CHUNK_SIZE / 1024;
+    String padding = "x".repeat(1000);
+    for (int id = 1; id <= ids; id++) {
+      store.add(id, "en", "Place " + id + padding, 0);
+    }
+    store.seal();
+    long chunks = store.offHeapBytes() / LabelStore.CHUNK_SIZE;
+    assertTrue(chunks >= 3);
+    assertEquals(chunks * LabelStore.CHUNK_SIZE, store.offHeapBytes());
+
+    long before = store.offHeapBytes();
+    for (int id = 1; id < ids; id++) {
+      var encoder = new NTriplesEncoder(null);
+      store.take(id, iri("https://sws.geonames.org/" + id + "/"), encoder);
+      assertTrue(new String(encoder.toByteArray(), UTF_8).contains("\"Place " + id + "x"));
+      assertTrue(store.offHeapBytes() <= before);
+      before = store.offHeapBytes();
+      if (id == ids / 2) {
+        assertTrue(store.offHeapBytes() < chunks * LabelStore.CHUNK_SIZE);
+      }
+    }
+    // the chunk of the last one is kept until it is taken
+    assertEquals(LabelStore.CHUNK_SIZE, store.offHeapBytes());
+    IRI last = iri("https://sws.geonames.org/" + ids + "/");
+    assertEquals(1, statements(store, ids, last).size());
+    store.take(ids, last, new NTriplesEncoder(null));
+    assertEquals(0, store.offHeapBytes());
+  }
+
+  @Test
+  public void aFeatureIsTakenOnce() {
+    LabelStore store = fill(new LabelStore()).seal();
+    assertEquals(3, take(store, 2986043, PIC).size());
+    assertEquals(Set.of(), take(store, 2986043, PIC));
+    assertEquals(Set.of(), take(store, 3007683, iri("https://sws.geonames.org/3007683/")));
+    assertEquals(1, take(store, 2994701, ROC).size());
+    assertEquals(0, store.offHeapBytes());
+  }
+
+  private static LabelStore fill(LabelStore store) {
+    store.add(2994701, "", "Roc Mélé", 0);
+    store.add(2986043, "", "Pic du Port", 0);
+    store.add(2986043, "fr", "Pic de Font Blanca", LabelStore.PREFERRED);
+    store.addPostcode(2986043, "AD100");
+    return store;
+  }
+
+  private static Set<String> statements(LabelStore store, long id, IRI subject) {
+    var encoder = new NTriplesEncoder(null);
+    store.statements(id, subject, encoder);
+    return lines(encoder);
+  }
+
+  private static Set<String> take(LabelStore store, long id, IRI subject) {
+    var encoder = new NTriplesEncoder(null);
+    store.take(id, subject, encoder);
+    return lines(encoder);
+  }
+
+  private static Set<String> lines(NTriplesEncoder encoder) {
+    Set<String> lines = new TreeSet<>();
+    for (String line : new String(encoder.toByteArray(), UTF_8).split("\n")) {
+      if (!line.isEmpty()) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+}
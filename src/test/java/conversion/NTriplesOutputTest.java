@@ -0,0 +1,108 @@
+package conversion;
+
+import static conversion.ConversionFolder.parse;
+import static conversion.ConversionFolder.shards;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class NTriplesOutputTest {
+
+  // the triples of the fixture, as the Turtle converter wrote them before the N-Triples path
+  private static final File GOLDEN = new File("src/test/resources/expected_output");
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void nTriplesAreTheGoldenTriplesAndThoseOfTurtle() throws Exception {
+    File lines =
+        folder.convert("golden", new ConversionOptions().setFormat(OutputFormat.NTRIPLES));
+    assertEquals(shards(GOLDEN, "nt"), shards(lines, "nt"));
+    for (String shard : shards(GOLDEN, "nt")) {
+      Model expected = parse(new File(GOLDEN, shard + ".nt"), RDFFormat.NTRIPLES);
+      Model actual = parse(new File(lines, shard + ".nt"), RDFFormat.NTRIPLES);
+      assertTrue(shard, Models.isomorphic(expected, actual));
+    }
+
+    assertSameTriples(OutputFormat.NTRIPLES, RDFFormat.NTRIPLES, null);
+  }
+
+  @Test
+  public void nQuadsAreTheSameTriplesAsTurtleInTheGivenGraph() throws Exception {
+    String graph = "http://example.org/geonames";
+    for (Model quads : assertSameTriples(OutputFormat.NQUADS, RDFFormat.NQUADS, graph)) {
+      assertFalse(quads.isEmpty());
+      quads.forEach(quad -> assertEquals(quad.toString(), iri(graph), quad.getContext()));
+    }
+  }
+
+  @Test
+  public void binaryRdfIsTheSameTriplesAsTurtle() throws Exception {
+    assertSameTriples(OutputFormat.BINARY, RDFFormat.BINARY, null);
+  }
+
+  @Test
+  public void dictionaryBlocksDecodeToTheSameTriplesAsTurtle() throws Exception {
+    File turtle = convert(OutputFormat.TURTLE);
+    File dictionary = convert(OutputFormat.DICTIONARY);
+
+    Set<String> shards = shards(turtle, "ttl");
+    assertEquals(shards, shards(dictionary, "rdfd"));
+    for (String shard : shards) {
+      File decoded = new File(dictionary, shard + ".nt");
+      try (OutputStream out = new FileOutputStream(decoded)) {
+        DictionaryReader.toNTriples(new File(dictionary, shard + ".rdfd").toPath(), out);
+      }
+      Model expected = parse(new File(turtle, shard + ".ttl"), RDFFormat.TURTLE);
+      assertTrue(shard, Models.isomorphic(expected, parse(decoded, RDFFormat.NTRIPLES)));
+    }
+  }
+
+  /** The models of the shards in the given format, a graph given for quads. */
+  private List<Model> assertSameTriples(OutputFormat format, RDFFormat rdfFormat, String graph)
+      throws Exception {
+    File turtle = convert(OutputFormat.TURTLE);
+    var options = new ConversionOptions().setFormat(format);
+    if (graph != null) {
+      options.setGraph(graph);
+    }
+    File lines = folder.convert(format.getExtension(), options);
+
+    Set<String> shards = shards(turtle, "ttl");
+    assertEquals(shards, shards(lines, format.getExtension()));
+    List<Model> models = new ArrayList<>();
+    for (String shard : shards) {
+      Model expected = parse(new File(turtle, shard + ".ttl"), RDFFormat.TURTLE);
+      Model actual = parse(new File(lines, shard + "." + format.getExtension()), rdfFormat);
+      assertTrue(shard, Models.isomorphic(expected, withoutGraphs(actual)));
+      models.add(actual);
+    }
+    return models;
+  }
+
+  private File convert(OutputFormat format) throws Exception {
+    return folder.convert(format.getExtension(), new ConversionOptions().setFormat(format));
+  }
+
+  // the graph of quads is checked on its own
+  private static Model withoutGraphs(Model model) {
+    Model triples = new LinkedHashModel();
+    model.forEach(s -> triples.add(s.getSubject(), s.getPredicate(), s.getObject()));
+    return triples;
+  }
+}
@@ -0,0 +1,131 @@
+package conversion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.Compression;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelGzipOutputStreamTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void manyBlocksAreReadAsOneStream() throws Exception {
+    byte[] data = data(ParallelGzipOutputStream.BLOCK_SIZE * 9 + 1234, 1);
+    var bytes = new ByteArrayOutputStream();
+    try (var gzip = new ParallelGzipOutputStream(bytes)) {
+      // single bytes and arrays across block ends
+      gzip.write(data[0]);
+      gzip.write(data, 1, ParallelGzipOutputStream.BLOCK_SIZE);
+      for (int offset = ParallelGzipOutputStream.BLOCK_SIZE + 1; offset < data.length; ) {
+        int count = Math.min(100_003, data.length - offset);
+        gzip.write(data, offset, count);
+        offset += count;
+        gzip.flush();
+      }
+    }
+    assertArrayEquals(data, gunzip(bytes.toByteArray()));
+  }
+
+  @Test
+  public void syncEndsTheFileOnAMemberBoundary() throws Exception {
+    byte[] first = data(1000, 2);
+    byte[] second = data(ParallelGzipOutputStream.BLOCK_SIZE + 500, 3);
+    Path path = folder.getRoot().toPath().resolve("synced.nt.gz");
+    try (var file = new OutputFile(path, Compression.GZIP)) {
+      file.stream().write(first);
+      long length = file.sync();
+      assertEquals(length, Files.size(path));
+      assertEquals(first.length, file.getWrittenBytes());
+      assertArrayEquals(first, gunzip(Files.readAllBytes(path)));
+
+      file.stream().write(second);
+      length = file.sync();
+      assertEquals(length, Files.size(path));
+      assertArrayEquals(concat(first, second), gunzip(Files.readAllBytes(path)));
+    }
+  }
+
+  @Test
+  public void fileCutBackToASyncIsAppendedTo() throws Exception {
+    byte[] kept = data(ParallelGzipOutputStream.BLOCK_SIZE + 7, 4);
+    byte[] lost = data(5000, 5);
+    byte[] appended = data(ParallelGzipOutputStream.BLOCK_SIZE * 2, 6);
+    Path path = folder.getRoot().toPath().resolve("resumed.nt.gz");
+    long length;
+    try (var file = new OutputFile(path, Compression.GZIP)) {
+      file.stream().write(kept);
+      length = file.sync();
+      file.stream().write(lost);
+    }
+    assertTrue(Files.size(path) > length);
+
+    // as a resume does
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(length);
+    }
+    try (var file = new OutputFile(path, Compression.GZIP, true)) {
+      file.stream().write(appended);
+      long synced = file.sync();
+      assertEquals(length + file.getStoredBytes(), synced);
+      assertEquals(synced, Files.size(path));
+    }
+    assertArrayEquals(concat(kept, appended), gunzip(Files.readAllBytes(path)));
+
+    // nothing more: the file is left as it was
+    byte[] before = Files.readAllBytes(path);
+    new OutputFile(path, Compression.GZIP, true).close();
+    assertArrayEquals(before, Files.readAllBytes(path));
+  }
+
+  @Test
+  public void emptyOutputIsAnEmptyGzipFile() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("empty.nt.gz");
+    try (var file = new OutputFile(path, Compression.GZIP)) {
+      assertEquals(0, file.sync());
+    }
+    assertTrue(Files.size(path) > 0);
+    assertArrayEquals(new byte[0], gunzip(Files.readAllBytes(path)));
+
+    var bytes = new ByteArrayOutputStream();
+    new ParallelGzipOutputStream(bytes).close();
+    assertArrayEquals(new byte[0], gunzip(bytes.toByteArray()));
+  }
+
+  // compressible, like RDF
+  private static byte[] data(int size, long seed) {
+    var random = new Random(seed);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return data;
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] both = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, both, first.length, second.length);
+    return both;
+  }
+
+  private static byte[] gunzip(byte[] gzip) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+      return in.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package conversion;
+
+import static conversion.ConversionFolder.lines;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import conversion.ConversionOptions.Partition;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PartitioningTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void hashShardsRolledOverBySizeHoldTheSameTriplesAsCountries() throws Exception {
+    File countries = convert("countries", new ConversionOptions());
+    File shards =
+        convert(
+            "shards",
+            new ConversionOptions()
+                .setPartition(Partition.HASH)
+                .setShards(3)
+                .setMaxFileSize(2048));
+
+    assertTrue(new File(countries, "AD.nt").exists());
+    String[] files = shards.list((dir, name) -> name.endsWith(".nt"));
+    assertTrue(Arrays.stream(files).allMatch(name -> name.matches("part-000[0-2]-\\d{4}\\.nt")));
+    assertTrue(files.length > 3);
+    assertEquals(lines(countries, "nt"), lines(shards, "nt"));
+  }
+
+  @Test
+  public void continentsGroupTheirCountries() throws Exception {
+    File continents =
+        convert("continents", new ConversionOptions().setPartition(Partition.CONTINENT));
+    assertTrue(new File(continents, "EU.nt").exists());
+    File countries = convert("countries", new ConversionOptions());
+    assertEquals(lines(countries, "nt"), lines(continents, "nt"));
+  }
+
+  private File convert(String name, ConversionOptions options) throws Exception {
+    return folder.convert(name, options.setFormat(OutputFormat.NTRIPLES));
+  }
+}
@@ -0,0 +1,59 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PipelineMetricsTest {
+
+  private static final Pattern STAGE =
+      Pattern.compile("\\{\"name\": \"([^\"]+)\", \"input\": [^,]+, \"startMillis\": \\d+,"
+          + " \"millis\": \\d+, \"lines\": (\\d+)");
+  private static final Pattern LINES = Pattern.compile("\n  \"lines\": \\{([^}]*)}");
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void everyStageCountsTheLinesItRead() throws Exception {
+    File output =
+        folder.convert(
+            "output",
+            new ConversionOptions().setFormat(OutputFormat.NTRIPLES).setFilter("featureClass=T"));
+    String json = Files.readString(new File(output, "run-report.json").toPath(), UTF_8);
+
+    // the fixture has 10 lines in each file, allCountries.txt being read by two stages at once;
+    // features counts the 8 rows of the filter it converts
+    Map<String, Long> expected =
+        Map.of(
+            "admin codes", 10L,
+            "filter", 10L,
+            "parents", 10L,
+            "labels", 10L,
+            "features", 8L,
+            "feature codes", 0L);
+    Map<String, Long> stages = new TreeMap<>();
+    for (Matcher matcher = STAGE.matcher(json); matcher.find(); ) {
+      stages.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+    }
+    assertEquals(expected, stages);
+
+    Matcher lines = LINES.matcher(json);
+    assertTrue(lines.find());
+    Map<String, Long> byStage = new TreeMap<>();
+    for (String entry : lines.group(1).split(",")) {
+      String[] stageAndLines = entry.trim().split(": ");
+      byStage.put(stageAndLines[0].replace("\"", ""), Long.parseLong(stageAndLines[1]));
+    }
+    assertEquals(expected, byStage);
+  }
+}
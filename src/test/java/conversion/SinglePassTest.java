@@ -0,0 +1,63 @@
+package conversion;
+
+import static conversion.ConversionFolder.parse;
+import static conversion.ConversionFolder.shards;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.OutputFormat;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SinglePassTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void singlePassWritesTheSameBytes() throws Exception {
+    File twoPasses =
+        folder.convert(
+            "two-passes",
+            new ConversionOptions().setFormat(OutputFormat.NTRIPLES).setDeterministic(true));
+    File singlePass =
+        folder.convert(
+            "single-pass",
+            new ConversionOptions()
+                .setFormat(OutputFormat.NTRIPLES)
+                .setDeterministic(true)
+                .setSinglePass(true));
+
+    Set<String> shards = shards(twoPasses, "nt");
+    assertEquals(Set.of("AD"), shards);
+    assertEquals(shards, shards(singlePass, "nt"));
+    for (String shard : shards) {
+      assertArrayEquals(
+          shard,
+          Files.readAllBytes(new File(twoPasses, shard + ".nt").toPath()),
+          Files.readAllBytes(new File(singlePass, shard + ".nt").toPath()));
+    }
+  }
+
+  @Test
+  public void singlePassProducesTheSameTriples() throws Exception {
+    // the nearby places replay the spill of the scan
+    File twoPasses = folder.convert("two-passes", new ConversionOptions().setNearby(2));
+    File singlePass =
+        folder.convert("single-pass", new ConversionOptions().setNearby(2).setSinglePass(true));
+
+    Set<String> shards = shards(twoPasses, "ttl");
+    assertEquals(shards, shards(singlePass, "ttl"));
+    for (String shard : shards) {
+      Model expected = parse(new File(twoPasses, shard + ".ttl"), RDFFormat.TURTLE);
+      Model actual = parse(new File(singlePass, shard + ".ttl"), RDFFormat.TURTLE);
+      assertTrue(shard, Models.isomorphic(expected, actual));
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package conversion;
+
+import static conversion.ConversionFolder.parse;
+import static conversion.ConversionFolder.shards;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import conversion.ConversionOptions.JoinMode;
+import java.io.File;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SortMergeJoinTest {
+
+  @Rule public ConversionFolder folder = new ConversionFolder();
+
+  @Test
+  public void sortMergeJoinProducesTheSameTriplesAsHashJoin() throws Exception {
+    File hash = folder.convert("hash", new ConversionOptions());
+    File merge =
+        folder.convert(
+            "merge", new ConversionOptions().setJoinMode(JoinMode.SORT_MERGE).setLinesPerRun(3));
+
+    Set<String> shards = shards(hash, "ttl");
+    assertEquals(shards, shards(merge, "ttl"));
+    for (String shard : shards) {
+      Model expected = parse(new File(hash, shard + ".ttl"), RDFFormat.TURTLE);
+      Model actual = parse(new File(merge, shard + ".ttl"), RDFFormat.TURTLE);
+      assertTrue(shard, Models.isomorphic(expected, actual));
+    }
+  }
+}
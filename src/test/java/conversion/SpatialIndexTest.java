@@ -0,0 +1,77 @@
+package conversion;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class SpatialIndexTest {
+
+  @Test
+  public void nearestAreThoseOfABruteForceSearch() {
+    var random = new Random(42);
+    float[][] points = new float[2000][];
+    for (int i = 0; i < points.length; i++) {
+      points[i] =
+          switch (i % 4) {
+            // across the antimeridian
+            case 0 -> new float[] {coordinate(random, -60, 60), coordinate(random, 179, 181)};
+            // around the poles
+            case 1 -> new float[] {coordinate(random, 88, 90), coordinate(random, -180, 180)};
+            case 2 -> new float[] {coordinate(random, -90, -88), coordinate(random, -180, 180)};
+            default -> new float[] {coordinate(random, -90, 90), coordinate(random, -180, 180)};
+          };
+    }
+    SpatialIndex index = index(points);
+    for (int k : new int[] {1, 5, 20}) {
+      for (int i = 0; i < points.length; i += 11) {
+        assertArrayEquals(
+            "place " + i + ", k " + k,
+            bruteForce(points, i, k),
+            index.nearest(i, points[i][0], points[i][1], k));
+      }
+    }
+  }
+
+  @Test
+  public void fewerPlacesThanKAreAllReturned() {
+    float[][] points = {{42.5f, 1.5f}, {-89.95f, 179.95f}, {89.95f, -179.95f}};
+    SpatialIndex index = index(points);
+    for (int i = 0; i < points.length; i++) {
+      assertArrayEquals(bruteForce(points, i, 2), index.nearest(i, points[i][0], points[i][1], 5));
+    }
+    assertArrayEquals(new long[0], index(new float[][] {{0, 0}}).nearest(0, 0, 0, 3));
+  }
+
+  private static SpatialIndex index(float[][] points) {
+    var index = new SpatialIndex();
+    for (int i = 0; i < points.length; i++) {
+      index.add(i, points[i][0], points[i][1]);
+    }
+    return index.seal();
+  }
+
+  // the others by distance, then id
+  private static long[] bruteForce(float[][] points, int from, int k) {
+    double[] distances = new double[points.length];
+    for (int i = 0; i < points.length; i++) {
+      distances[i] =
+          SpatialIndex.distance(points[from][0], points[from][1], points[i][0], points[i][1]);
+    }
+    return IntStream.range(0, points.length)
+        .filter(i -> i != from)
+        .boxed()
+        .sorted(Comparator.<Integer>comparingDouble(i -> distances[i]).thenComparing(i -> i))
+        .limit(k)
+        .mapToLong(i -> i)
+        .toArray();
+  }
+
+  private static float coordinate(Random random, double min, double max) {
+    double value = min + random.nextDouble() * (max - min);
+    // longitudes past 180 wrap around
+    return (float) (value > 180 ? value - 360 : value);
+  }
+}
@@ -0,0 +1,109 @@
+package conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StageSchedulerTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void independentStagesOverlapAndDependentsWaitForThem() throws Exception {
+    List<String> events = new CopyOnWriteArrayList<>();
+    // each of the two waits for the other to have started: they only end if run concurrently
+    var started = new CountDownLatch(2);
+    StageScheduler.Step index =
+        () -> {
+          started.countDown();
+          assertTrue(started.await(10, TimeUnit.SECONDS));
+          events.add("index");
+        };
+    new StageScheduler(new PipelineMetrics(), true)
+        .add("a", null, index)
+        .add("b", null, index)
+        .add("features", null, () -> events.add("features"), "a", "b")
+        .run();
+    assertEquals(List.of("index", "index", "features"), events);
+  }
+
+  @Test
+  public void aFailureCancelsTheStagesAfterIt() throws Exception {
+    var failure = new IOException("::: no hierarchy");
+    List<String> events = new CopyOnWriteArrayList<>();
+    var scheduler =
+        new StageScheduler(new PipelineMetrics(), true)
+            .add(
+                "parents",
+                null,
+                () -> {
+                  throw failure;
+                })
+            .add("labels", null, () -> events.add("labels"))
+            .add("features", null, () -> events.add("features"), "parents", "labels");
+    try {
+      scheduler.run();
+      fail();
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    assertFalse(events.contains("features"));
+  }
+
+  @Test
+  public void aFailureStopsTheStagesReadingInParallel() throws Exception {
+    int total = 100_000;
+    Path file = folder.newFile("allCountries.txt").toPath();
+    String rows =
+        IntStream.range(0, total).mapToObj(i -> i + "\tplace\n").collect(Collectors.joining());
+    Files.writeString(file, rows);
+    var failure = new IOException("::: no hierarchy");
+    var reading = new CountDownLatch(1);
+    var read = new LongAdder();
+    var scheduler =
+        new StageScheduler(new PipelineMetrics(), true)
+            .add(
+                "features",
+                null,
+                () ->
+                    TsvReader.forEach(
+                        file,
+                        record -> {
+                          reading.countDown();
+                          read.increment();
+                          // 10 s for the whole file
+                          LockSupport.parkNanos(100_000);
+                        }))
+            .add(
+                "parents",
+                null,
+                () -> {
+                  assertTrue(reading.await(10, TimeUnit.SECONDS));
+                  throw failure;
+                });
+    try {
+      scheduler.run();
+      fail();
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    assertTrue(read.sum() + " lines", read.sum() < total / 2);
+  }
+}
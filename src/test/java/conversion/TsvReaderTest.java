@@ -0,0 +1,112 @@
+package conversion;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TsvReaderTest {
+
+  // a row longer than the probe looking for the end of a chunk, one with a carriage return,
+  // multi-byte characters, empty fields and no newline after the last row
+  private static final String[] ROWS = {
+    "3039154\tEl Tarter\t\t42.57952\t1.65362",
+    "3039163\tSant Julià de Lòria\t\t42.46372\t1.49129",
+    "6255148\t" + "Europe ".repeat(1500) + "\t\t48.69096\t9.14062",
+    "2986043\tPic de Font Blanca\tPic du Port\r",
+    "",
+    "\t\t",
+    "3007683\tΠικ ντε λες Λανγκουνέλλες\t\t42.61203\t1.47663",
+  };
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void chunksEndOnLinesAndCoverTheFile() throws Exception {
+    Path file = write("rows.txt", String.join("\n", ROWS));
+    long size = Files.size(file);
+    byte[] bytes = Files.readAllBytes(file);
+    for (int chunkSize : new int[] {1, 2, 7, 40, 41, 4096, 1 << 20}) {
+      List<TsvReader.Chunk> chunks = TsvReader.chunks(file, chunkSize);
+      long start = 0;
+      for (TsvReader.Chunk chunk : chunks) {
+        assertEquals("chunk size " + chunkSize, start, chunk.start());
+        assertTrue(chunk.end() > chunk.start());
+        assertTrue(chunk.end() == size || bytes[(int) chunk.end() - 1] == '\n');
+        start = chunk.end();
+      }
+      assertEquals(size, start);
+      assertArrayEquals("chunk size " + chunkSize, expected(), read(chunks));
+    }
+  }
+
+  @Test
+  public void lastRowIsReadWithOrWithoutNewline() throws Exception {
+    Path withNewline = write("newline.txt", String.join("\n", ROWS) + "\n");
+    for (int chunkSize : new int[] {3, 41, 1 << 20}) {
+      assertArrayEquals(expected(), read(TsvReader.chunks(withNewline, chunkSize)));
+    }
+
+    List<String> sequential = new ArrayList<>();
+    TsvReader.forEachSequential(write("one.txt", "2994701\tRoc Mélé"), r -> add(sequential, r));
+    assertEquals(List.of("0 2994701|Roc Mélé"), sequential);
+
+    assertEquals(List.of(), TsvReader.chunks(write("empty.txt", ""), 16));
+  }
+
+  @Test
+  public void fieldsAreReadFromTheMapping() throws Exception {
+    Path file = write("rows.txt", String.join("\n", ROWS));
+    List<String> found = new ArrayList<>();
+    for (TsvReader.Chunk chunk : TsvReader.chunks(file, 2)) {
+      chunk.forEach(
+          record -> {
+            if (record.fieldCount() == 5 && record.getLong(0) == 3039163) {
+              assertEquals("Sant Julià de Lòria", record.getString(1));
+              assertTrue(record.isEmpty(2));
+              assertEquals(42.46372, record.getDouble(3), 1e-9);
+              found.add(record.getString(4));
+            }
+          });
+    }
+    assertEquals(List.of("1.49129"), found);
+  }
+
+  private Path write(String name, String content) throws Exception {
+    Path file = folder.getRoot().toPath().resolve(name);
+    Files.writeString(file, content, UTF_8);
+    return file;
+  }
+
+  // "offset fields" of each row, carriage returns dropped
+  private static String[] expected() {
+    List<String> lines = new ArrayList<>();
+    long offset = 0;
+    for (String row : ROWS) {
+      String fields = String.join("|", row.replace("\r", "").split("\t", -1));
+      lines.add(offset + " " + fields);
+      offset += row.getBytes(UTF_8).length + 1;
+    }
+    return lines.toArray(String[]::new);
+  }
+
+  private static String[] read(List<TsvReader.Chunk> chunks) {
+    List<String> lines = new ArrayList<>();
+    for (TsvReader.Chunk chunk : chunks) {
+      chunk.forEach(record -> add(lines, record));
+    }
+    return lines.toArray(String[]::new);
+  }
+
+  private static void add(List<String> lines, TsvRecord record) {
+    lines.add(record.fileOffset() + " " + String.join("|", record.toArray()));
+  }
+}